@@ -0,0 +1,138 @@
+package yermakov.oleksii.bench;
+
+import org.openjdk.jmh.annotations.*;
+import yermakov.oleksii.BattleEngine;
+import yermakov.oleksii.BattlePayout;
+import yermakov.oleksii.BattleSolver;
+import yermakov.oleksii.BetLedger;
+import yermakov.oleksii.CreaturePool;
+import yermakov.oleksii.DamageTable;
+import yermakov.oleksii.DiceUtils;
+import yermakov.oleksii.Main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
+
+/**
+ * Бой, точный расчет шансов и выплаты для каждой пары существ из creatures.json.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BattleBenchmark {
+
+    /**
+     * Пара "id1:id2". Значения по умолчанию - все пары из creatures.json ({@link #allPairs()}), их подставляет
+     * {@link BenchmarkRunner}; одну пару можно задать как обычно: {@code -p pair=n5:n7}.
+     */
+    @Param({})
+    public String pair;
+
+    static String[] allPairs() {
+        List<Main.CardData> creatures = BenchmarkCatalog.CREATURES;
+        List<String> pairs = new ArrayList<>();
+        for (int i = 0; i < creatures.size(); i++) {
+            for (int j = i + 1; j < creatures.size(); j++) {
+                pairs.add(creatures.get(i).id + ":" + creatures.get(j).id);
+            }
+        }
+        return pairs.toArray(new String[0]);
+    }
+
+    private Main.GameConfig config;
+    private DamageTable damageTable;
+    private RandomGenerator rng;
+    private BattleSolver solver;
+    private Main.CreatureState creature1;
+    private Main.CreatureState creature2;
+    private BetLedger bets;
+
+    @Setup
+    public void setUp() {
+        String[] ids = pair.split(":");
+        config = new Main.GameConfig();
+        damageTable = DamageTable.build(BenchmarkCatalog.CREATURES);
+        rng = DiceUtils.newGenerator(42);
+        solver = new BattleSolver(config, damageTable);
+        creature1 = new Main.CreatureState(BenchmarkCatalog.creature(ids[0]));
+        creature2 = new Main.CreatureState(BenchmarkCatalog.creature(ids[1]));
+        bets = new BetLedger(2, 2);
+        bets.add(0, 0, 300);
+        bets.add(1, 0, 200);
+        bets.add(0, 1, 100);
+        bets.add(1, 1, 400);
+        creature1.recalculateDynamicStats();
+        creature2.recalculateDynamicStats();
+        engine = new BattleEngine(config, damageTable, rng, null);
+        pool = new CreaturePool();
+        poolIndex1 = pool.add(creature1);
+        poolIndex2 = pool.add(creature2);
+        engineWithListener = new BattleEngine(config, damageTable, rng, countingListener);
+    }
+
+    private BattleEngine engine;
+    private BattleEngine engineWithListener;
+    private CreaturePool pool;
+    private int poolIndex1;
+    private int poolIndex2;
+    private final CountingListener countingListener = new CountingListener();
+
+    /** Полный бой без слушателя на переиспользуемом движке: ожидается 0 B/op. */
+    @Benchmark
+    public int resolveBattle() {
+        engine.reset(creature1, creature2);
+        return engine.resolve();
+    }
+
+    /** Тот же бой, существа берутся из полос CreaturePool (без разбора списков missChance/stunChance). */
+    @Benchmark
+    public int resolveBattleFromPool() {
+        engine.reset(pool, poolIndex1, poolIndex2);
+        return engine.resolve();
+    }
+
+    /** Тот же бой, но со слушателем: кубики восстанавливаются для лога, память все равно не выделяется. */
+    @Benchmark
+    public int resolveBattleWithListener() {
+        engineWithListener.reset(creature1, creature2);
+        return engineWithListener.resolve() + countingListener.events;
+    }
+
+    /** Старый способ: новый движок на каждый бой. */
+    @Benchmark
+    public int resolveBattleFreshEngine() {
+        return new BattleEngine(config, damageTable, rng, creature1, creature2, null).resolve();
+    }
+
+    @Benchmark
+    public double solveExact() {
+        return solver.solve(creature1, creature2).creature1WinProbability();
+    }
+
+    /** Выплаты после победы первого существа со ставками обоих игроков на обоих существ. */
+    @Benchmark
+    public int settlePayout() {
+        BattlePayout.Result result = BattlePayout.settle(config, creature1, creature2, bets, 0);
+        return result.player1NetProfit() + result.player2NetProfit();
+    }
+
+    private static final class CountingListener implements BattleEngine.BattleListener {
+        int events;
+
+        @Override
+        public void onAttack(int attacker, int[] rolls, int diceCount,
+                             int rawDamage, int damageReduction, int finalDamage, int defenderHealth) {
+            events += rolls[diceCount - 1];
+        }
+
+        @Override
+        public void onMiss(int dieNumber, int roll) {
+            events++;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package yermakov.oleksii.bench;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import yermakov.oleksii.Main;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Карты из ресурсов основного jar - те же creatures.json / influenceCards.json, что попадают в игру.
+ */
+final class BenchmarkCatalog {
+
+    static final List<Main.CardData> CREATURES = load("/creatures.json");
+    static final List<Main.CardData> INFLUENCE_CARDS = load("/influenceCards.json");
+
+    private BenchmarkCatalog() {
+    }
+
+    static Main.CardData creature(String id) {
+        for (Main.CardData card : CREATURES) {
+            if (card.id.equals(id)) {
+                return card;
+            }
+        }
+        throw new IllegalArgumentException("Unknown creature id: " + id);
+    }
+
+    private static List<Main.CardData> load(String resource) {
+        ObjectMapper mapper = new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        try (InputStream in = Main.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("Resource not found: " + resource);
+            }
+            return mapper.readValue(in, new TypeReference<>() {});
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package yermakov.oleksii.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Точка входа benchmarks.jar: обычные параметры JMH плюс всегда включенный профайлер аллокаций
+ * (то же самое, что {@code -prof gc}), чтобы видеть gc.alloc.rate.norm рядом со временем.
+ * Без {@code -p pair=...} {@link BattleBenchmark} идет по всем парам существ из creatures.json.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(cmdOptions)
+                .addProfiler(GCProfiler.class);
+        if (!cmdOptions.getParameter("pair").hasValue()) {
+            options.param("pair", BattleBenchmark.allPairs());
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,72 @@
+package yermakov.oleksii.bench;
+
+import org.openjdk.jmh.annotations.*;
+import yermakov.oleksii.Catalog;
+import yermakov.oleksii.Main;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Загрузка каталога при старте: разбор JSON через Jackson против бинарного снимка.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CatalogBenchmark {
+
+    private Path dir;
+    private Path config;
+    private Path creatures;
+    private Path influence;
+    private Path snapshot;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("catalog-bench");
+        config = copyResource(Catalog.CONFIG_FILE);
+        creatures = copyResource(Catalog.CREATURES_FILE);
+        influence = copyResource(Catalog.INFLUENCE_FILE);
+        snapshot = dir.resolve(Catalog.SNAPSHOT_FILE);
+        // Первый вызов пишет снимок, дальше замеряется только чтение
+        Catalog.loadCached(config, creatures, influence, snapshot);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Benchmark
+    public Catalog loadJson() throws IOException {
+        return Catalog.load(config, creatures, influence);
+    }
+
+    @Benchmark
+    public Catalog loadSnapshot() throws IOException {
+        return Catalog.loadCached(config, creatures, influence, snapshot);
+    }
+
+    private Path copyResource(String fileName) throws IOException {
+        Path target = dir.resolve(fileName);
+        try (InputStream in = Main.class.getResourceAsStream("/" + fileName)) {
+            if (in == null) {
+                throw new IOException("Resource not found: " + fileName);
+            }
+            Files.copy(in, target);
+        }
+        return target;
+    }
+}
@@ -0,0 +1,49 @@
+package yermakov.oleksii.bench;
+
+import org.openjdk.jmh.annotations.*;
+import yermakov.oleksii.Catalog;
+import yermakov.oleksii.CountedDeck;
+import yermakov.oleksii.Main;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Колода из influenceCards.json: сборка, копия для поиска и вытягивание всех карт.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DeckBenchmark {
+
+    private final CountedDeck deck = new CountedDeck();
+    private final CountedDeck copy = new CountedDeck();
+    private Catalog catalog;
+    private long seed;
+
+    @Setup
+    public void setUp() {
+        catalog = new Catalog(new Main.GameConfig(), BenchmarkCatalog.CREATURES, BenchmarkCatalog.INFLUENCE_CARDS);
+        deck.reset(catalog, 42);
+    }
+
+    @Benchmark
+    public int buildAndDrawAll() {
+        copy.reset(catalog, seed++);
+        int cost = 0;
+        while (!copy.isEmpty()) {
+            cost += copy.template(copy.draw()).cost;
+        }
+        return cost;
+    }
+
+    /** Так MctsPolicy готовит каждую итерацию: копия колоды и новый порядок карт. */
+    @Benchmark
+    public int forkAndDraw() {
+        copy.copyFrom(deck);
+        copy.reseed(seed++);
+        return copy.draw();
+    }
+}
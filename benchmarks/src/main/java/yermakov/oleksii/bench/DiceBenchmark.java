@@ -0,0 +1,45 @@
+package yermakov.oleksii.bench;
+
+import org.openjdk.jmh.annotations.*;
+import yermakov.oleksii.DiceUtils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DiceBenchmark {
+
+    @Param({"1", "2", "3"})
+    public int diceCount;
+
+    private RandomGenerator rng;
+    private final int[] buffer = new int[64];
+
+    @Setup
+    public void setUp() {
+        rng = DiceUtils.newGenerator(42);
+    }
+
+    @Benchmark
+    public int rollD6() {
+        return DiceUtils.rollD6(rng, diceCount);
+    }
+
+    @Benchmark
+    public int rollCombination() {
+        return DiceUtils.rollCombination(rng, diceCount);
+    }
+
+    /** 64 кубика пачкой: около 8 кубиков на одно 64-битное число. */
+    @Benchmark
+    @OperationsPerInvocation(64)
+    public int fillD6Bulk() {
+        DiceUtils.fillD6(rng, buffer);
+        return buffer[63];
+    }
+}
@@ -0,0 +1,35 @@
+package yermakov.oleksii.bench;
+
+import org.openjdk.jmh.annotations.*;
+import yermakov.oleksii.Main;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пересчет динамических статов Жирного беса (n2) ниже порогов и на порогах 15 и 25 HP.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DynamicStatsBenchmark {
+
+    @Param({"5", "15", "25"})
+    public int health;
+
+    private Main.CreatureState fatImp;
+
+    @Setup
+    public void setUp() {
+        fatImp = new Main.CreatureState(BenchmarkCatalog.creature("n2"));
+        fatImp.currentHealth = health;
+    }
+
+    @Benchmark
+    public int recalculateDynamicStats() {
+        fatImp.recalculateDynamicStats();
+        return fatImp.currentAttack + fatImp.currentDefense + fatImp.currentRatePoints;
+    }
+}
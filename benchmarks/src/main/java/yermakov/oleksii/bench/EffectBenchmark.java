@@ -0,0 +1,51 @@
+package yermakov.oleksii.bench;
+
+import org.openjdk.jmh.annotations.*;
+import yermakov.oleksii.Catalog;
+import yermakov.oleksii.CompiledEffect;
+import yermakov.oleksii.Main;
+import yermakov.oleksii.MatchState;
+import yermakov.oleksii.PatchUtils;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Применение всех эффектов всех карт влияния из influenceCards.json к одному существу.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EffectBenchmark {
+
+    @Param({"n1", "n2", "n9"})
+    public String creatureId;
+
+    private MatchState game;
+    private Main.CardData template;
+    private CompiledEffect[] effects;
+
+    @Setup
+    public void setUp() {
+        // Матч нужен только как хранилище ставок и номера раунда
+        game = new MatchState(new Catalog(new Main.GameConfig(), BenchmarkCatalog.CREATURES, BenchmarkCatalog.INFLUENCE_CARDS));
+        game.currentPlayer = Main.Player.PLAYER_1;
+        template = BenchmarkCatalog.creature(creatureId);
+        effects = BenchmarkCatalog.INFLUENCE_CARDS.stream()
+                .flatMap(card -> Arrays.stream(card.getCompiledEffects()))
+                .toArray(CompiledEffect[]::new);
+    }
+
+    /** Каждый вызов начинает со свежего существа, чтобы статы не росли от итерации к итерации. */
+    @Benchmark
+    public int applyAllEffects() {
+        Main.CreatureState creature = new Main.CreatureState(template);
+        for (CompiledEffect effect : effects) {
+            PatchUtils.applyEffect(game, creature, effect, 1);
+        }
+        return creature.currentAttack + creature.currentDefense + creature.currentRatePoints;
+    }
+}
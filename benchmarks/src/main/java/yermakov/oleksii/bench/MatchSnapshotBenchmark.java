@@ -0,0 +1,49 @@
+package yermakov.oleksii.bench;
+
+import org.openjdk.jmh.annotations.*;
+import yermakov.oleksii.Catalog;
+import yermakov.oleksii.Main;
+import yermakov.oleksii.MatchSnapshot;
+import yermakov.oleksii.MatchState;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Снимок матча середины боя: запись (автосохранение после хода) и чтение (продолжение, форк в симуляции).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MatchSnapshotBenchmark {
+
+    private Catalog catalog;
+    private MatchState match;
+    private byte[] snapshot;
+
+    @Setup
+    public void setUp() {
+        catalog = new Catalog(new Main.GameConfig(), BenchmarkCatalog.CREATURES, BenchmarkCatalog.INFLUENCE_CARDS);
+        match = new MatchState(catalog);
+        match.startGame(42);
+        // Пара ходов, чтобы в стопках и ставках что-то было
+        for (int turn = 0; turn < 3; turn++) {
+            match.apply(MatchState.Action.play(0, MatchState.PlayMode.BUFF, 1 + turn % 2));
+            match.endTurn();
+        }
+        snapshot = MatchSnapshot.toBytes(match);
+    }
+
+    @Benchmark
+    public byte[] write() {
+        return MatchSnapshot.toBytes(match);
+    }
+
+    @Benchmark
+    public MatchState read() throws IOException {
+        return MatchSnapshot.fromBytes(catalog, snapshot);
+    }
+}
@@ -0,0 +1,418 @@
+package yermakov.oleksii;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ToDoubleFunction;
+import java.util.random.RandomGenerator;
+import java.util.stream.IntStream;
+
+/**
+ * Подбор ступеней и выплат в config.json: случайный поиск, затем уточнение эволюционной стратегией
+ * (упрощенная CMA-ES с диагональной ковариацией).
+ * <p>
+ * Кандидат оценивается по двум целям:
+ * <ul>
+ *   <li>ни одна пара существ (базовые статы) не выигрывает чаще {@link #PAIR_WIN_LIMIT} - точно через
+ *       {@link BattleSolver}, для циклических цепочек - Монте-Карло;</li>
+ *   <li>ставки на аутсайдера окупаются в ноль: средний результат ставки в 1 монету на существо
+ *       с RED (и GREEN) ступенью в симулированных матчах {@link GameSimulator} близок к нулю.</li>
+ * </ul>
+ * Кандидаты одного поколения оцениваются параллельно (по кандидату на поток), все кандидаты играют
+ * матчи с одними и теми же seed, чтобы сравнение не тонуло в шуме.
+ */
+public class BalanceOptimizer {
+
+    public static final double PAIR_WIN_LIMIT = 0.70;
+
+    private static final double PAIR_WEIGHT = 100.0;
+    private static final double RED_WEIGHT = 1.0;
+    private static final double GREEN_WEIGHT = 0.5;
+    // Меньше ставок этой ступени - оценка слишком шумная и не учитывается
+    private static final int MIN_TIER_SAMPLES = 50;
+    private static final long PAIR_SIMULATION_BATTLES = 20000;
+
+    /**
+     * Настраиваемые параметры и их границы.
+     */
+    enum Knob {
+        ATTACK_TIER_1_MAX(3, 10, true, c -> c.ATTACK_TIER_1_MAX, (c, v) -> c.ATTACK_TIER_1_MAX = (int) v),
+        ATTACK_TIER_2_MAX(6, 20, true, c -> c.ATTACK_TIER_2_MAX, (c, v) -> c.ATTACK_TIER_2_MAX = (int) v),
+        DEFENSE_TIER_1_MAX(1, 6, true, c -> c.DEFENSE_TIER_1_MAX, (c, v) -> c.DEFENSE_TIER_1_MAX = (int) v),
+        DEFENSE_TIER_2_MAX(3, 12, true, c -> c.DEFENSE_TIER_2_MAX, (c, v) -> c.DEFENSE_TIER_2_MAX = (int) v),
+        BET_REWARD_GREEN_THRESHOLD(2, 8, true, c -> c.BET_REWARD_GREEN_THRESHOLD, (c, v) -> c.BET_REWARD_GREEN_THRESHOLD = (int) v),
+        BET_REWARD_RED_THRESHOLD(4, 14, true, c -> c.BET_REWARD_RED_THRESHOLD, (c, v) -> c.BET_REWARD_RED_THRESHOLD = (int) v),
+        REWARD_YELLOW_MULT(1.0, 1.5, false, c -> c.REWARD_YELLOW_MULT, (c, v) -> c.REWARD_YELLOW_MULT = v),
+        REWARD_GREEN_MULT(1.2, 3.0, false, c -> c.REWARD_GREEN_MULT, (c, v) -> c.REWARD_GREEN_MULT = v),
+        REWARD_RED_MULT(1.5, 5.0, false, c -> c.REWARD_RED_MULT, (c, v) -> c.REWARD_RED_MULT = v),
+        BET_AMOUNT_PER_RP(100, 600, true, c -> c.BET_AMOUNT_PER_RP, (c, v) -> c.BET_AMOUNT_PER_RP = (int) v);
+
+        final double min;
+        final double max;
+        final boolean integer;
+        final ToDoubleFunction<Main.GameConfig> getter;
+        final ObjDoubleConsumer<Main.GameConfig> setter;
+
+        Knob(double min, double max, boolean integer,
+             ToDoubleFunction<Main.GameConfig> getter, ObjDoubleConsumer<Main.GameConfig> setter) {
+            this.min = min;
+            this.max = max;
+            this.integer = integer;
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+
+    private static final Knob[] KNOBS = Knob.values();
+    private static final int TIERS = BattlePayout.RewardTier.values().length;
+
+    /**
+     * Оценка кандидата: чем меньше score, тем лучше.
+     * @param tierReturn средний результат ставки в 1 монету по ступеням (индекс - ordinal RewardTier)
+     */
+    public record Evaluation(double[] point, double score, double maxPairWinRate, String worstPair, int pairsOverLimit,
+                             double[] tierReturn, long[] tierSamples, double player1WinRate) {
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Catalog baseCatalog;
+    private final int gamesPerCandidate;
+    private final long seed;
+    private final String policy1;
+    private final String policy2;
+
+    /**
+     * По умолчанию матчи играют две случайные стратегии: окупаемость ступеней меряется при "нейтральной" игре.
+     * Жадные стратегии обе тянут одного фаворита, и он выигрывает почти всегда при любых множителях.
+     */
+    public BalanceOptimizer(Catalog baseCatalog, int gamesPerCandidate, long seed) {
+        this(baseCatalog, gamesPerCandidate, seed, "random", "random");
+    }
+
+    /**
+     * @param policy1 стратегия первого игрока для {@link PlayerPolicy#byName}
+     */
+    public BalanceOptimizer(Catalog baseCatalog, int gamesPerCandidate, long seed, String policy1, String policy2) {
+        this.baseCatalog = baseCatalog;
+        this.gamesPerCandidate = Math.max(1, gamesPerCandidate);
+        this.seed = seed;
+        this.policy1 = policy1;
+        this.policy2 = policy2;
+    }
+
+    /**
+     * Полный прогон: baseline, randomCandidates случайных точек, затем generations поколений уточнения.
+     * @return лучший найденный кандидат (или baseline, если лучше никого не нашлось)
+     */
+    public Evaluation optimize(int randomCandidates, int generations, int populationSize) {
+        RandomGenerator rng = DiceUtils.newGenerator(seed ^ 0x5DEECE66DL);
+        int lambda = Math.max(4, populationSize);
+        int mu = lambda / 2;
+
+        Evaluation best = baseline();
+
+        // 1. Случайный поиск
+        double[][] points = new double[Math.max(1, randomCandidates)][];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = randomPoint(rng);
+        }
+        Evaluation[] population = evaluateAll(points);
+        Arrays.sort(population, Comparator.comparingDouble(Evaluation::score));
+        if (population[0].score() < best.score()) {
+            best = population[0];
+        }
+
+        // 2. Уточнение: среднее лучших mu точек и шаг по каждой оси
+        double[] weights = recombinationWeights(mu);
+        double[] mean = weightedMean(population, weights, Math.min(mu, population.length));
+        double[] sigma = new double[KNOBS.length];
+        for (int k = 0; k < KNOBS.length; k++) {
+            sigma[k] = (KNOBS[k].max - KNOBS[k].min) / 6.0;
+        }
+
+        for (int g = 0; g < generations; g++) {
+            double[][] offspring = new double[lambda][];
+            for (int i = 0; i < lambda; i++) {
+                double[] p = new double[KNOBS.length];
+                for (int k = 0; k < KNOBS.length; k++) {
+                    p[k] = mean[k] + sigma[k] * rng.nextGaussian();
+                }
+                offspring[i] = repair(p);
+            }
+            population = evaluateAll(offspring);
+            Arrays.sort(population, Comparator.comparingDouble(Evaluation::score));
+            if (population[0].score() < best.score()) {
+                best = population[0];
+            }
+
+            double[] newMean = weightedMean(population, weights, mu);
+            for (int k = 0; k < KNOBS.length; k++) {
+                double spread = 0.0;
+                for (int i = 0; i < mu; i++) {
+                    double d = population[i].point()[k] - mean[k];
+                    spread += weights[i] * d * d;
+                }
+                // Сглаженная адаптация шага; у целых параметров шаг не меньше половины единицы
+                double floor = KNOBS[k].integer ? 0.5 : (KNOBS[k].max - KNOBS[k].min) / 100.0;
+                sigma[k] = Math.max(floor, 0.7 * sigma[k] + 0.3 * Math.sqrt(spread));
+            }
+            mean = newMean;
+        }
+        return best;
+    }
+
+    public Evaluation baseline() {
+        return evaluate(pointOf(baseCatalog.config));
+    }
+
+    private Evaluation[] evaluateAll(double[][] points) {
+        // По кандидату на поток: внутри оценка последовательная, параллельность - на уровне поколения
+        return IntStream.range(0, points.length)
+                .parallel()
+                .mapToObj(i -> evaluate(points[i]))
+                .toArray(Evaluation[]::new);
+    }
+
+    /**
+     * Оценивает одну точку пространства параметров.
+     */
+    public Evaluation evaluate(double[] point) {
+        Main.GameConfig config = toConfig(point);
+        Catalog catalog = baseCatalog.withConfig(config);
+
+        // --- Пары существ ---
+        List<Main.CardData> creatures = catalog.creatures;
+        BattleSolver solver = new BattleSolver(config, catalog.damageTable);
+        WinProbabilityEstimator estimator = new WinProbabilityEstimator(config, catalog.damageTable, 1);
+        double pairPenalty = 0.0;
+        double maxPair = 0.0;
+        String worstPair = "";
+        int overLimit = 0;
+        for (int i = 0; i < creatures.size(); i++) {
+            for (int j = i + 1; j < creatures.size(); j++) {
+                Main.CreatureState c1 = new Main.CreatureState(creatures.get(i));
+                Main.CreatureState c2 = new Main.CreatureState(creatures.get(j));
+                c1.recalculateDynamicStats();
+                c2.recalculateDynamicStats();
+                double p;
+                try {
+                    p = solver.solve(c1, c2).creature1WinProbability();
+                } catch (IllegalStateException e) {
+                    p = estimator.estimate(c1, c2, PAIR_SIMULATION_BATTLES, seed).winProbability();
+                }
+                double stronger = Math.max(p, 1.0 - p);
+                if (stronger > maxPair) {
+                    maxPair = stronger;
+                    worstPair = creatures.get(i).id + ":" + creatures.get(j).id;
+                }
+                if (stronger > PAIR_WIN_LIMIT) {
+                    overLimit++;
+                    double excess = stronger - PAIR_WIN_LIMIT;
+                    pairPenalty += excess * excess;
+                }
+            }
+        }
+
+        // --- Окупаемость ставок в матчах ---
+        double[] tierSum = new double[TIERS];
+        long[] tierCount = new long[TIERS];
+        GameSimulator.BattleObserver observer = (match, winner) -> {
+            recordBet(config, match.creature1State, match.creature2State, winner, tierSum, tierCount);
+            recordBet(config, match.creature2State, match.creature1State, winner, tierSum, tierCount);
+        };
+        GameSimulator simulator = new GameSimulator(catalog, 1);
+        MatchState match = new MatchState(catalog);
+        PlayerPolicy player1 = PlayerPolicy.byName(policy1);
+        PlayerPolicy player2 = PlayerPolicy.byName(policy2);
+        // Одни и те же seed матчей для всех кандидатов
+        RandomGenerator games = DiceUtils.newGenerator(seed);
+        long player1Wins = 0;
+        for (int g = 0; g < gamesPerCandidate; g++) {
+            if (simulator.playMatch(match, player1, player2, games.nextLong(), observer).winner() == 1) {
+                player1Wins++;
+            }
+        }
+
+        double[] tierReturn = new double[TIERS];
+        for (int t = 0; t < TIERS; t++) {
+            tierReturn[t] = (tierCount[t] > 0) ? tierSum[t] / tierCount[t] : 0.0;
+        }
+        double score = PAIR_WEIGHT * pairPenalty
+                + tierTerm(BattlePayout.RewardTier.RED, RED_WEIGHT, tierReturn, tierCount)
+                + tierTerm(BattlePayout.RewardTier.GREEN, GREEN_WEIGHT, tierReturn, tierCount);
+
+        return new Evaluation(point, score, maxPair, worstPair, overLimit, tierReturn, tierCount,
+                (double) player1Wins / gamesPerCandidate);
+    }
+
+    private static void recordBet(Main.GameConfig config, Main.CreatureState betOn, Main.CreatureState opponent,
+                                  Main.CreatureState winner, double[] tierSum, long[] tierCount) {
+        BattlePayout.RewardTier tier = BattlePayout.getRewardTier(config, betOn, opponent);
+        // Ставка в 1 монету: выигрыш - множитель ступени, проигрыш - минус ставка
+        tierSum[tier.ordinal()] += (winner == betOn) ? BattlePayout.getRewardMultiplier(config, tier) : -1.0;
+        tierCount[tier.ordinal()]++;
+    }
+
+    private static double tierTerm(BattlePayout.RewardTier tier, double weight, double[] tierReturn, long[] tierCount) {
+        if (tierCount[tier.ordinal()] < MIN_TIER_SAMPLES) {
+            return 0.0;
+        }
+        double r = tierReturn[tier.ordinal()];
+        return weight * r * r;
+    }
+
+    // --- Пространство параметров ---
+
+    static double[] pointOf(Main.GameConfig config) {
+        double[] point = new double[KNOBS.length];
+        for (int k = 0; k < KNOBS.length; k++) {
+            point[k] = KNOBS[k].getter.applyAsDouble(config);
+        }
+        return point;
+    }
+
+    Main.GameConfig toConfig(double[] point) {
+        // Копия базового конфига: параметры вне поиска остаются как есть
+        Main.GameConfig config = MAPPER.convertValue(baseCatalog.config, Main.GameConfig.class);
+        for (int k = 0; k < KNOBS.length; k++) {
+            KNOBS[k].setter.accept(config, point[k]);
+        }
+        return config;
+    }
+
+    private static double[] randomPoint(RandomGenerator rng) {
+        double[] p = new double[KNOBS.length];
+        for (int k = 0; k < KNOBS.length; k++) {
+            p[k] = rng.nextDouble(KNOBS[k].min, KNOBS[k].max);
+        }
+        return repair(p);
+    }
+
+    /**
+     * Возвращает точку в допустимую область: границы, округление целых, порядок ступеней и множителей.
+     */
+    static double[] repair(double[] p) {
+        for (int k = 0; k < KNOBS.length; k++) {
+            double v = Math.max(KNOBS[k].min, Math.min(KNOBS[k].max, p[k]));
+            p[k] = KNOBS[k].integer ? Math.round(v) : Math.round(v * 100.0) / 100.0;
+        }
+        ordered(p, Knob.ATTACK_TIER_1_MAX, Knob.ATTACK_TIER_2_MAX, 1.0);
+        ordered(p, Knob.DEFENSE_TIER_1_MAX, Knob.DEFENSE_TIER_2_MAX, 1.0);
+        ordered(p, Knob.BET_REWARD_GREEN_THRESHOLD, Knob.BET_REWARD_RED_THRESHOLD, 1.0);
+        ordered(p, Knob.REWARD_YELLOW_MULT, Knob.REWARD_GREEN_MULT, 0.0);
+        ordered(p, Knob.REWARD_GREEN_MULT, Knob.REWARD_RED_MULT, 0.0);
+        return p;
+    }
+
+    private static void ordered(double[] p, Knob lower, Knob upper, double gap) {
+        if (p[upper.ordinal()] < p[lower.ordinal()] + gap) {
+            p[upper.ordinal()] = p[lower.ordinal()] + gap;
+        }
+    }
+
+    private static double[] recombinationWeights(int mu) {
+        double[] w = new double[mu];
+        double sum = 0.0;
+        for (int i = 0; i < mu; i++) {
+            w[i] = Math.log(mu + 0.5) - Math.log(i + 1);
+            sum += w[i];
+        }
+        for (int i = 0; i < mu; i++) {
+            w[i] /= sum;
+        }
+        return w;
+    }
+
+    private static double[] weightedMean(Evaluation[] sorted, double[] weights, int count) {
+        double[] mean = new double[KNOBS.length];
+        double total = 0.0;
+        for (int i = 0; i < count; i++) {
+            total += weights[i];
+            for (int k = 0; k < KNOBS.length; k++) {
+                mean[k] += weights[i] * sorted[i].point()[k];
+            }
+        }
+        for (int k = 0; k < KNOBS.length; k++) {
+            mean[k] /= total;
+        }
+        return mean;
+    }
+
+    // --- Вывод ---
+
+    String report(Evaluation baseline, Evaluation best, long seconds) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Подбор баланса: seed=").append(seed)
+                .append(", ").append(policy1).append(" vs ").append(policy2)
+                .append(", матчей на кандидата: ").append(gamesPerCandidate)
+                .append(", время: ").append(seconds).append(" с\n\n");
+        sb.append(String.format(Locale.ROOT, "%-28s %10s %10s%n", "Параметр", "было", "стало"));
+        for (int k = 0; k < KNOBS.length; k++) {
+            sb.append(String.format(Locale.ROOT, "%-28s %10s %10s%n", KNOBS[k].name(),
+                    format(KNOBS[k], baseline.point()[k]), format(KNOBS[k], best.point()[k])));
+        }
+        sb.append('\n');
+        appendEvaluation(sb, "Было", baseline);
+        appendEvaluation(sb, "Стало", best);
+        return sb.toString();
+    }
+
+    private static void appendEvaluation(StringBuilder sb, String title, Evaluation e) {
+        sb.append(title).append(String.format(Locale.ROOT, ": score=%.4f%n", e.score()));
+        sb.append(String.format(Locale.ROOT, "  худшая пара %s: %.1f%%, пар выше %.0f%%: %d%n",
+                e.worstPair(), e.maxPairWinRate() * 100.0, PAIR_WIN_LIMIT * 100.0, e.pairsOverLimit()));
+        for (BattlePayout.RewardTier tier : BattlePayout.RewardTier.values()) {
+            sb.append(String.format(Locale.ROOT, "  ставка на %-6s: %+.3f за монету (%d ставок)%n",
+                    tier.name(), e.tierReturn()[tier.ordinal()], e.tierSamples()[tier.ordinal()]));
+        }
+        sb.append(String.format(Locale.ROOT, "  победы первого игрока: %.1f%%%n", e.player1WinRate() * 100.0));
+    }
+
+    private static String format(Knob knob, double value) {
+        return knob.integer ? Long.toString(Math.round(value)) : String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    /**
+     * Запуск из консоли:
+     * {@code BalanceOptimizer [случайных кандидатов] [поколений] [матчей на кандидата] [seed] [папка вывода]
+     * [стратегия P1] [стратегия P2]}. Пишет config.candidate.json и balance-report.txt.
+     */
+    public static void main(String[] args) throws IOException {
+        int randomCandidates = (args.length > 0) ? Integer.parseInt(args[0]) : 32;
+        int generations = (args.length > 1) ? Integer.parseInt(args[1]) : 6;
+        int games = (args.length > 2) ? Integer.parseInt(args[2]) : 2000;
+        long seed = (args.length > 3) ? Long.parseLong(args[3]) : DiceUtils.newSeed();
+        Path outDir = Path.of((args.length > 4) ? args[4] : ".");
+        String policy1 = (args.length > 5) ? args[5] : "random";
+        String policy2 = (args.length > 6) ? args[6] : "random";
+
+        BalanceOptimizer optimizer = new BalanceOptimizer(Catalog.loadBundled(), games, seed, policy1, policy2);
+        // Поколение не меньше числа ядер, чтобы загрузить все
+        int population = Math.max(16, 2 * Runtime.getRuntime().availableProcessors());
+
+        long start = System.nanoTime();
+        Evaluation baseline = optimizer.baseline();
+        Evaluation best = optimizer.optimize(randomCandidates, generations, population);
+        long seconds = (System.nanoTime() - start) / 1_000_000_000L;
+
+        Files.createDirectories(outDir);
+        Path configPath = outDir.resolve("config.candidate.json");
+        Path reportPath = outDir.resolve("balance-report.txt");
+        ObjectMapper writer = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        Files.writeString(configPath, writer.writeValueAsString(optimizer.toConfig(best.point())));
+        String report = optimizer.report(baseline, best, seconds);
+        Files.writeString(reportPath, report);
+
+        System.out.print(report);
+        System.out.println("\n-> " + configPath.toAbsolutePath() + "\n-> " + reportPath.toAbsolutePath());
+    }
+}
@@ -0,0 +1,375 @@
+package yermakov.oleksii;
+
+import java.util.Objects;
+import java.util.random.RandomGenerator;
+
+/**
+ * Движок боя без UI. Реализует те же правила, что и раньше жили в Main.playBattleStep():
+ * пропуск хода при оглушении, промах (missChance), оглушающий удар (stunChance),
+ * магический барьер, вампиризм и ступени защиты.
+ * <p>
+ * Бой можно прогнать целиком через {@link #resolve()} или по шагам через {@link #step()}
+ * (так делает анимация в UI). Все, что происходит в бою, сообщается слушателю {@link BattleListener}.
+ * <p>
+ * Атака - один бросок индекса в [0, 6^n) и поиск исхода в {@link DamageTable}. Отдельные кубики
+ * восстанавливаются из индекса только если есть слушатель, которому нужен лог.
+ * <p>
+ * Состояние боя хранится в примитивных полях движка, исходные CreatureState не меняются
+ * (см. {@link #copyStateTo}). Один движок можно переиспользовать через {@link #reset}:
+ * в установившемся режиме шаг боя не выделяет памяти.
+ */
+public final class BattleEngine {
+
+    public static final int CREATURE_1 = 0;
+    public static final int CREATURE_2 = 1;
+
+    /**
+     * Слушатель событий боя. Все методы необязательные.
+     * Стороны передаются как {@link #CREATURE_1} / {@link #CREATURE_2}.
+     */
+    public interface BattleListener {
+        default void onStunSkip(int attacker) {}
+        default void onMiss(int dieNumber, int roll) {}
+        default void onStunTrigger(int dieNumber, int roll) {}
+        default void onBarrierAbsorb(int defender, int absorbedDie) {}
+
+        /**
+         * @param rolls буфер движка, первые diceCount значений - брошенные кубики.
+         *              Действителен только во время вызова.
+         */
+        default void onAttack(int attacker, int[] rolls, int diceCount,
+                              int rawDamage, int damageReduction, int finalDamage, int defenderHealth) {}
+        default void onVampirism(int attacker, int amount) {}
+        default void onBattleEnd(int winner) {}
+    }
+
+    private final Main.GameConfig config;
+    private final DamageTable sharedDamageTable;
+    private final RandomGenerator rng;
+    private final BattleListener listener;
+
+    private DamageTable damageTable;
+    private Main.CreatureState creature1;
+    private Main.CreatureState creature2;
+
+    // --- Состояние сторон: [CREATURE_1], [CREATURE_2] ---
+    private final int[] health = new int[2];
+    private final int[] barrier = new int[2];
+    private final boolean[] stunned = new boolean[2];
+    private final int[] diceCount = new int[2];
+    private final int[] defenseBlock = new int[2];
+    private final int[] vampirism = new int[2];
+    private final int[] missMask = new int[2];
+    private final int[] stunMask = new int[2];
+    private final int[] profile = new int[2];
+
+    // Кубики последней атаки, только для слушателя
+    private final int[] rolls = new int[DamageTable.MAX_DICE];
+
+    private int attacker;
+    private int winner = -1;
+    private int stepCount = 0;
+
+    /**
+     * @param damageTable таблицы, построенные при загрузке карт; null - строить под каждый бой
+     * @param rng         генератор бросков (например, с seed игры); скрытого генератора нет, чтобы бой воспроизводился
+     * @param listener    слушатель событий; null - лог не формируется вовсе
+     */
+    public BattleEngine(Main.GameConfig config, DamageTable damageTable, RandomGenerator rng, BattleListener listener) {
+        this.config = config;
+        this.sharedDamageTable = damageTable;
+        this.rng = Objects.requireNonNull(rng, "rng");
+        this.listener = listener;
+    }
+
+    public BattleEngine(Main.GameConfig config, DamageTable damageTable, RandomGenerator rng,
+                        Main.CreatureState creature1, Main.CreatureState creature2, BattleListener listener) {
+        this(config, damageTable, rng, listener);
+        reset(creature1, creature2);
+    }
+
+    /**
+     * Готовит новый бой между существами: копирует их статы и определяет инициативу.
+     */
+    public void reset(Main.CreatureState creature1, Main.CreatureState creature2) {
+        this.creature1 = creature1;
+        this.creature2 = creature2;
+        load(CREATURE_1, creature1.currentHealth, creature1.magicBarrier, creature1.isStunned, creature1.vampirism,
+                DamageTable.faceMask(creature1.missChance), DamageTable.faceMask(creature1.stunChance),
+                creature1.currentAttack, creature1.currentDefense);
+        load(CREATURE_2, creature2.currentHealth, creature2.magicBarrier, creature2.isStunned, creature2.vampirism,
+                DamageTable.faceMask(creature2.missChance), DamageTable.faceMask(creature2.stunChance),
+                creature2.currentAttack, creature2.currentDefense);
+        begin(creature1.currentAttack, creature2.currentAttack);
+    }
+
+    /**
+     * Готовит бой между существами из {@link CreaturePool}. Пул не меняется;
+     * {@link #getCreature} в этом режиме возвращает null.
+     */
+    public void reset(CreaturePool pool, int index1, int index2) {
+        this.creature1 = null;
+        this.creature2 = null;
+        loadFromPool(CREATURE_1, pool, index1);
+        loadFromPool(CREATURE_2, pool, index2);
+        begin(pool.get(index1, CreaturePool.ATTACK), pool.get(index2, CreaturePool.ATTACK));
+    }
+
+    private void loadFromPool(int side, CreaturePool pool, int index) {
+        load(side, pool.get(index, CreaturePool.HEALTH), pool.get(index, CreaturePool.MAGIC_BARRIER),
+                pool.hasFlag(index, CreaturePool.FLAG_STUNNED), pool.get(index, CreaturePool.VAMPIRISM),
+                pool.get(index, CreaturePool.MISS_MASK), pool.get(index, CreaturePool.STUN_MASK),
+                pool.get(index, CreaturePool.ATTACK), pool.get(index, CreaturePool.DEFENSE));
+    }
+
+    private void load(int side, int currentHealth, int magicBarrier, boolean isStunned, int vampire,
+                      int miss, int stun, int attack, int defense) {
+        health[side] = currentHealth;
+        barrier[side] = magicBarrier;
+        stunned[side] = isStunned;
+        vampirism[side] = vampire;
+        missMask[side] = miss;
+        stunMask[side] = stun;
+        diceCount[side] = getDiceCount(config, attack);
+        // Блок этой стороны работает, когда бьют по ней
+        defenseBlock[side] = getDefenseBlock(config, defense);
+    }
+
+    private void begin(int attack1, int attack2) {
+        damageTable = sharedDamageTable;
+        int profile1 = (damageTable != null) ? damageTable.profileOf(missMask[CREATURE_1], stunMask[CREATURE_1]) : -1;
+        int profile2 = (damageTable != null) ? damageTable.profileOf(missMask[CREATURE_2], stunMask[CREATURE_2]) : -1;
+        if (profile1 < 0 || profile2 < 0) {
+            damageTable = DamageTable.forMasks(missMask.clone(), stunMask.clone());
+            profile1 = damageTable.profileOf(missMask[CREATURE_1], stunMask[CREATURE_1]);
+            profile2 = damageTable.profileOf(missMask[CREATURE_2], stunMask[CREATURE_2]);
+        }
+        profile[CREATURE_1] = profile1;
+        profile[CREATURE_2] = profile2;
+
+        winner = -1;
+        stepCount = 0;
+
+        // Инициатива: у кого больше атака, тот бьет первым. При равенстве - бросок кубика.
+        if (attack1 > attack2) {
+            attacker = CREATURE_1;
+        } else if (attack2 > attack1) {
+            attacker = CREATURE_2;
+        } else {
+            int roll = DiceUtils.rollD6(rng, 1);
+            attacker = (roll % 2 == 0) ? CREATURE_1 : CREATURE_2;
+        }
+    }
+
+    /**
+     * Выполняет один ход текущего атакующего.
+     * @return true, если бой окончен
+     */
+    public boolean step() {
+        if (winner >= 0) {
+            return true;
+        }
+        stepCount++;
+        int defender = 1 - attacker;
+
+        // --- STUN CHECK (Пропуск хода) ---
+        if (stunned[attacker]) {
+            if (listener != null) {
+                listener.onStunSkip(attacker);
+            }
+            stunned[attacker] = false; // Оглушение снимается после пропуска
+            attacker = defender;
+            return false;
+        }
+
+        // --- БРОСОК: один индекс на все кубики атаки ---
+        int dice = diceCount[attacker];
+        int damageReduction = defenseBlock[defender];
+        int table = DamageTable.tableIndex(profile[attacker], dice, barrier[defender] > 0, damageReduction);
+        int rollIndex = DiceUtils.rollCombination(rng, dice);
+        int outcome = damageTable.outcome(table, rollIndex);
+
+        int rawDamage = 0;
+        if (listener != null) {
+            rawDamage = reportDice(rollIndex, dice, defender, DamageTable.barrierUsed(outcome));
+        }
+
+        // --- ОГЛУШАЮЩИЙ УДАР (Дварф) ---
+        if (DamageTable.stun(outcome)) {
+            stunned[defender] = true;
+        }
+
+        // --- МАГИЧЕСКИЙ БАРЬЕР (Поглощает один максимальный кубик) ---
+        if (DamageTable.barrierUsed(outcome)) {
+            barrier[defender]--;
+        }
+
+        // --- УРОН ПОСЛЕ ЗАЩИТЫ ---
+        int finalDamage = DamageTable.damage(outcome);
+
+        health[defender] -= finalDamage;
+        // ВНИМАНИЕ: Здесь НЕ пересчитываем динамические статы, так как бонусы не должны меняться в бою
+
+        if (listener != null) {
+            listener.onAttack(attacker, rolls, dice, rawDamage, damageReduction, finalDamage, Math.max(0, health[defender]));
+        }
+
+        // --- ВАМПИРИЗМ ---
+        if (vampirism[attacker] > 0 && finalDamage > 0) {
+            health[attacker] += vampirism[attacker];
+            if (listener != null) {
+                listener.onVampirism(attacker, vampirism[attacker]);
+            }
+        }
+
+        if (health[defender] <= 0) {
+            winner = attacker;
+            if (listener != null) {
+                listener.onBattleEnd(winner);
+            }
+            return true;
+        }
+
+        attacker = defender;
+        return false;
+    }
+
+    /**
+     * Восстанавливает отдельные кубики из индекса броска в буфер rolls и сообщает слушателю промахи,
+     * оглушения и поглощение барьером. Правила те же, что зашиты в {@link DamageTable}.
+     * @return урон до защиты (после барьера)
+     */
+    private int reportDice(int rollIndex, int dice, int defender, boolean barrierUsed) {
+        int rest = rollIndex;
+        int sum = 0;
+        int maxDie = 0;
+        for (int i = 0; i < dice; i++) {
+            int roll = rest % 6 + 1;
+            rest /= 6;
+            rolls[i] = roll;
+            int bit = 1 << (roll - 1);
+
+            // 1. Промах (Орк)
+            if ((missMask[attacker] & bit) != 0) {
+                listener.onMiss(i + 1, roll);
+                continue;
+            }
+
+            // 2. Оглушающий удар (Дварф)
+            if ((stunMask[attacker] & bit) != 0) {
+                listener.onStunTrigger(i + 1, roll);
+            }
+            sum += roll;
+            if (roll > maxDie) {
+                maxDie = roll;
+            }
+        }
+        if (barrierUsed) {
+            sum -= maxDie;
+            listener.onBarrierAbsorb(defender, maxDie);
+        }
+        return sum;
+    }
+
+    /**
+     * Прогоняет бой до конца синхронно.
+     * @return сторона-победитель ({@link #CREATURE_1} или {@link #CREATURE_2})
+     */
+    public int resolve() {
+        while (!step()) {
+            // бой продолжается
+        }
+        return winner;
+    }
+
+    /**
+     * Переносит HP, барьер и оглушение обратно в пул.
+     */
+    public void copyStateTo(CreaturePool pool, int index1, int index2) {
+        pool.set(index1, CreaturePool.HEALTH, health[CREATURE_1]);
+        pool.set(index1, CreaturePool.MAGIC_BARRIER, barrier[CREATURE_1]);
+        pool.setFlag(index1, CreaturePool.FLAG_STUNNED, stunned[CREATURE_1]);
+        pool.set(index2, CreaturePool.HEALTH, health[CREATURE_2]);
+        pool.set(index2, CreaturePool.MAGIC_BARRIER, barrier[CREATURE_2]);
+        pool.setFlag(index2, CreaturePool.FLAG_STUNNED, stunned[CREATURE_2]);
+    }
+
+    /**
+     * Переносит HP, барьер и оглушение обратно в состояния существ (например, для отображения в UI).
+     */
+    public void copyStateTo(Main.CreatureState state1, Main.CreatureState state2) {
+        state1.currentHealth = health[CREATURE_1];
+        state1.magicBarrier = barrier[CREATURE_1];
+        state1.isStunned = stunned[CREATURE_1];
+        state2.currentHealth = health[CREATURE_2];
+        state2.magicBarrier = barrier[CREATURE_2];
+        state2.isStunned = stunned[CREATURE_2];
+    }
+
+    public Main.CreatureState getCreature(int side) {
+        return (side == CREATURE_1) ? creature1 : creature2;
+    }
+
+    public int getAttackerSide() {
+        return attacker;
+    }
+
+    public Main.CreatureState getAttacker() {
+        return getCreature(attacker);
+    }
+
+    public Main.CreatureState getWinner() {
+        return (winner >= 0) ? getCreature(winner) : null;
+    }
+
+    public int getWinnerSide() {
+        return winner;
+    }
+
+    public boolean isCreature1Winner() {
+        return winner == CREATURE_1;
+    }
+
+    public boolean isFinished() {
+        return winner >= 0;
+    }
+
+    public int getHealth(int side) {
+        return health[side];
+    }
+
+    public int getBarrier(int side) {
+        return barrier[side];
+    }
+
+    public boolean isStunned(int side) {
+        return stunned[side];
+    }
+
+    public int getStepCount() {
+        return stepCount;
+    }
+
+    public static int getDiceCount(Main.GameConfig config, int attack) {
+        if (attack <= config.ATTACK_TIER_1_MAX) {
+            return 1;
+        }
+        if (attack <= config.ATTACK_TIER_2_MAX) {
+            return 2;
+        }
+        return 3;
+    }
+
+    public static int getDefenseBlock(Main.GameConfig config, int defense) {
+        if (defense <= 0) {
+            return 0;
+        }
+        if (defense <= config.DEFENSE_TIER_1_MAX) {
+            return 1;
+        }
+        if (defense <= config.DEFENSE_TIER_2_MAX) {
+            return 2;
+        }
+        return 3;
+    }
+}
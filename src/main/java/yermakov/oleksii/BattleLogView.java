@@ -0,0 +1,180 @@
+package yermakov.oleksii;
+
+import javafx.animation.AnimationTimer;
+import javafx.collections.ObservableListBase;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Лог боя: виртуализированный {@link ListView} поверх кольцевого буфера событий.
+ * <p>
+ * В буфере лежат не строки, а события (ключ I18n и аргументы): текст собирается только в ячейках,
+ * которые ListView создает для видимых строк. Старые события вытесняются, когда буфер полон.
+ * Добавления копятся и попадают в список одной пачкой раз в кадр (AnimationTimer), поэтому
+ * прокрутка вниз и перерасчет раскладки случаются раз за кадр, а не на каждую строку.
+ * <p>
+ * Все методы вызываются из FX-потока.
+ */
+public class BattleLogView {
+
+    public static final int DEFAULT_CAPACITY = 2000;
+
+    /**
+     * Событие лога: ключ строки I18n и аргументы для шаблона (см. {@link I18n.Message}).
+     */
+    public record Entry(String key, Object[] args) {
+
+        public String format() {
+            return I18n.format(key, args);
+        }
+    }
+
+    /**
+     * Броски кубиков: в строку ("[3, 5]") превращаются только при отображении.
+     */
+    public record Rolls(int[] values) {
+        @Override
+        public String toString() {
+            return Arrays.toString(values);
+        }
+    }
+
+    private final RingList entries;
+    private final List<Entry> pending = new ArrayList<>();
+    private final ListView<Entry> listView;
+    private boolean flushScheduled = false;
+
+    private final AnimationTimer pulse = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            flush();
+        }
+    };
+
+    public BattleLogView() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public BattleLogView(int capacity) {
+        entries = new RingList(Math.max(1, capacity));
+        listView = new ListView<>(entries);
+        listView.getStyleClass().add("battle-log-list");
+        listView.setFocusTraversable(false);
+        listView.setCellFactory(view -> new ListCell<>() {
+            {
+                getStyleClass().add("battle-log-cell");
+            }
+
+            @Override
+            protected void updateItem(Entry entry, boolean empty) {
+                super.updateItem(entry, empty);
+                setText((empty || entry == null) ? null : entry.format());
+            }
+        });
+    }
+
+    public ListView<Entry> getNode() {
+        return listView;
+    }
+
+    /**
+     * Добавляет событие; на экране оно появится в следующем кадре.
+     */
+    public void add(String key, Object... args) {
+        pending.add(new Entry(key, args));
+        if (!flushScheduled) {
+            flushScheduled = true;
+            pulse.start();
+        }
+    }
+
+    /**
+     * Переносит накопленные события в список и прокручивает вниз. Вызывается раз в кадр.
+     */
+    public void flush() {
+        pulse.stop();
+        flushScheduled = false;
+        if (pending.isEmpty()) {
+            return;
+        }
+        entries.append(pending);
+        pending.clear();
+        listView.scrollTo(entries.size() - 1);
+    }
+
+    public void clear() {
+        pending.clear();
+        entries.reset();
+    }
+
+    public int size() {
+        return entries.size() + pending.size();
+    }
+
+    /**
+     * Список фиксированной емкости: при переполнении самые старые элементы вытесняются.
+     */
+    private static final class RingList extends ObservableListBase<Entry> {
+        private final Entry[] ring;
+        private int head = 0;
+        private int size = 0;
+
+        RingList(int capacity) {
+            ring = new Entry[capacity];
+        }
+
+        @Override
+        public Entry get(int index) {
+            Objects.checkIndex(index, size);
+            return ring[(head + index) % ring.length];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        void append(List<Entry> batch) {
+            // Из пачки больше емкости имеет смысл только хвост
+            int from = Math.max(0, batch.size() - ring.length);
+            int overflow = size + (batch.size() - from) - ring.length;
+
+            beginChange();
+            if (overflow > 0) {
+                List<Entry> removed = new ArrayList<>(overflow);
+                for (int i = 0; i < overflow; i++) {
+                    removed.add(get(i));
+                    ring[(head + i) % ring.length] = null;
+                }
+                head = (head + overflow) % ring.length;
+                size -= overflow;
+                nextRemove(0, removed);
+            }
+            int start = size;
+            for (int i = from; i < batch.size(); i++) {
+                ring[(head + size) % ring.length] = batch.get(i);
+                size++;
+            }
+            nextAdd(start, size);
+            endChange();
+        }
+
+        void reset() {
+            if (size == 0) {
+                return;
+            }
+            List<Entry> removed = new ArrayList<>(this);
+            Arrays.fill(ring, null);
+            head = 0;
+            size = 0;
+            beginChange();
+            nextRemove(0, removed);
+            endChange();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package yermakov.oleksii;
+
+/**
+ * Расчет выплат по ставкам после боя (без UI).
+ */
+public class BattlePayout {
+
+    public enum RewardTier { YELLOW, GREEN, RED }
+
+    // Сколько крадет Вор у самого прибыльного игрока
+    public static final int THIEF_PENALTY = 400;
+
+    /**
+     * Итог боя для всех игроков.
+     * @param netProfits чистый итог по игрокам ({@link Main.Player#ordinal()})
+     */
+    public record Result(RewardTier winnerTier, int[] netProfits, boolean thiefTriggered) {
+
+        public int netProfit(int player) {
+            return netProfits[player];
+        }
+
+        public int player1NetProfit() {
+            return netProfits[0];
+        }
+
+        public int player2NetProfit() {
+            return netProfits[1];
+        }
+    }
+
+    /**
+     * @param winnerIndex номер победителя в bets
+     * @param opponent    существо, с которым сравнивается победитель для уровня награды (в бою двоих - проигравший)
+     */
+    public static Result settle(Main.GameConfig config, Main.CreatureState winner, Main.CreatureState opponent,
+                                BetLedger bets, int winnerIndex) {
+        RewardTier winnerTier = getRewardTier(config, winner, opponent);
+        int[] netProfits = new int[bets.players()];
+        bets.settle(winnerIndex, getRewardMultiplier(config, winnerTier), netProfits);
+
+        // --- ЛОГИКА ВОРА ---
+        // Если победитель - Вор (thief=true), он крадет 400 у самого прибыльного.
+        // Если самых прибыльных несколько, никто не теряет.
+        if (winner.thief) {
+            int richest = 0;
+            boolean tie = false;
+            for (int p = 1; p < netProfits.length; p++) {
+                if (netProfits[p] > netProfits[richest]) {
+                    richest = p;
+                    tie = false;
+                } else if (netProfits[p] == netProfits[richest]) {
+                    tie = true;
+                }
+            }
+            if (!tie) {
+                netProfits[richest] -= THIEF_PENALTY;
+            }
+        }
+
+        return new Result(winnerTier, netProfits, winner.thief);
+    }
+
+    public static RewardTier getRewardTier(Main.GameConfig config, Main.CreatureState betOn, Main.CreatureState opponent) {
+        int rpDiff = betOn.getTotalRP() - opponent.getTotalRP();
+        if (rpDiff > 0) {
+            return RewardTier.YELLOW;
+        } else {
+            int diff = Math.abs(rpDiff);
+            if (diff < config.BET_REWARD_GREEN_THRESHOLD) {
+                return RewardTier.YELLOW;
+            }
+            if (diff < config.BET_REWARD_RED_THRESHOLD) {
+                return RewardTier.GREEN;
+            }
+            return RewardTier.RED;
+        }
+    }
+
+    public static double getRewardMultiplier(Main.GameConfig config, RewardTier tier) {
+        switch (tier) {
+            case GREEN: return config.REWARD_GREEN_MULT;
+            case RED: return config.REWARD_RED_MULT;
+            case YELLOW:
+            default: return config.REWARD_YELLOW_MULT;
+        }
+    }
+}
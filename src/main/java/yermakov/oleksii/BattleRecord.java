@@ -0,0 +1,161 @@
+package yermakov.oleksii;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Записанный бой: все события слушателя и состояние сторон после каждого хода.
+ * <p>
+ * Бой разыгрывается один раз от seed боя ({@link MatchState#battleSeed}), обычно в фоновом потоке.
+ * Мгновенный показ и анимированный повтор берут исход из одной и той же записи, поэтому при одном
+ * seed исход одинаков; {@link MatchState#resolveBattle()} с тем же seed дает того же победителя.
+ */
+public final class BattleRecord {
+
+    // HP, барьер, оглушение для каждой стороны
+    private static final int STATE_INTS = 6;
+    // Обычный бой - десятки ходов; столько ходов бывает, только если ни одно существо не может нанести урон
+    static final int MAX_STEPS = 100_000;
+
+    private final int firstAttacker;
+    private final int winner;
+    private final List<Consumer<BattleEngine.BattleListener>> events;
+    // Индекс конца событий каждого хода в events
+    private final int[] stepEventEnd;
+    private final int[] states;
+
+    private BattleRecord(int firstAttacker, int winner, List<Consumer<BattleEngine.BattleListener>> events,
+                         int[] stepEventEnd, int[] states) {
+        this.firstAttacker = firstAttacker;
+        this.winner = winner;
+        this.events = events;
+        this.stepEventEnd = stepEventEnd;
+        this.states = states;
+    }
+
+    /**
+     * Разыгрывает бой между копиями существ. Сами состояния не меняются, вызывать можно из любого потока.
+     * @throws IllegalStateException если бой не кончился за {@link #MAX_STEPS} ходов
+     */
+    public static BattleRecord record(Main.GameConfig config, DamageTable damageTable, long seed,
+                                      Main.CreatureState creature1, Main.CreatureState creature2) {
+        Main.CreatureState c1 = new Main.CreatureState(creature1);
+        Main.CreatureState c2 = new Main.CreatureState(creature2);
+        Recorder recorder = new Recorder();
+        BattleEngine engine = new BattleEngine(config, damageTable, DiceUtils.newGenerator(seed), c1, c2, recorder);
+        int firstAttacker = engine.getAttackerSide();
+
+        int[] stepEventEnd = new int[16];
+        int[] states = new int[16 * STATE_INTS];
+        int steps = 0;
+        boolean finished;
+        do {
+            finished = engine.step();
+            if (steps == stepEventEnd.length) {
+                stepEventEnd = Arrays.copyOf(stepEventEnd, steps * 2);
+                states = Arrays.copyOf(states, steps * 2 * STATE_INTS);
+            }
+            stepEventEnd[steps] = recorder.events.size();
+            int s = steps * STATE_INTS;
+            for (int side = 0; side < 2; side++) {
+                states[s + side * 3] = engine.getHealth(side);
+                states[s + side * 3 + 1] = engine.getBarrier(side);
+                states[s + side * 3 + 2] = engine.isStunned(side) ? 1 : 0;
+            }
+            steps++;
+            if (!finished && steps >= MAX_STEPS) {
+                throw new IllegalStateException("Battle never ends: no winner after " + MAX_STEPS + " steps");
+            }
+        } while (!finished);
+
+        return new BattleRecord(firstAttacker, engine.getWinnerSide(), recorder.events,
+                Arrays.copyOf(stepEventEnd, steps), Arrays.copyOf(states, steps * STATE_INTS));
+    }
+
+    public int getFirstAttackerSide() {
+        return firstAttacker;
+    }
+
+    /**
+     * @return {@link BattleEngine#CREATURE_1} или {@link BattleEngine#CREATURE_2}
+     */
+    public int getWinnerSide() {
+        return winner;
+    }
+
+    public int getStepCount() {
+        return stepEventEnd.length;
+    }
+
+    /**
+     * Повторяет события хода step для слушателя (например, лога боя).
+     */
+    public void replayStep(int step, BattleEngine.BattleListener listener) {
+        int from = (step == 0) ? 0 : stepEventEnd[step - 1];
+        for (int i = from; i < stepEventEnd[step]; i++) {
+            events.get(i).accept(listener);
+        }
+    }
+
+    /**
+     * Переносит HP, барьер и оглушение после хода step в состояния существ.
+     */
+    public void applyState(int step, Main.CreatureState state1, Main.CreatureState state2) {
+        int s = step * STATE_INTS;
+        applySide(s, state1);
+        applySide(s + 3, state2);
+    }
+
+    private void applySide(int offset, Main.CreatureState state) {
+        state.currentHealth = states[offset];
+        state.magicBarrier = states[offset + 1];
+        state.isStunned = states[offset + 2] != 0;
+    }
+
+    /**
+     * Запоминает вызовы слушателя, чтобы повторить их позже.
+     */
+    private static final class Recorder implements BattleEngine.BattleListener {
+        final List<Consumer<BattleEngine.BattleListener>> events = new ArrayList<>();
+
+        @Override
+        public void onStunSkip(int attacker) {
+            events.add(l -> l.onStunSkip(attacker));
+        }
+
+        @Override
+        public void onMiss(int dieNumber, int roll) {
+            events.add(l -> l.onMiss(dieNumber, roll));
+        }
+
+        @Override
+        public void onStunTrigger(int dieNumber, int roll) {
+            events.add(l -> l.onStunTrigger(dieNumber, roll));
+        }
+
+        @Override
+        public void onBarrierAbsorb(int defender, int absorbedDie) {
+            events.add(l -> l.onBarrierAbsorb(defender, absorbedDie));
+        }
+
+        @Override
+        public void onAttack(int attacker, int[] rolls, int diceCount,
+                             int rawDamage, int damageReduction, int finalDamage, int defenderHealth) {
+            // Буфер бросков движок переиспользует
+            int[] copy = Arrays.copyOf(rolls, diceCount);
+            events.add(l -> l.onAttack(attacker, copy, diceCount, rawDamage, damageReduction, finalDamage, defenderHealth));
+        }
+
+        @Override
+        public void onVampirism(int attacker, int amount) {
+            events.add(l -> l.onVampirism(attacker, amount));
+        }
+
+        @Override
+        public void onBattleEnd(int winner) {
+            events.add(l -> l.onBattleEnd(winner));
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package yermakov.oleksii;
+
+import java.util.Arrays;
+
+/**
+ * Точный расчет исхода боя без сэмплирования.
+ * <p>
+ * Бой - конечная марковская цепь по состояниям (HP обоих, чей ход, остаток барьеров, флаги оглушения).
+ * Состояния группируются в "слои" по (HP1, HP2, барьер1, барьер2): внутри слоя меняются только очередь хода
+ * и оглушение (промахи, нулевой урон, пропуск хода), а любой переход между слоями необратим
+ * (урон уменьшает HP, барьер только тратится). Поэтому каждый слой решается как маленькая
+ * линейная система 8x8, а слои кешируются в таблице с примитивными ключами. Слои обходятся в глубину
+ * по явному стеку, а не рекурсией: цепочка слоев длиной в HP не упирается в стек потока.
+ * <p>
+ * Ограничения: если вампиризм есть у обоих существ, HP может вернуться к прежнему значению
+ * и слои перестают быть ацикличными; статы вне диапазона решателя и слишком большое число слоев
+ * (MAX_LAYERS) тоже не считаются. Во всех этих случаях бросается IllegalStateException - вызывающий
+ * переходит на Монте-Карло.
+ */
+public class BattleSolver {
+
+    /** Локальных состояний в слое: очередь хода (1 бит) x оглушение первого x оглушение второго. */
+    private static final int LOCAL_STATES = 8;
+    private static final int TURN_BIT = 1;
+    private static final int MAX_HEALTH = 0xFFFF;
+    private static final int MAX_BARRIER = 0xFF;
+    // Таблица слоев занимает около 200 байт на слой
+    private static final int MAX_LAYERS = 1 << 20;
+
+    /**
+     * Результат расчета. Шансы указаны для существ в том порядке, в каком их передали в solve().
+     */
+    public record Result(double creature1WinProbability, double creature2WinProbability,
+                         double expectedSteps, int layersSolved) {
+    }
+
+    private final Main.GameConfig config;
+    private final DamageTable sharedDamageTable;
+    private DamageTable damageTable;
+
+    private final int[] vampirism = new int[2];
+
+    // Таблица исходов атаки: [атакующий][барьер защитника поднят ? 1 : 0]
+    private final int[][] attackTable = new int[2][2];
+
+    private LayerTable table;
+    // Слои, ждущие решения (см. solveLayers)
+    private long[] stack = new long[256];
+    private int stackSize;
+
+    public BattleSolver(Main.GameConfig config) {
+        this(config, null);
+    }
+
+    /**
+     * @param damageTable таблицы исходов, построенные при загрузке карт; null - строить под каждый расчет
+     */
+    public BattleSolver(Main.GameConfig config, DamageTable damageTable) {
+        this.config = config;
+        this.sharedDamageTable = damageTable;
+    }
+
+    public Result solve(Main.CreatureState creature1, Main.CreatureState creature2) {
+        damageTable = sharedDamageTable;
+        if (damageTable == null || damageTable.profileOf(creature1) < 0 || damageTable.profileOf(creature2) < 0) {
+            damageTable = DamageTable.forCreatures(creature1, creature2);
+        }
+
+        Main.CreatureState[] creatures = {creature1, creature2};
+        for (int attacker = 0; attacker < 2; attacker++) {
+            Main.CreatureState c = creatures[attacker];
+            Main.CreatureState target = creatures[1 - attacker];
+            if (c.currentHealth > MAX_HEALTH || c.magicBarrier > MAX_BARRIER) {
+                throw new IllegalStateException("Creature stats out of solver range: " + c.getLocalizedName());
+            }
+            vampirism[attacker] = c.vampirism;
+            int profile = damageTable.profileOf(c);
+            int dice = BattleEngine.getDiceCount(config, c.currentAttack);
+            int block = BattleEngine.getDefenseBlock(config, target.currentDefense);
+            attackTable[attacker][0] = DamageTable.tableIndex(profile, dice, false, block);
+            attackTable[attacker][1] = DamageTable.tableIndex(profile, dice, true, block);
+        }
+
+        // Без вампиризма слоев не больше, чем пар (HP, барьер); такой бой заранее отдаем Монте-Карло
+        long layerBound = (long) creature1.currentHealth * creature2.currentHealth
+                * (creature1.magicBarrier + 1) * (creature2.magicBarrier + 1);
+        if (layerBound > MAX_LAYERS) {
+            throw new IllegalStateException("Battle has too many states for the exact solver");
+        }
+
+        table = new LayerTable();
+
+        int hp0 = creature1.currentHealth;
+        int hp1 = creature2.currentHealth;
+        int bar0 = creature1.magicBarrier;
+        int bar1 = creature2.magicBarrier;
+        int stunBits = (creature1.isStunned ? 2 : 0) | (creature2.isStunned ? 4 : 0);
+
+        // Инициатива как в BattleEngine: при равной атаке четный бросок d6 (3 из 6) отдает ход первому
+        double firstAttacksProbability;
+        if (creature1.currentAttack > creature2.currentAttack) {
+            firstAttacksProbability = 1.0;
+        } else if (creature2.currentAttack > creature1.currentAttack) {
+            firstAttacksProbability = 0.0;
+        } else {
+            firstAttacksProbability = 0.5;
+        }
+
+        double win;
+        double steps;
+        if (hp0 <= 0 || hp1 <= 0) {
+            // Вырожденный случай: кто-то уже мертв до начала боя
+            win = (hp1 <= 0 && hp0 > 0) ? 1.0 : 0.0;
+            steps = 0.0;
+        } else {
+            int slot = solveLayers(layerKey(hp0, hp1, bar0, bar1));
+            int base = slot * LOCAL_STATES + stunBits;
+            win = firstAttacksProbability * table.win[base] + (1 - firstAttacksProbability) * table.win[base | TURN_BIT];
+            steps = firstAttacksProbability * table.steps[base] + (1 - firstAttacksProbability) * table.steps[base | TURN_BIT];
+        }
+
+        Result result = new Result(win, 1.0 - win, steps, table.size);
+        table = null;
+        damageTable = null;
+        return result;
+    }
+
+    /**
+     * Решает слой root и все достижимые из него слои и возвращает номер root в таблице.
+     * <p>
+     * Обход в глубину по стеку: слой при первом снятии со стека раскрывается (нерешенные преемники
+     * кладутся поверх него), при втором - все преемники уже решены, и решается он сам. Раскрытый,
+     * но не решенный слой лежит на текущем пути, поэтому переход в него означает цикл.
+     */
+    private int solveLayers(long root) {
+        int rootSlot = table.insert(root);
+        stackSize = 0;
+        push(root);
+        try {
+            while (stackSize > 0) {
+                long key = stack[stackSize - 1];
+                int slot = table.find(key);
+                if (!table.inProgress[slot]) {
+                    // Повторная запись слоя, уже решенного через другой путь
+                    stackSize--;
+                    continue;
+                }
+                if (!table.expanded[slot]) {
+                    table.expanded[slot] = true;
+                    int before = stackSize;
+                    visitLayer(key, slot, false);
+                    if (stackSize > before) {
+                        continue;
+                    }
+                }
+                stackSize--;
+                visitLayer(key, slot, true);
+            }
+        } finally {
+            stackSize = 0;
+        }
+        return rootSlot;
+    }
+
+    private void push(long key) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = key;
+    }
+
+    /**
+     * Проходит переходы из слоя key. solve = false - кладет на стек нерешенные слои-преемники;
+     * solve = true - все преемники решены, составляет и решает систему слоя.
+     * Локальное состояние: бит 0 - ход второго существа, бит 1 - первое оглушено, бит 2 - второе оглушено.
+     */
+    private void visitLayer(long key, int slot, boolean solve) {
+        int hp0 = (int) (key >>> 48) & 0xFFFF;
+        int hp1 = (int) (key >>> 32) & 0xFFFF;
+        int bar0 = (int) (key >>> 8) & 0xFF;
+        int bar1 = (int) key & 0xFF;
+
+        // Система (I - A) x = b отдельно для шанса победы и ожидаемой длины
+        double[][] matrix = solve ? new double[LOCAL_STATES][LOCAL_STATES] : null;
+        double[] winRhs = solve ? new double[LOCAL_STATES] : null;
+        double[] stepsRhs = solve ? new double[LOCAL_STATES] : null;
+
+        int[] hp = {hp0, hp1};
+        int[] bar = {bar0, bar1};
+
+        for (int local = 0; local < LOCAL_STATES; local++) {
+            if (solve) {
+                matrix[local][local] += 1.0;
+                stepsRhs[local] = 1.0; // каждый ход - один шаг боя
+            }
+
+            int attacker = local & TURN_BIT;
+            int defender = 1 - attacker;
+            int attackerStunBit = 2 << attacker;
+            int defenderStunBit = 2 << defender;
+
+            if ((local & attackerStunBit) != 0) {
+                // Пропуск хода: оглушение снимается, ход переходит
+                if (solve) {
+                    int next = (local & ~attackerStunBit) ^ TURN_BIT;
+                    matrix[local][next] -= 1.0;
+                }
+                continue;
+            }
+
+            int attack = attackTable[attacker][bar[defender] > 0 ? 1 : 0];
+            for (int o = damageTable.outcomesStart(attack); o < damageTable.outcomesEnd(attack); o++) {
+                double p = damageTable.outcomeProbability(o);
+                int code = damageTable.outcomeCode(o);
+                int damage = DamageTable.damage(code);
+                boolean barrierUsed = DamageTable.barrierUsed(code);
+                int nextLocal = (DamageTable.stun(code) ? (local | defenderStunBit) : local) ^ TURN_BIT;
+
+                if (damage == 0 && !barrierUsed) {
+                    // Тот же слой
+                    if (solve) {
+                        matrix[local][nextLocal] -= p;
+                    }
+                    continue;
+                }
+
+                int defenderHp = hp[defender] - damage;
+                if (defenderHp <= 0) {
+                    // Победа атакующего, бой окончен
+                    if (solve && attacker == 0) {
+                        winRhs[local] += p;
+                    }
+                    continue;
+                }
+
+                int[] nextHp = {hp0, hp1};
+                int[] nextBar = {bar0, bar1};
+                nextHp[defender] = defenderHp;
+                if (damage > 0) {
+                    nextHp[attacker] += vampirism[attacker];
+                }
+                if (barrierUsed) {
+                    nextBar[defender]--;
+                }
+                if (nextHp[attacker] > MAX_HEALTH) {
+                    throw new IllegalStateException("Health exceeded solver range");
+                }
+
+                long nextKey = layerKey(nextHp[0], nextHp[1], nextBar[0], nextBar[1]);
+                int nextSlot = table.find(nextKey);
+                if (!solve) {
+                    if (nextSlot < 0) {
+                        if (table.size >= MAX_LAYERS) {
+                            throw new IllegalStateException("Battle has too many states for the exact solver");
+                        }
+                        table.insert(nextKey);
+                        push(nextKey);
+                    } else if (table.inProgress[nextSlot]) {
+                        if (table.expanded[nextSlot]) {
+                            throw new IllegalStateException("Battle chain is cyclic (both creatures have vampirism?)");
+                        }
+                        push(nextKey);
+                    }
+                    continue;
+                }
+                int index = nextSlot * LOCAL_STATES + nextLocal;
+                winRhs[local] += p * table.win[index];
+                stepsRhs[local] += p * table.steps[index];
+            }
+        }
+
+        if (solve) {
+            double[][] solution = solveLinear(matrix, winRhs, stepsRhs);
+            table.store(slot, solution[0], solution[1]);
+        }
+    }
+
+    private static long layerKey(int hp0, int hp1, int bar0, int bar1) {
+        return ((long) hp0 << 48) | ((long) hp1 << 32) | ((long) bar0 << 8) | bar1;
+    }
+
+    /**
+     * Метод Гаусса с выбором ведущего элемента для двух правых частей.
+     */
+    private static double[][] solveLinear(double[][] a, double[] b1, double[] b2) {
+        int n = a.length;
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            for (int row = col + 1; row < n; row++) {
+                if (Math.abs(a[row][col]) > Math.abs(a[pivot][col])) {
+                    pivot = row;
+                }
+            }
+            if (Math.abs(a[pivot][col]) < 1e-12) {
+                throw new IllegalStateException("Battle never ends: neither creature can deal damage");
+            }
+            swap(a, col, pivot);
+            swap(b1, col, pivot);
+            swap(b2, col, pivot);
+
+            for (int row = col + 1; row < n; row++) {
+                double factor = a[row][col] / a[col][col];
+                if (factor == 0.0) continue;
+                for (int k = col; k < n; k++) {
+                    a[row][k] -= factor * a[col][k];
+                }
+                b1[row] -= factor * b1[col];
+                b2[row] -= factor * b2[col];
+            }
+        }
+
+        double[] x1 = new double[n];
+        double[] x2 = new double[n];
+        for (int row = n - 1; row >= 0; row--) {
+            double s1 = b1[row];
+            double s2 = b2[row];
+            for (int k = row + 1; k < n; k++) {
+                s1 -= a[row][k] * x1[k];
+                s2 -= a[row][k] * x2[k];
+            }
+            x1[row] = s1 / a[row][row];
+            x2[row] = s2 / a[row][row];
+        }
+        return new double[][]{x1, x2};
+    }
+
+    private static void swap(double[][] a, int i, int j) {
+        double[] t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
+    private static void swap(double[] a, int i, int j) {
+        double t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
+    /**
+     * Хеш-таблица с открытой адресацией: ключ слоя (long) -> номер слота.
+     * Значения слоев лежат в плоских массивах по LOCAL_STATES на слот.
+     */
+    private static final class LayerTable {
+        private long[] keys = new long[1024];
+        private int[] slots = new int[1024];
+        private boolean[] used = new boolean[1024];
+        double[] win = new double[256 * LOCAL_STATES];
+        double[] steps = new double[256 * LOCAL_STATES];
+        // inProgress - слой еще не решен; expanded - его преемники уже положены на стек
+        boolean[] inProgress = new boolean[256];
+        boolean[] expanded = new boolean[256];
+        int size;
+
+        int find(long key) {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while (used[i]) {
+                if (keys[i] == key) {
+                    return slots[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        int insert(long key) {
+            if ((size + 1) * 2 > keys.length) {
+                rehash();
+            }
+            int slot = size++;
+            if (slot == inProgress.length) {
+                inProgress = Arrays.copyOf(inProgress, slot * 2);
+                expanded = Arrays.copyOf(expanded, slot * 2);
+                win = Arrays.copyOf(win, slot * 2 * LOCAL_STATES);
+                steps = Arrays.copyOf(steps, slot * 2 * LOCAL_STATES);
+            }
+            inProgress[slot] = true;
+            place(key, slot);
+            return slot;
+        }
+
+        void store(int slot, double[] winValues, double[] stepValues) {
+            System.arraycopy(winValues, 0, win, slot * LOCAL_STATES, LOCAL_STATES);
+            System.arraycopy(stepValues, 0, steps, slot * LOCAL_STATES, LOCAL_STATES);
+            inProgress[slot] = false;
+        }
+
+        private void place(long key, int slot) {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while (used[i]) {
+                i = (i + 1) & mask;
+            }
+            used[i] = true;
+            keys[i] = key;
+            slots[i] = slot;
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            int[] oldSlots = slots;
+            boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2];
+            slots = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i]) {
+                    place(oldKeys[i], oldSlots[i]);
+                }
+            }
+        }
+
+        private static int mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package yermakov.oleksii;
+
+import java.util.Arrays;
+
+/**
+ * Ставки боя: плотная матрица игрок x существо (строка на игрока) и текущие суммы по каждому существу.
+ * Игроки и существа нумеруются с 0 ({@link Main.Player#ordinal()}, target - 1), размеры задаются при
+ * создании, так что стол на больше игроков или арена на больше существ - тот же код без веток.
+ * <p>
+ * Суммы по существам ведутся при каждом изменении: {@code bonusRatePoints} считается от них без обхода матрицы.
+ */
+public final class BetLedger {
+
+    private final int players;
+    private final int creatures;
+    // [игрок * creatures + существо]
+    private final int[] bets;
+    private final int[] totals;
+
+    public BetLedger(int players, int creatures) {
+        this.players = players;
+        this.creatures = creatures;
+        this.bets = new int[players * creatures];
+        this.totals = new int[creatures];
+    }
+
+    public int players() {
+        return players;
+    }
+
+    public int creatures() {
+        return creatures;
+    }
+
+    public int get(int player, int creature) {
+        return bets[player * creatures + creature];
+    }
+
+    /**
+     * Сумма ставок всех игроков на существо.
+     */
+    public int total(int creature) {
+        return totals[creature];
+    }
+
+    /**
+     * Сумма ставок всех игроков, кроме player, на существо.
+     */
+    public int othersOn(int player, int creature) {
+        return totals[creature] - get(player, creature);
+    }
+
+    /**
+     * Добавляет ставку.
+     * @return новая сумма ставок на существо
+     */
+    public int add(int player, int creature, int amount) {
+        bets[player * creatures + creature] += amount;
+        return totals[creature] += amount;
+    }
+
+    /**
+     * Уменьшает на amount ставку каждого игрока, кроме player, на существо (не ниже нуля).
+     */
+    public void reduceOthers(int player, int creature, int amount) {
+        for (int p = 0; p < players; p++) {
+            if (p != player) {
+                int cell = p * creatures + creature;
+                int removed = Math.min(bets[cell], amount);
+                bets[cell] -= removed;
+                totals[creature] -= removed;
+            }
+        }
+    }
+
+    /**
+     * Ставит значение ячейки напрямую (загрузка снимка).
+     */
+    public void set(int player, int creature, int amount) {
+        int cell = player * creatures + creature;
+        totals[creature] += amount - bets[cell];
+        bets[cell] = amount;
+    }
+
+    public void clear() {
+        Arrays.fill(bets, 0);
+        Arrays.fill(totals, 0);
+    }
+
+    public void copyFrom(BetLedger other) {
+        System.arraycopy(other.bets, 0, bets, 0, bets.length);
+        System.arraycopy(other.totals, 0, totals, 0, totals.length);
+    }
+
+    /**
+     * Чистый итог каждого игрока после победы существа winner: ставка на него умножается на multiplier,
+     * ставки на остальных сгорают. Один проход по строкам матрицы.
+     * @param out массив на {@link #players()} элементов
+     */
+    public void settle(int winner, double multiplier, int[] out) {
+        for (int p = 0, row = 0; p < players; p++, row += creatures) {
+            int staked = 0;
+            for (int c = 0; c < creatures; c++) {
+                staked += bets[row + c];
+            }
+            int onWinner = bets[row + winner];
+            out[p] = (int) (onWinner * multiplier) - (staked - onWinner);
+        }
+    }
+
+    /**
+     * Вклад ставок в хеш позиции ({@link Zobrist#bet}).
+     */
+    long zobristKey() {
+        long key = 0L;
+        for (int cell = 0; cell < bets.length; cell++) {
+            key ^= Zobrist.bet(cell, bets[cell]);
+        }
+        return key;
+    }
+}
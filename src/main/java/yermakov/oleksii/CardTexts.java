@@ -0,0 +1,98 @@
+package yermakov.oleksii;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Имена и описания одного списка карт каталога (существ или карт влияния): по массиву на язык,
+ * индекс в массиве - {@link Main.CardData#index}. Строятся один раз при сборке {@link Catalog},
+ * после чего словари name/text у карт больше не нужны и обнуляются.
+ * <p>
+ * Строка берется по номеру текущего языка ({@link I18n#languageSlot()}), поэтому смена языка сразу
+ * меняет все тексты карт без повторного разбора JSON. Нет перевода - текст на {@link I18n#FALLBACK_LANGUAGE}.
+ */
+final class CardTexts {
+
+    private static final int FALLBACK = I18n.languageSlot(I18n.FALLBACK_LANGUAGE);
+
+    // [номер языка][индекс карты]; массива нет, если на этом языке нет ни одной строки
+    private final String[][] names;
+    private final String[][] texts;
+
+    private CardTexts(String[][] names, String[][] texts) {
+        this.names = names;
+        this.texts = texts;
+    }
+
+    /**
+     * Собирает таблицы для cards в порядке списка (i-я карта получит индекс i).
+     * Тексты берутся из словарей карт, а если карта уже была в другом каталоге - из его таблиц.
+     */
+    static CardTexts build(List<Main.CardData> cards) {
+        String[][] names = new String[FALLBACK + 1][];
+        String[][] texts = new String[FALLBACK + 1][];
+        for (int i = 0; i < cards.size(); i++) {
+            Main.CardData card = cards.get(i);
+            names = put(names, card.nameMap(), i, cards.size());
+            texts = put(texts, card.textMap(), i, cards.size());
+        }
+        if (names[FALLBACK] == null) names[FALLBACK] = new String[cards.size()];
+        if (texts[FALLBACK] == null) texts[FALLBACK] = new String[cards.size()];
+        return new CardTexts(names, texts);
+    }
+
+    private static String[][] put(String[][] columns, Map<String, String> strings, int card, int cardCount) {
+        if (strings == null) {
+            return columns;
+        }
+        for (Map.Entry<String, String> e : strings.entrySet()) {
+            int slot = I18n.languageSlot(e.getKey());
+            if (slot >= columns.length) {
+                columns = Arrays.copyOf(columns, slot + 1);
+            }
+            if (columns[slot] == null) {
+                columns[slot] = new String[cardCount];
+            }
+            columns[slot][card] = e.getValue();
+        }
+        return columns;
+    }
+
+    String name(int card) {
+        return lookup(names, card);
+    }
+
+    String text(int card) {
+        return lookup(texts, card);
+    }
+
+    private static String lookup(String[][] columns, int card) {
+        int slot = I18n.languageSlot();
+        String[] column = (slot < columns.length) ? columns[slot] : null;
+        String value = (column != null) ? column[card] : null;
+        return (value != null) ? value : columns[FALLBACK][card];
+    }
+
+    /**
+     * Имена карты по языкам (для снимка каталога и пересборки таблиц).
+     */
+    Map<String, String> nameMap(int card) {
+        return toMap(names, card);
+    }
+
+    Map<String, String> textMap(int card) {
+        return toMap(texts, card);
+    }
+
+    private static Map<String, String> toMap(String[][] columns, int card) {
+        Map<String, String> map = new HashMap<>();
+        for (int slot = 0; slot < columns.length; slot++) {
+            if (columns[slot] != null && columns[slot][card] != null) {
+                map.put(I18n.languageName(slot), columns[slot][card]);
+            }
+        }
+        return map;
+    }
+}
@@ -0,0 +1,203 @@
+package yermakov.oleksii;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Загруженные данные игры: конфиг, шаблоны существ и карт влияния, таблицы исходов атак.
+ * После создания не меняется, поэтому один каталог можно делить между потоками и матчами.
+ */
+public final class Catalog {
+
+    public static final String CREATURES_FILE = "creatures.json";
+    public static final String INFLUENCE_FILE = "influenceCards.json";
+    public static final String CONFIG_FILE = "config.json";
+    // Бинарный снимок разобранных JSON (см. CatalogSnapshot)
+    public static final String SNAPSHOT_FILE = "catalog.snapshot";
+
+    public final Main.GameConfig config;
+    public final List<Main.CardData> creatures;
+    public final List<Main.CardData> influenceCards;
+    public final DamageTable damageTable;
+
+    // Карты влияния по Main.CardData#index: движок обращается к картам только так, id нужен лишь для JSON
+    private final Main.CardData[] influenceByIndex;
+    private final Map<String, Main.CardData> cardsById = new HashMap<>();
+
+    public Catalog(Main.GameConfig config, List<Main.CardData> creatures, List<Main.CardData> influenceCards) {
+        this(config, creatures, influenceCards, null, null);
+    }
+
+    /**
+     * @param compileOnly разобрать эффекты только у этих карт (остальные взяты из другого каталога
+     *                    уже разобранными и могут читаться другими потоками); null - у всех
+     * @param damageTable готовая таблица исходов или null, чтобы построить по существам
+     */
+    private Catalog(Main.GameConfig config, List<Main.CardData> creatures, List<Main.CardData> influenceCards,
+                    List<Main.CardData> compileOnly, DamageTable damageTable) {
+        this.config = config;
+        this.creatures = Collections.unmodifiableList(new ArrayList<>(creatures));
+        this.influenceCards = Collections.unmodifiableList(new ArrayList<>(influenceCards));
+
+        for (Main.CardData c : creatures) cardsById.put(c.id, c);
+        for (Main.CardData c : influenceCards) cardsById.put(c.id, c);
+
+        // Индексы - позиции в своем списке; карты, взятые из другого каталога, свои индексы и тексты уже имеют
+        if (compileOnly == null || compileOnly == creatures) assignIndices(this.creatures);
+        if (compileOnly == null || compileOnly == influenceCards) assignIndices(this.influenceCards);
+        this.influenceByIndex = this.influenceCards.toArray(new Main.CardData[0]);
+
+        // Эффекты разбираются один раз: при розыгрыше строки уже не сравниваются
+        for (Main.CardData c : (compileOnly != null) ? compileOnly : cardsById.values()) c.compile();
+
+        // Исходы атак для всех профилей существ считаются один раз
+        this.damageTable = (damageTable != null) ? damageTable : DamageTable.build(this.creatures);
+    }
+
+    private Catalog(Catalog other, Main.GameConfig config) {
+        this.config = config;
+        this.creatures = other.creatures;
+        this.influenceCards = other.influenceCards;
+        this.influenceByIndex = other.influenceByIndex;
+        this.cardsById.putAll(other.cardsById);
+        // Таблицы исходов зависят только от профилей существ, не от конфига
+        this.damageTable = other.damageTable;
+    }
+
+    /**
+     * Те же карты с другим конфигом (например, кандидат при подборе баланса). Карты и таблицы общие.
+     */
+    public Catalog withConfig(Main.GameConfig config) {
+        return new Catalog(this, config);
+    }
+
+    /**
+     * Тот же конфиг и карты влияния с новыми существами (таблица исходов строится заново).
+     */
+    public Catalog withCreatures(List<Main.CardData> creatures) {
+        return new Catalog(config, creatures, influenceCards, creatures, null);
+    }
+
+    /**
+     * Тот же конфиг и существа с новыми картами влияния.
+     */
+    public Catalog withInfluenceCards(List<Main.CardData> influenceCards) {
+        return new Catalog(config, creatures, influenceCards, influenceCards, damageTable);
+    }
+
+    /**
+     * Карта влияния по ее {@link Main.CardData#index}.
+     */
+    public Main.CardData influenceCard(int index) {
+        return influenceByIndex[index];
+    }
+
+    /**
+     * Индекс карты влияния с тем же id в этом каталоге или -1 (для перехода матча на новый каталог).
+     */
+    public int influenceIndexOf(Main.CardData card) {
+        Main.CardData same = cardsById.get(card.id);
+        return (same != null && same.index < influenceByIndex.length && influenceByIndex[same.index] == same)
+                ? same.index : -1;
+    }
+
+    /**
+     * Назначает картам индексы по позициям в списке и переносит их тексты в таблицы по языкам.
+     */
+    private static void assignIndices(List<Main.CardData> cards) {
+        // Таблицы собираются до смены индексов: карта из другого каталога читает тексты по старому
+        CardTexts texts = CardTexts.build(cards);
+        for (int i = 0; i < cards.size(); i++) {
+            Main.CardData card = cards.get(i);
+            card.index = i;
+            card.localized = texts;
+            card.name = null;
+            card.text = null;
+        }
+    }
+
+    /**
+     * Карта по id или null.
+     */
+    public Main.CardData card(String id) {
+        return cardsById.get(id);
+    }
+
+    /**
+     * Читает каталог из JSON-файлов.
+     */
+    public static Catalog load(Path configPath, Path creaturesPath, Path influencePath) throws IOException {
+        return new Catalog(readConfig(configPath), readCards(creaturesPath), readCards(influencePath));
+    }
+
+    /**
+     * Разбирает один config.json (нужно, когда поменялся только он).
+     */
+    static Main.GameConfig readConfig(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return newMapper().readValue(in, Main.GameConfig.class);
+        }
+    }
+
+    /**
+     * Разбирает один файл карт (creatures.json или influenceCards.json).
+     */
+    static List<Main.CardData> readCards(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return newMapper().readValue(in, new TypeReference<>() {});
+        }
+    }
+
+    /**
+     * То же, что {@link #load}, но через бинарный снимок snapshotPath: если JSON-файлы не менялись,
+     * каталог читается из снимка без Jackson, иначе из JSON, и снимок перестраивается.
+     */
+    public static Catalog loadCached(Path configPath, Path creaturesPath, Path influencePath, Path snapshotPath)
+            throws IOException {
+        return CatalogSnapshot.load(configPath, creaturesPath, influencePath, snapshotPath);
+    }
+
+    /**
+     * Каталог из файлов, упакованных в jar (без внешней папки с данными) - для симуляций и бенчмарков.
+     */
+    public static Catalog loadBundled() throws IOException {
+        ObjectMapper mapper = newMapper();
+        try (InputStream config = resource(CONFIG_FILE);
+             InputStream creatures = resource(CREATURES_FILE);
+             InputStream influence = resource(INFLUENCE_FILE)) {
+            return read(mapper, config, creatures, influence);
+        }
+    }
+
+    private static Catalog read(ObjectMapper mapper, InputStream config, InputStream creatures, InputStream influence)
+            throws IOException {
+        Main.GameConfig gameConfig = mapper.readValue(config, Main.GameConfig.class);
+        List<Main.CardData> creatureList = mapper.readValue(creatures, new TypeReference<>() {});
+        List<Main.CardData> influenceList = mapper.readValue(influence, new TypeReference<>() {});
+        return new Catalog(gameConfig, creatureList, influenceList);
+    }
+
+    private static ObjectMapper newMapper() {
+        return new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    private static InputStream resource(String fileName) throws IOException {
+        InputStream is = Catalog.class.getResourceAsStream("/" + fileName);
+        if (is == null) {
+            throw new IOException("Файл ресурса не найден: " + fileName);
+        }
+        return is;
+    }
+}
@@ -0,0 +1,412 @@
+package yermakov.oleksii;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Бинарный снимок разобранного каталога (конфиг и карты), лежит рядом с JSON-файлами.
+ * <p>
+ * В заголовке - размер, время изменения и CRC32C каждого из трех JSON. Если все совпадает, снимок
+ * читается вручную, без Jackson и рефлексии; иначе каталог читается из JSON
+ * и снимок пишется заново. Снимок - только кэш: испорченный или устаревший файл просто перестраивается.
+ * <p>
+ * Поля {@link Main.GameConfig} и {@link Main.CardData} перечислены здесь явно. При добавлении поля
+ * его нужно дописать в writeX/readX и поднять {@link #VERSION}, иначе старые снимки прочтутся без него.
+ * <p>
+ * Файлы читаются обычным чтением, без отображения в память: на Windows отображение держит файл
+ * запертым до сборки мусора, и ни редактор не сохранит JSON, ни замена снимка не пройдет.
+ */
+final class CatalogSnapshot {
+
+    private static final int MAGIC = 0x44444353; // "DDCS"
+    private static final int VERSION = 1;
+    private static final int NULL = -1;
+    private static final int CHECKSUM_BUFFER = 64 * 1024;
+
+    private CatalogSnapshot() {
+    }
+
+    /**
+     * Каталог из снимка, если он соответствует JSON-файлам, иначе из JSON (со свежим снимком).
+     */
+    static Catalog load(Path configPath, Path creaturesPath, Path influencePath, Path snapshotPath) throws IOException {
+        long[] stamps = stamps(configPath, creaturesPath, influencePath);
+
+        if (Files.isRegularFile(snapshotPath)) {
+            try {
+                Catalog cached = read(snapshotPath, stamps);
+                if (cached != null) {
+                    return cached;
+                }
+            } catch (RuntimeException | IOException e) {
+                // Обрезанный или чужой файл - тот же промах кэша
+                System.err.println("Снимок каталога не прочитан, перестраиваю: " + e);
+            }
+        }
+
+        Catalog catalog = Catalog.load(configPath, creaturesPath, influencePath);
+        try {
+            write(snapshotPath, stamps, catalog);
+        } catch (IOException e) {
+            // Без снимка игра работает, просто следующий запуск снова разберет JSON
+            System.err.println("Не удалось записать снимок каталога: " + e);
+        }
+        return catalog;
+    }
+
+    /**
+     * Размер, время изменения и CRC32C каждого файла - ключ снимка. Снимать до разбора файлов:
+     * если файл поменяют во время разбора, ключ окажется старым и снимок просто перестроится.
+     */
+    static long[] stamps(Path... sources) throws IOException {
+        long[] stamps = new long[sources.length * 3];
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHECKSUM_BUFFER);
+        for (int i = 0; i < sources.length; i++) {
+            stamps[i * 3] = Files.size(sources[i]);
+            stamps[i * 3 + 1] = Files.getLastModifiedTime(sources[i]).toMillis();
+            stamps[i * 3 + 2] = checksum(sources[i], buffer);
+        }
+        return stamps;
+    }
+
+    private static long checksum(Path file, ByteBuffer buffer) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    // --- Чтение ---
+
+    /**
+     * @return каталог или null, если снимок от других JSON-файлов или другой версии
+     */
+    static Catalog read(Path snapshotPath, long[] stamps) throws IOException {
+        return read(ByteBuffer.wrap(Files.readAllBytes(snapshotPath)), stamps);
+    }
+
+    /**
+     * Каталог из снимка в памяти без ключа файлов (см. {@link #toBytes}).
+     * @throws IOException если это не снимок каталога, снимок другой версии или он обрезан
+     */
+    static Catalog fromBytes(byte[] data) throws IOException {
+        Catalog catalog;
+        try {
+            catalog = read(ByteBuffer.wrap(data), new long[0]);
+        } catch (RuntimeException e) {
+            throw new IOException("Снимок каталога поврежден", e);
+        }
+        if (catalog == null) {
+            throw new IOException("Это не снимок каталога версии " + VERSION);
+        }
+        return catalog;
+    }
+
+    private static Catalog read(ByteBuffer in, long[] stamps) {
+        if (in.getInt() != MAGIC || in.getInt() != VERSION || in.getInt() != stamps.length) {
+            return null;
+        }
+        for (long stamp : stamps) {
+            if (in.getLong() != stamp) {
+                return null;
+            }
+        }
+
+        Main.GameConfig config = readConfig(in);
+        List<Main.CardData> creatures = readCards(in);
+        List<Main.CardData> influenceCards = readCards(in);
+        return new Catalog(config, creatures, influenceCards);
+    }
+
+    private static Main.GameConfig readConfig(ByteBuffer in) {
+        Main.GameConfig c = new Main.GameConfig();
+        c.STARTING_HAND_SIZE = in.getInt();
+        c.MAX_HAND_SIZE = in.getInt();
+        c.MAX_TURN_POINTS = in.getInt();
+        c.MAX_ROUNDS_PER_BATTLE = in.getInt();
+        c.MAX_BATTLES = in.getInt();
+        c.ATTACK_TIER_1_MAX = in.getInt();
+        c.ATTACK_TIER_2_MAX = in.getInt();
+        c.DEFENSE_TIER_1_MAX = in.getInt();
+        c.DEFENSE_TIER_2_MAX = in.getInt();
+        c.BATTLE_STEP_DELAY = in.getDouble();
+        c.BET_REWARD_GREEN_THRESHOLD = in.getInt();
+        c.BET_REWARD_RED_THRESHOLD = in.getInt();
+        c.REWARD_YELLOW_MULT = in.getDouble();
+        c.REWARD_GREEN_MULT = in.getDouble();
+        c.REWARD_RED_MULT = in.getDouble();
+        c.BET_AMOUNT_PER_RP = in.getInt();
+        c.ODDS_SIMULATION_BATTLES = in.getInt();
+        c.BATTLE_INSTANT = in.get() != 0;
+        c.AI_PLAYER_2 = in.get() != 0;
+        c.AI_THINK_TIME_MS = in.getInt();
+        return c;
+    }
+
+    private static List<Main.CardData> readCards(ByteBuffer in) {
+        int n = in.getInt();
+        List<Main.CardData> cards = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Main.CardData c = new Main.CardData();
+            c.id = readString(in);
+            c.name = readStringMap(in);
+            c.text = readStringMap(in);
+            c.cost = in.getInt();
+            c.betAmount = readInteger(in);
+            c.health = in.getInt();
+            c.attack = in.getInt();
+            c.defense = in.getInt();
+            c.ratePoints = in.getInt();
+            c.count = readInteger(in);
+            c.effects = readEffects(in);
+            c.rpLimit = readInteger(in);
+            c.magicBarrier = readInteger(in);
+            c.vampirism = readInteger(in);
+            c.missChance = readIntegers(in);
+            c.stunChance = readIntegers(in);
+            c.thief = in.get() != 0;
+
+            int levels = in.getInt();
+            if (levels != NULL) {
+                c.dynamicStats = new ArrayList<>(levels);
+                for (int j = 0; j < levels; j++) {
+                    Main.DynamicStatConfig level = new Main.DynamicStatConfig();
+                    level.thresholdHp = in.getInt();
+                    level.effects = readEffects(in);
+                    c.dynamicStats.add(level);
+                }
+            }
+            cards.add(c);
+        }
+        return cards;
+    }
+
+    private static List<Main.Effect> readEffects(ByteBuffer in) {
+        int n = in.getInt();
+        if (n == NULL) {
+            return null;
+        }
+        List<Main.Effect> effects = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Main.Effect e = new Main.Effect();
+            e.op = readString(in);
+            e.path = readString(in);
+            e.value = readInteger(in);
+            effects.add(e);
+        }
+        return effects;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length == NULL) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> readStringMap(ByteBuffer in) {
+        int n = in.getInt();
+        if (n == NULL) {
+            return null;
+        }
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            map.put(readString(in), readString(in));
+        }
+        return map;
+    }
+
+    private static Integer readInteger(ByteBuffer in) {
+        return (in.get() != 0) ? in.getInt() : null;
+    }
+
+    private static List<Integer> readIntegers(ByteBuffer in) {
+        int n = in.getInt();
+        if (n == NULL) {
+            return null;
+        }
+        List<Integer> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            list.add(readInteger(in));
+        }
+        return list;
+    }
+
+    // --- Запись ---
+
+    /**
+     * Пишет снимок во временный файл и переносит его на место, чтобы читатель не увидел половину файла.
+     */
+    static void write(Path snapshotPath, long[] stamps, Catalog catalog) throws IOException {
+        Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            write(out, stamps, catalog);
+        }
+        try {
+            Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Снимок каталога в памяти, без ключа файлов: так каталог, на котором шла партия, записывается в журнал
+     * ({@link ReplayLog}).
+     */
+    static byte[] toBytes(Catalog catalog) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * 1024);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write(out, new long[0], catalog);
+        } catch (IOException e) {
+            // ByteArrayOutputStream не бросает
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void write(DataOutputStream out, long[] stamps, Catalog catalog) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(stamps.length);
+        for (long stamp : stamps) {
+            out.writeLong(stamp);
+        }
+        writeConfig(out, catalog.config);
+        writeCards(out, catalog.creatures);
+        writeCards(out, catalog.influenceCards);
+    }
+
+    private static void writeConfig(DataOutputStream out, Main.GameConfig c) throws IOException {
+        out.writeInt(c.STARTING_HAND_SIZE);
+        out.writeInt(c.MAX_HAND_SIZE);
+        out.writeInt(c.MAX_TURN_POINTS);
+        out.writeInt(c.MAX_ROUNDS_PER_BATTLE);
+        out.writeInt(c.MAX_BATTLES);
+        out.writeInt(c.ATTACK_TIER_1_MAX);
+        out.writeInt(c.ATTACK_TIER_2_MAX);
+        out.writeInt(c.DEFENSE_TIER_1_MAX);
+        out.writeInt(c.DEFENSE_TIER_2_MAX);
+        out.writeDouble(c.BATTLE_STEP_DELAY);
+        out.writeInt(c.BET_REWARD_GREEN_THRESHOLD);
+        out.writeInt(c.BET_REWARD_RED_THRESHOLD);
+        out.writeDouble(c.REWARD_YELLOW_MULT);
+        out.writeDouble(c.REWARD_GREEN_MULT);
+        out.writeDouble(c.REWARD_RED_MULT);
+        out.writeInt(c.BET_AMOUNT_PER_RP);
+        out.writeInt(c.ODDS_SIMULATION_BATTLES);
+        out.writeBoolean(c.BATTLE_INSTANT);
+        out.writeBoolean(c.AI_PLAYER_2);
+        out.writeInt(c.AI_THINK_TIME_MS);
+    }
+
+    private static void writeCards(DataOutputStream out, List<Main.CardData> cards) throws IOException {
+        out.writeInt(cards.size());
+        for (Main.CardData c : cards) {
+            writeString(out, c.id);
+            writeStringMap(out, c.nameMap());
+            writeStringMap(out, c.textMap());
+            out.writeInt(c.cost);
+            writeInteger(out, c.betAmount);
+            out.writeInt(c.health);
+            out.writeInt(c.attack);
+            out.writeInt(c.defense);
+            out.writeInt(c.ratePoints);
+            writeInteger(out, c.count);
+            writeEffects(out, c.effects);
+            writeInteger(out, c.rpLimit);
+            writeInteger(out, c.magicBarrier);
+            writeInteger(out, c.vampirism);
+            writeIntegers(out, c.missChance);
+            writeIntegers(out, c.stunChance);
+            out.writeBoolean(c.thief);
+
+            if (c.dynamicStats == null) {
+                out.writeInt(NULL);
+            } else {
+                out.writeInt(c.dynamicStats.size());
+                for (Main.DynamicStatConfig level : c.dynamicStats) {
+                    out.writeInt(level.thresholdHp);
+                    writeEffects(out, level.effects);
+                }
+            }
+        }
+    }
+
+    private static void writeEffects(DataOutputStream out, List<Main.Effect> effects) throws IOException {
+        if (effects == null) {
+            out.writeInt(NULL);
+            return;
+        }
+        out.writeInt(effects.size());
+        for (Main.Effect e : effects) {
+            writeString(out, e.op);
+            writeString(out, e.path);
+            writeInteger(out, e.value);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(NULL);
+            return;
+        }
+        // writeUTF ограничен 64 КБ и пишет modified UTF-8, поэтому длина и байты отдельно
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeStringMap(DataOutputStream out, Map<String, String> map) throws IOException {
+        if (map == null) {
+            out.writeInt(NULL);
+            return;
+        }
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            writeString(out, e.getKey());
+            writeString(out, e.getValue());
+        }
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeIntegers(DataOutputStream out, List<Integer> list) throws IOException {
+        if (list == null) {
+            out.writeInt(NULL);
+            return;
+        }
+        out.writeInt(list.size());
+        for (Integer value : list) {
+            writeInteger(out, value);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package yermakov.oleksii;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Горячая перезагрузка данных: следит за config.json, creatures.json и influenceCards.json в папке данных
+ * и при изменении заново разбирает только изменившиеся файлы.
+ * <p>
+ * Разбор идет в своем потоке-демоне. Новый {@link Catalog} собирается из текущего (неизмененные части
+ * общие) и подменяет его целиком через {@link AtomicReference}, после чего вызывается onReload - из потока
+ * наблюдателя, так что UI должен сам перейти в свой поток. Уже открытые {@link MatchState} держат свой
+ * каталог и не меняются; перейти на новый можно через {@link MatchState#withCatalog(Catalog)}.
+ * Файл с ошибкой (например, сохраненный на середине правки) не применяется, остается прежний каталог.
+ */
+public final class CatalogWatcher implements AutoCloseable {
+
+    // Редакторы пишут файл в несколько приемов: ждем, пока события утихнут
+    private static final long SETTLE_MILLIS = 200;
+
+    private final Path dir;
+    private final Path snapshotPath;
+    private final AtomicReference<Catalog> current;
+    private final Consumer<Catalog> onReload;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    /**
+     * @param snapshotPath снимок каталога, который обновляется после перезагрузки, или null
+     */
+    public CatalogWatcher(Path dir, Catalog initial, Path snapshotPath, Consumer<Catalog> onReload) throws IOException {
+        this.dir = dir;
+        this.snapshotPath = snapshotPath;
+        this.current = new AtomicReference<>(initial);
+        this.onReload = onReload;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        // Сохранение через переименование дает CREATE, обычная запись - MODIFY
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = Thread.ofPlatform().daemon().name("catalog-watcher").unstarted(this::run);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public Catalog current() {
+        return current.get();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Set<String> changed = new HashSet<>();
+                collect(watchService.take(), changed);
+                WatchKey more;
+                while ((more = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    collect(more, changed);
+                }
+                if (!changed.isEmpty()) {
+                    reload(changed);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // close()
+        }
+    }
+
+    private void collect(WatchKey key, Set<String> changed) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path file) {
+                String name = file.getFileName().toString();
+                if (name.equals(Catalog.CONFIG_FILE) || name.equals(Catalog.CREATURES_FILE)
+                        || name.equals(Catalog.INFLUENCE_FILE)) {
+                    changed.add(name);
+                }
+            }
+        }
+        key.reset();
+    }
+
+    private void reload(Set<String> changed) {
+        Path configPath = dir.resolve(Catalog.CONFIG_FILE);
+        Path creaturesPath = dir.resolve(Catalog.CREATURES_FILE);
+        Path influencePath = dir.resolve(Catalog.INFLUENCE_FILE);
+        try {
+            long[] stamps = (snapshotPath != null)
+                    ? CatalogSnapshot.stamps(configPath, creaturesPath, influencePath) : null;
+
+            Catalog next = current.get();
+            if (changed.contains(Catalog.CREATURES_FILE)) {
+                next = next.withCreatures(Catalog.readCards(creaturesPath));
+            }
+            if (changed.contains(Catalog.INFLUENCE_FILE)) {
+                next = next.withInfluenceCards(Catalog.readCards(influencePath));
+            }
+            if (changed.contains(Catalog.CONFIG_FILE)) {
+                next = next.withConfig(Catalog.readConfig(configPath));
+            }
+            if (next.creatures.size() < 2) {
+                throw new IllegalStateException(I18n.getString("error.noCreatures"));
+            }
+            current.set(next);
+            onReload.accept(next);
+
+            if (stamps != null) {
+                saveSnapshot(stamps, next);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Данные не перезагружены " + changed + ": " + e);
+        }
+    }
+
+    private void saveSnapshot(long[] stamps, Catalog catalog) {
+        try {
+            CatalogSnapshot.write(snapshotPath, stamps, catalog);
+        } catch (IOException e) {
+            // Следующий запуск просто разберет JSON
+            System.err.println("Не удалось записать снимок каталога: " + e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Поток наблюдателя все равно завершится
+        }
+        thread.interrupt();
+    }
+}
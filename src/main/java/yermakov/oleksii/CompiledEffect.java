@@ -0,0 +1,106 @@
+package yermakov.oleksii;
+
+import java.util.List;
+
+/**
+ * Эффект карты, разобранный при загрузке: операция - enum, путь - индекс стата.
+ * При розыгрыше карты строки op/path больше не сравниваются.
+ */
+public final class CompiledEffect {
+
+    public enum Op { INC, DEC_OPPONENT_BETS, BLOCK_BETTING, NOOP }
+
+    // Индексы статов (и элементов массива CardData.getStatChanges())
+    public static final int HEALTH = 0;
+    public static final int ATTACK = 1;
+    public static final int DEFENSE = 2;
+    public static final int RATE_POINTS = 3;
+    public static final int OPPONENT_BETS = 4;
+    public static final int STAT_COUNT = 5;
+
+    // Индекс, для эффектов без стата (block_betting и пустые)
+    public static final int NO_STAT = -1;
+
+    private static final CompiledEffect NOOP = new CompiledEffect(Op.NOOP, NO_STAT, 0);
+
+    public final Op op;
+    public final int stat;
+    public final int value;
+
+    private CompiledEffect(Op op, int stat, int value) {
+        this.op = op;
+        this.stat = stat;
+        this.value = value;
+    }
+
+    /**
+     * Разбирает эффект. Неизвестные операции и пути сообщаются сразу (один раз при загрузке)
+     * и превращаются в NOOP - как и раньше, такой эффект просто ничего не делает.
+     */
+    public static CompiledEffect compile(Main.Effect effect, String cardId) {
+        if (effect == null || effect.op == null || effect.path == null || effect.value == null) {
+            return NOOP;
+        }
+
+        switch (effect.op) {
+            case "inc": {
+                int stat = statIndex(effect.path);
+                if (stat == NO_STAT || stat == OPPONENT_BETS) {
+                    reportUnknownPath(effect.path, cardId);
+                    return NOOP;
+                }
+                return new CompiledEffect(Op.INC, stat, effect.value);
+            }
+            case "dec_bet":
+                if (!"/opponent_bets".equals(effect.path)) {
+                    reportUnknownPath(effect.path, cardId);
+                    return NOOP;
+                }
+                return new CompiledEffect(Op.DEC_OPPONENT_BETS, OPPONENT_BETS, effect.value);
+
+            case "apply_status":
+                if (!"/block_betting".equals(effect.path)) {
+                    reportUnknownPath(effect.path, cardId);
+                    return NOOP;
+                }
+                return new CompiledEffect(Op.BLOCK_BETTING, NO_STAT, effect.value);
+
+            default:
+                if (!effect.op.isEmpty()) {
+                    System.err.println(I18n.format("error.unsupportedOp", effect.op) + " (" + cardId + ")");
+                }
+                return NOOP;
+        }
+    }
+
+    public static CompiledEffect[] compileAll(List<Main.Effect> effects, String cardId) {
+        if (effects == null) {
+            return new CompiledEffect[0];
+        }
+        CompiledEffect[] result = new CompiledEffect[effects.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = compile(effects.get(i), cardId);
+        }
+        return result;
+    }
+
+    /**
+     * JSON-путь стата -> индекс, или {@link #NO_STAT}.
+     */
+    public static int statIndex(String path) {
+        switch (path) {
+            case "/health": return HEALTH;
+            case "/attack": return ATTACK;
+            case "/defense": return DEFENSE;
+            case "/ratePoints": return RATE_POINTS;
+            case "/opponent_bets": return OPPONENT_BETS;
+            default: return NO_STAT;
+        }
+    }
+
+    private static void reportUnknownPath(String path, String cardId) {
+        if (!path.isEmpty()) {
+            System.err.println(I18n.format("error.unknownPath", path) + " (" + cardId + ")");
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package yermakov.oleksii;
+
+import java.util.List;
+
+/**
+ * Колода как состав: индекс карты влияния ({@link Main.CardData#index}) -> сколько копий осталось.
+ * Копии не раскладываются в список и колода не перемешивается: каждая вытянутая карта выбирается
+ * случайно среди оставшихся (дерево Фенвика по остаткам, O(log n) на карту, n - число шаблонов).
+ * <p>
+ * Порядок вытягивания задает seed колоды: i-я карта определяется парой (seed, i), а не внешним генератором.
+ * Поэтому точная копия ({@link #copyFrom}) тянет те же карты, что и оригинал, как раньше перемешанный
+ * список, а копия для поиска получает новый seed ({@link #reseed}) и будущих карт не знает.
+ * <p>
+ * Копия дешевая: шаблоны общие и не меняются, копируются только массивы остатков длиной в число шаблонов.
+ */
+public final class CountedDeck {
+
+    private static final long DRAW_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private Main.CardData[] templates = new Main.CardData[0];
+    private int[] counts = new int[0];
+    // Дерево Фенвика по counts, индексы с 1
+    private int[] tree = new int[1];
+    private int size;
+    private long seed;
+    private long drawn;
+
+    /**
+     * Собирает колоду из карт влияния каталога по их {@link Main.CardData#getCount()}.
+     */
+    public void reset(Catalog catalog, long seed) {
+        List<Main.CardData> cards = catalog.influenceCards;
+        templates = cards.toArray(new Main.CardData[0]);
+        counts = new int[templates.length];
+        for (int i = 0; i < templates.length; i++) {
+            counts[i] = templates[i].getCount();
+        }
+        rebuildTree();
+        reseed(seed);
+    }
+
+    /**
+     * Делает эту колоду точной копией other (тот же состав и тот же порядок будущих карт).
+     */
+    public void copyFrom(CountedDeck other) {
+        templates = other.templates;
+        if (counts.length != other.counts.length) {
+            counts = new int[other.counts.length];
+            tree = new int[other.tree.length];
+        }
+        System.arraycopy(other.counts, 0, counts, 0, counts.length);
+        System.arraycopy(other.tree, 0, tree, 0, tree.length);
+        size = other.size;
+        seed = other.seed;
+        drawn = other.drawn;
+    }
+
+    /**
+     * Новый порядок будущих карт при том же составе (аналог перемешивания).
+     */
+    public void reseed(long seed) {
+        this.seed = seed;
+        this.drawn = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Вытягивает случайную карту из оставшихся.
+     * @return индекс карты в каталоге
+     * @throws IllegalStateException если колода пуста
+     */
+    public int draw() {
+        if (size == 0) {
+            throw new IllegalStateException("Колода пуста");
+        }
+        long r = Zobrist.mix(seed + drawn++ * DRAW_GAMMA);
+        int i = find((int) Long.remainderUnsigned(r, size));
+        add(i, -1);
+        return i;
+    }
+
+    /**
+     * Возвращает карту в колоду (например, руку соперника при пересдаче для поиска).
+     * @param card индекс карты в каталоге
+     */
+    public void add(int card) {
+        add(card, 1);
+    }
+
+    /**
+     * Число шаблонов (включая закончившиеся); для перебора состава вместе с {@link #template(int)}
+     * и {@link #remaining(int)}.
+     */
+    public int templateCount() {
+        return templates.length;
+    }
+
+    public Main.CardData template(int card) {
+        return templates[card];
+    }
+
+    /**
+     * Сколько копий карты с этим индексом осталось.
+     */
+    public int remaining(int card) {
+        return counts[card];
+    }
+
+    /**
+     * Переводит колоду на карты нового каталога по id. Остатки карт, которых там нет, пропадают;
+     * карт, которых не было, в колоде нет до следующей сборки.
+     */
+    public void remap(Catalog catalog) {
+        int[] remapped = new int[catalog.influenceCards.size()];
+        for (int i = 0; i < templates.length; i++) {
+            int card = catalog.influenceIndexOf(templates[i]);
+            if (card >= 0) {
+                remapped[card] += counts[i];
+            }
+        }
+        templates = catalog.influenceCards.toArray(new Main.CardData[0]);
+        counts = remapped;
+        rebuildTree();
+    }
+
+    long seed() {
+        return seed;
+    }
+
+    /**
+     * Сколько карт вытянуто с последнего {@link #reseed} (вместе с seed задает следующие карты).
+     */
+    long drawn() {
+        return drawn;
+    }
+
+    /**
+     * Восстанавливает колоду из сохраненного состава и порядка (см. {@link MatchSnapshot}).
+     * @param counts остатки по индексам карт каталога
+     */
+    void restore(Catalog catalog, int[] counts, long seed, long drawn) {
+        templates = catalog.influenceCards.toArray(new Main.CardData[0]);
+        this.counts = counts.clone();
+        rebuildTree();
+        this.seed = seed;
+        this.drawn = drawn;
+    }
+
+    /**
+     * Сумма ключей Зобриста оставшихся карт (для пересчета хеша позиции).
+     */
+    long zobristKeys() {
+        long keys = 0L;
+        for (int i = 0; i < templates.length; i++) {
+            keys += counts[i] * Zobrist.card(templates[i]);
+        }
+        return keys;
+    }
+
+    private void add(int index, int delta) {
+        counts[index] += delta;
+        size += delta;
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Индекс шаблона, на который приходится r-я (с 0) из оставшихся карт.
+     */
+    private int find(int r) {
+        int pos = 0;
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next < tree.length && tree[next] <= r) {
+                pos = next;
+                r -= tree[next];
+            }
+        }
+        return pos;
+    }
+
+    private void rebuildTree() {
+        tree = new int[counts.length + 1];
+        size = 0;
+        for (int i = 0; i < counts.length; i++) {
+            size += counts[i];
+            tree[i + 1] += counts[i];
+            int parent = (i + 1) + ((i + 1) & -(i + 1));
+            if (parent < tree.length) {
+                tree[parent] += tree[i + 1];
+            }
+        }
+    }
+}
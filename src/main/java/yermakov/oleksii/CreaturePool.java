@@ -0,0 +1,286 @@
+package yermakov.oleksii;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Компактное хранилище множества состояний существ для массовых симуляций.
+ * <p>
+ * Каждое поле - отдельная int-полоса (struct of arrays): {@code lane(HEALTH)[i]} - текущее HP
+ * существа i. Способности хранятся битами: маски граней промаха/оглушения
+ * (как в {@link DamageTable#faceMask}) и флаги {@link #FLAG_THIEF} / {@link #FLAG_STUNNED}.
+ * Ссылочные данные (имя, текст, dynamicStats) берутся из шаблона карты, номер которого лежит в полосе
+ * {@link #TEMPLATE}.
+ * <p>
+ * {@link #add(Main.CreatureState)} и {@link #toState(int)} переводят данные туда и обратно без потерь
+ * для всех правил игры. Списки missChance/stunChance восстанавливаются из маски: если маска совпадает
+ * с шаблоном, берется список шаблона, иначе - грани по возрастанию.
+ */
+public final class CreaturePool {
+
+    // --- Полосы ---
+    public static final int TEMPLATE = 0;
+    public static final int BASE_HEALTH = 1;
+    public static final int HEALTH = 2;
+    public static final int BASE_ATTACK = 3;
+    public static final int ATTACK = 4;
+    public static final int BASE_DEFENSE = 5;
+    public static final int DEFENSE = 6;
+    public static final int BASE_RATE_POINTS = 7;
+    public static final int RATE_POINTS = 8;
+    public static final int BONUS_RATE_POINTS = 9;
+    public static final int BETTING_BLOCKED_UNTIL = 10;
+    public static final int RP_LIMIT = 11;
+    public static final int MAGIC_BARRIER = 12;
+    public static final int VAMPIRISM = 13;
+    public static final int MISS_MASK = 14;
+    public static final int STUN_MASK = 15;
+    public static final int FLAGS = 16;
+    public static final int DYNAMIC_ATTACK = 17;
+    public static final int DYNAMIC_DEFENSE = 18;
+    public static final int DYNAMIC_RATE_POINTS = 19;
+    public static final int LANE_COUNT = 20;
+
+    // --- Биты полосы FLAGS ---
+    public static final int FLAG_THIEF = 1;
+    public static final int FLAG_STUNNED = 1 << 1;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final List<Main.CardData> templates = new ArrayList<>();
+    private final Map<Main.CardData, Integer> templateIndex = new IdentityHashMap<>();
+
+    private final int[][] lanes = new int[LANE_COUNT][];
+    private int size;
+
+    public CreaturePool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CreaturePool(int capacity) {
+        int initial = Math.max(1, capacity);
+        for (int lane = 0; lane < LANE_COUNT; lane++) {
+            lanes[lane] = new int[initial];
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return lanes[0].length;
+    }
+
+    /** Удаляет все существа; шаблоны и память остаются для повторного использования. */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Полоса поля целиком. Действительна до следующего роста пула.
+     */
+    public int[] lane(int lane) {
+        return lanes[lane];
+    }
+
+    public int get(int index, int lane) {
+        return lanes[lane][index];
+    }
+
+    public void set(int index, int lane, int value) {
+        lanes[lane][index] = value;
+    }
+
+    public boolean hasFlag(int index, int flag) {
+        return (lanes[FLAGS][index] & flag) != 0;
+    }
+
+    public void setFlag(int index, int flag, boolean value) {
+        if (value) {
+            lanes[FLAGS][index] |= flag;
+        } else {
+            lanes[FLAGS][index] &= ~flag;
+        }
+    }
+
+    public Main.CardData template(int index) {
+        return templates.get(lanes[TEMPLATE][index]);
+    }
+
+    /**
+     * Номер шаблона в пуле; шаблон регистрируется при первом обращении.
+     */
+    public int templateId(Main.CardData card) {
+        Integer id = templateIndex.get(card);
+        if (id == null) {
+            id = templates.size();
+            templates.add(card);
+            templateIndex.put(card, id);
+        }
+        return id;
+    }
+
+    /**
+     * Новое существо со статами шаблона (как {@code new CreatureState(card)}).
+     * @return номер существа в пуле
+     */
+    public int add(Main.CardData card) {
+        return add(new Main.CreatureState(card));
+    }
+
+    /**
+     * Копирует состояние в пул.
+     * @return номер существа в пуле
+     */
+    public int add(Main.CreatureState state) {
+        int index = allocate();
+        store(index, state);
+        return index;
+    }
+
+    /**
+     * Перезаписывает существо index из состояния.
+     */
+    public void store(int index, Main.CreatureState state) {
+        lanes[TEMPLATE][index] = templateId(state.baseCard);
+        lanes[BASE_HEALTH][index] = state.baseHealth;
+        lanes[HEALTH][index] = state.currentHealth;
+        lanes[BASE_ATTACK][index] = state.baseAttack;
+        lanes[ATTACK][index] = state.currentAttack;
+        lanes[BASE_DEFENSE][index] = state.baseDefense;
+        lanes[DEFENSE][index] = state.currentDefense;
+        lanes[BASE_RATE_POINTS][index] = state.baseRatePoints;
+        lanes[RATE_POINTS][index] = state.currentRatePoints;
+        lanes[BONUS_RATE_POINTS][index] = state.bonusRatePoints;
+        lanes[BETTING_BLOCKED_UNTIL][index] = state.bettingBlockedUntilRound;
+        lanes[RP_LIMIT][index] = state.rpLimit;
+        lanes[MAGIC_BARRIER][index] = state.magicBarrier;
+        lanes[VAMPIRISM][index] = state.vampirism;
+        lanes[MISS_MASK][index] = DamageTable.faceMask(state.missChance);
+        lanes[STUN_MASK][index] = DamageTable.faceMask(state.stunChance);
+        lanes[FLAGS][index] = (state.thief ? FLAG_THIEF : 0) | (state.isStunned ? FLAG_STUNNED : 0);
+        lanes[DYNAMIC_ATTACK][index] = state.dynamicBonusAttack;
+        lanes[DYNAMIC_DEFENSE][index] = state.dynamicBonusDefense;
+        lanes[DYNAMIC_RATE_POINTS][index] = state.dynamicBonusRP;
+    }
+
+    /**
+     * Восстанавливает полноценный CreatureState (например, для UI или сохранения).
+     */
+    public Main.CreatureState toState(int index) {
+        Main.CardData card = template(index);
+        Main.CreatureState state = new Main.CreatureState(card);
+        loadInto(index, state);
+        return state;
+    }
+
+    /**
+     * Переносит существо index в существующее состояние с тем же шаблоном.
+     */
+    public void loadInto(int index, Main.CreatureState state) {
+        Main.CardData card = template(index);
+        state.baseCard = card;
+        state.baseHealth = lanes[BASE_HEALTH][index];
+        state.currentHealth = lanes[HEALTH][index];
+        state.baseAttack = lanes[BASE_ATTACK][index];
+        state.currentAttack = lanes[ATTACK][index];
+        state.baseDefense = lanes[BASE_DEFENSE][index];
+        state.currentDefense = lanes[DEFENSE][index];
+        state.baseRatePoints = lanes[BASE_RATE_POINTS][index];
+        state.currentRatePoints = lanes[RATE_POINTS][index];
+        state.bonusRatePoints = lanes[BONUS_RATE_POINTS][index];
+        state.bettingBlockedUntilRound = lanes[BETTING_BLOCKED_UNTIL][index];
+        state.rpLimit = lanes[RP_LIMIT][index];
+        state.magicBarrier = lanes[MAGIC_BARRIER][index];
+        state.vampirism = lanes[VAMPIRISM][index];
+        state.missChance = facesOf(lanes[MISS_MASK][index], card.missChance);
+        state.stunChance = facesOf(lanes[STUN_MASK][index], card.stunChance);
+        state.thief = hasFlag(index, FLAG_THIEF);
+        state.isStunned = hasFlag(index, FLAG_STUNNED);
+        state.dynamicStats = card.dynamicStats;
+        state.dynamicBonusAttack = lanes[DYNAMIC_ATTACK][index];
+        state.dynamicBonusDefense = lanes[DYNAMIC_DEFENSE][index];
+        state.dynamicBonusRP = lanes[DYNAMIC_RATE_POINTS][index];
+    }
+
+    /**
+     * Копирует существо from в to (оба уже в пуле).
+     */
+    public void copy(int from, int to) {
+        for (int lane = 0; lane < LANE_COUNT; lane++) {
+            lanes[lane][to] = lanes[lane][from];
+        }
+    }
+
+    /**
+     * Добавляет копию существа from.
+     * @return номер копии
+     */
+    public int duplicate(int from) {
+        int index = allocate();
+        copy(from, index);
+        return index;
+    }
+
+    /**
+     * То же, что {@link Main.CreatureState#recalculateDynamicStats()}, но прямо в полосах.
+     */
+    public void recalculateDynamicStats(int index) {
+        Main.CardData card = template(index);
+        if (!card.hasDynamicStats()) {
+            return;
+        }
+        int level = card.getDynamicLevel(lanes[HEALTH][index]);
+        int bonusAttack = card.dynamicAttack[level];
+        int bonusDefense = card.dynamicDefense[level];
+        int bonusRatePoints = card.dynamicRatePoints[level];
+
+        int attack = lanes[ATTACK][index] - lanes[DYNAMIC_ATTACK][index];
+        int defense = lanes[DEFENSE][index] - lanes[DYNAMIC_DEFENSE][index];
+        int ratePoints = lanes[RATE_POINTS][index] - lanes[DYNAMIC_RATE_POINTS][index];
+
+        lanes[DYNAMIC_ATTACK][index] = bonusAttack;
+        lanes[DYNAMIC_DEFENSE][index] = bonusDefense;
+        lanes[DYNAMIC_RATE_POINTS][index] = bonusRatePoints;
+
+        lanes[ATTACK][index] = Math.max(1, attack + bonusAttack);
+        lanes[DEFENSE][index] = Math.max(0, defense + bonusDefense);
+        int newRatePoints = ratePoints + bonusRatePoints;
+        int limit = lanes[RP_LIMIT][index];
+        if (limit > 0) {
+            newRatePoints = Math.min(newRatePoints, limit);
+        }
+        lanes[RATE_POINTS][index] = Math.max(1, newRatePoints);
+    }
+
+    public int getTotalRP(int index) {
+        return lanes[RATE_POINTS][index] + lanes[BONUS_RATE_POINTS][index];
+    }
+
+    private int allocate() {
+        if (size == capacity()) {
+            int newCapacity = capacity() * 2;
+            for (int lane = 0; lane < LANE_COUNT; lane++) {
+                lanes[lane] = Arrays.copyOf(lanes[lane], newCapacity);
+            }
+        }
+        return size++;
+    }
+
+    private static List<Integer> facesOf(int mask, List<Integer> templateFaces) {
+        if (mask == DamageTable.faceMask(templateFaces)) {
+            return templateFaces;
+        }
+        List<Integer> faces = new ArrayList<>(Integer.bitCount(mask));
+        for (int face = 1; face <= 6; face++) {
+            if ((mask & (1 << (face - 1))) != 0) {
+                faces.add(face);
+            }
+        }
+        return faces;
+    }
+}
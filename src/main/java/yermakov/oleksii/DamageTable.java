@@ -0,0 +1,267 @@
+package yermakov.oleksii;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Заранее посчитанные исходы одной атаки.
+ * <p>
+ * Исход атаки зависит только от числа кубиков, масок промаха/оглушения атакующего,
+ * поднят ли барьер защитника и ступени защиты. Пары масок (промах, оглушение) называются профилем;
+ * профили собираются из шаблонов существ при загрузке карт, а для каждой комбинации
+ * (профиль, кубики, барьер, защита) строится отдельная таблица.
+ * <p>
+ * Исход кодируется в int: {@code урон << 2 | оглушение << 1 | барьер потрачен}.
+ * Бросок n кубиков - это индекс в [0, 6^n), где i-й кубик = (индекс / 6^i) % 6 + 1.
+ * Все данные лежат в плоских массивах.
+ */
+public final class DamageTable {
+
+    public static final int MAX_DICE = 3;
+    public static final int MAX_BLOCK = 3;
+    public static final int ROLL_STRIDE = 216; // 6^MAX_DICE
+    public static final int MAX_DAMAGE = 6 * MAX_DICE;
+    public static final int OUTCOME_CODES = (MAX_DAMAGE + 1) << 2;
+
+    private static final int[] COMBINATIONS = {1, 6, 36, 216};
+
+    private final int[] profileMissMask;
+    private final int[] profileStunMask;
+
+    // [таблица * ROLL_STRIDE + индекс броска] -> код исхода
+    private final int[] rollOutcome;
+    // [таблица * OUTCOME_CODES + код] -> вероятность
+    private final double[] pmf;
+    // [таблица] -> вероятность оглушения
+    private final double[] stunProbability;
+    // Ненулевые исходы таблицы t: индексы [sparseStart[t], sparseStart[t + 1])
+    private final int[] sparseStart;
+    private final int[] sparseCode;
+    private final double[] sparseProbability;
+
+    private DamageTable(int[] missMasks, int[] stunMasks) {
+        this.profileMissMask = missMasks;
+        this.profileStunMask = stunMasks;
+
+        int tables = missMasks.length * MAX_DICE * 2 * (MAX_BLOCK + 1);
+        this.rollOutcome = new int[tables * ROLL_STRIDE];
+        this.pmf = new double[tables * OUTCOME_CODES];
+        this.stunProbability = new double[tables];
+        this.sparseStart = new int[tables + 1];
+
+        int[] codes = new int[tables * OUTCOME_CODES];
+        double[] probabilities = new double[tables * OUTCOME_CODES];
+        int sparseSize = 0;
+
+        for (int profile = 0; profile < missMasks.length; profile++) {
+            for (int dice = 1; dice <= MAX_DICE; dice++) {
+                for (int barrier = 0; barrier < 2; barrier++) {
+                    for (int block = 0; block <= MAX_BLOCK; block++) {
+                        int table = tableIndex(profile, dice, barrier == 1, block);
+                        fill(table, missMasks[profile], stunMasks[profile], dice, barrier == 1, block);
+
+                        sparseStart[table] = sparseSize;
+                        int pmfBase = table * OUTCOME_CODES;
+                        for (int code = 0; code < OUTCOME_CODES; code++) {
+                            double p = pmf[pmfBase + code];
+                            if (p > 0.0) {
+                                codes[sparseSize] = code;
+                                probabilities[sparseSize] = p;
+                                sparseSize++;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        sparseStart[tables] = sparseSize;
+        this.sparseCode = Arrays.copyOf(codes, sparseSize);
+        this.sparseProbability = Arrays.copyOf(probabilities, sparseSize);
+    }
+
+    /**
+     * Строит таблицы для всех различных профилей среди шаблонов существ.
+     */
+    public static DamageTable build(Collection<Main.CardData> creatures) {
+        int[] miss = new int[creatures.size() + 1];
+        int[] stun = new int[creatures.size() + 1];
+        // Профиль 0 - существо без особенностей, нужен всегда
+        int count = 1;
+        for (Main.CardData card : creatures) {
+            count = addProfile(miss, stun, count, faceMask(card.missChance), faceMask(card.stunChance));
+        }
+        return new DamageTable(Arrays.copyOf(miss, count), Arrays.copyOf(stun, count));
+    }
+
+    /**
+     * Таблица только для конкретных существ (например, в бенчмарках и тестовых прогонах).
+     */
+    public static DamageTable forCreatures(Main.CreatureState... creatures) {
+        int[] missMasks = new int[creatures.length];
+        int[] stunMasks = new int[creatures.length];
+        for (int i = 0; i < creatures.length; i++) {
+            missMasks[i] = faceMask(creatures[i].missChance);
+            stunMasks[i] = faceMask(creatures[i].stunChance);
+        }
+        return forMasks(missMasks, stunMasks);
+    }
+
+    /**
+     * Таблица для заданных пар масок (промах[i], оглушение[i]).
+     */
+    public static DamageTable forMasks(int[] missMasks, int[] stunMasks) {
+        int[] miss = new int[missMasks.length + 1];
+        int[] stun = new int[missMasks.length + 1];
+        int count = 1;
+        for (int i = 0; i < missMasks.length; i++) {
+            count = addProfile(miss, stun, count, missMasks[i], stunMasks[i]);
+        }
+        return new DamageTable(Arrays.copyOf(miss, count), Arrays.copyOf(stun, count));
+    }
+
+    private static int addProfile(int[] miss, int[] stun, int count, int missMask, int stunMask) {
+        for (int i = 0; i < count; i++) {
+            if (miss[i] == missMask && stun[i] == stunMask) {
+                return count;
+            }
+        }
+        miss[count] = missMask;
+        stun[count] = stunMask;
+        return count + 1;
+    }
+
+    private void fill(int table, int missMask, int stunMask, int dice, boolean barrierUp, int block) {
+        int combinations = COMBINATIONS[dice];
+        double p = 1.0 / combinations;
+        int rollBase = table * ROLL_STRIDE;
+        int pmfBase = table * OUTCOME_CODES;
+
+        for (int combo = 0; combo < combinations; combo++) {
+            int rest = combo;
+            int sum = 0;
+            int maxDie = 0;
+            boolean anyHit = false;
+            boolean stun = false;
+            for (int i = 0; i < dice; i++) {
+                int roll = rest % 6 + 1;
+                rest /= 6;
+                int bit = 1 << (roll - 1);
+                if ((missMask & bit) != 0) {
+                    continue;
+                }
+                if ((stunMask & bit) != 0) {
+                    stun = true;
+                }
+                anyHit = true;
+                sum += roll;
+                maxDie = Math.max(maxDie, roll);
+            }
+            boolean barrierUsed = barrierUp && anyHit;
+            if (barrierUsed) {
+                sum -= maxDie;
+            }
+            int code = encode(Math.max(0, sum - block), stun, barrierUsed);
+            rollOutcome[rollBase + combo] = code;
+            pmf[pmfBase + code] += p;
+            if (stun) {
+                stunProbability[table] += p;
+            }
+        }
+    }
+
+    /**
+     * Номер профиля для масок промаха и оглушения или -1, если такого профиля нет.
+     */
+    public int profileOf(int missMask, int stunMask) {
+        for (int i = 0; i < profileMissMask.length; i++) {
+            if (profileMissMask[i] == missMask && profileStunMask[i] == stunMask) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int profileOf(Main.CreatureState creature) {
+        return profileOf(faceMask(creature.missChance), faceMask(creature.stunChance));
+    }
+
+    public int profileCount() {
+        return profileMissMask.length;
+    }
+
+    public static int tableIndex(int profile, int diceCount, boolean barrierUp, int defenseBlock) {
+        return ((profile * MAX_DICE + (diceCount - 1)) * 2 + (barrierUp ? 1 : 0)) * (MAX_BLOCK + 1) + defenseBlock;
+    }
+
+    /** Количество равновероятных бросков для n кубиков (6^n). */
+    public static int combinations(int diceCount) {
+        return COMBINATIONS[diceCount];
+    }
+
+    /** Исход атаки для конкретного броска: O(1), без выделения памяти. */
+    public int outcome(int table, int rollIndex) {
+        return rollOutcome[table * ROLL_STRIDE + rollIndex];
+    }
+
+    public double probability(int table, int code) {
+        return pmf[table * OUTCOME_CODES + code];
+    }
+
+    public double stunProbability(int table) {
+        return stunProbability[table];
+    }
+
+    // --- Разреженный перебор ненулевых исходов (для точных расчетов и сверток) ---
+
+    public int outcomesStart(int table) {
+        return sparseStart[table];
+    }
+
+    public int outcomesEnd(int table) {
+        return sparseStart[table + 1];
+    }
+
+    public int outcomeCode(int i) {
+        return sparseCode[i];
+    }
+
+    public double outcomeProbability(int i) {
+        return sparseProbability[i];
+    }
+
+    // --- Разбор кода исхода ---
+
+    public static int encode(int damage, boolean stun, boolean barrierUsed) {
+        return (damage << 2) | (stun ? 2 : 0) | (barrierUsed ? 1 : 0);
+    }
+
+    public static int damage(int code) {
+        return code >>> 2;
+    }
+
+    public static boolean stun(int code) {
+        return (code & 2) != 0;
+    }
+
+    public static boolean barrierUsed(int code) {
+        return (code & 1) != 0;
+    }
+
+    /**
+     * Битовая маска граней кубика: бит (грань - 1).
+     */
+    public static int faceMask(List<Integer> faces) {
+        int mask = 0;
+        if (faces != null) {
+            // Индексный цикл без итератора: вызывается на каждый бой
+            for (int i = 0; i < faces.size(); i++) {
+                Integer face = faces.get(i);
+                if (face != null && face >= 1 && face <= 6) {
+                    mask |= 1 << (face - 1);
+                }
+            }
+        }
+        return mask;
+    }
+}
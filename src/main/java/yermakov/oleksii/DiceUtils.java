@@ -1,17 +1,44 @@
 package yermakov.oleksii;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
 
 public class DiceUtils {
 
     private static final int DICE_SIDES = 6;
 
+    // Быстрый сплиттуемый генератор из JDK 17+: воспроизводим по seed и делится на независимые потоки
+    private static final RandomGeneratorFactory<RandomGenerator> GENERATOR_FACTORY =
+            RandomGeneratorFactory.of("L64X128MixRandom");
+
+    // Из 8-битного куска берем только значения < 252 (42 * 6), иначе грани были бы неравновероятны
+    private static final int BYTE_ACCEPT_LIMIT = 252;
+
+    /**
+     * Генератор для одной игры/симуляции. Один и тот же seed дает одну и ту же последовательность бросков.
+     */
+    public static RandomGenerator.SplittableGenerator newGenerator(long seed) {
+        return (RandomGenerator.SplittableGenerator) GENERATOR_FACTORY.create(seed);
+    }
+
+    /**
+     * Случайный seed для новой игры. Единственный источник случайности вне seed: все броски, раздачи
+     * и перемешивания идут от генераторов, созданных из таких seed, поэтому игра воспроизводится по ним
+     * (см. {@link ReplayLog}).
+     */
+    public static long newSeed() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+
     /**
      * Бросает указанное количество 6-гранных кубиков.
      * @param diceCount Количество кубиков (н.п. 1, 2, 3)
      * @return Сумма результатов
      */
-    public static int rollD6(int diceCount) {
+    public static int rollD6(RandomGenerator rng, int diceCount) {
         if (diceCount < 1) {
             return 0;
         }
@@ -19,8 +46,49 @@ public class DiceUtils {
         int total = 0;
         for (int i = 0; i < diceCount; i++) {
             // nextInt(min, max) -> min (включительно), max (исключительно)
-            total += ThreadLocalRandom.current().nextInt(1, DICE_SIDES + 1);
+            total += rng.nextInt(1, DICE_SIDES + 1);
         }
         return total;
     }
-}
\ No newline at end of file
+
+    /**
+     * Бросает сразу несколько кубиков одним числом.
+     * @param diceCount Количество кубиков (1..3)
+     * @return Индекс броска в [0, 6^diceCount): i-й кубик = (индекс / 6^i) % 6 + 1
+     */
+    public static int rollCombination(RandomGenerator rng, int diceCount) {
+        return rng.nextInt(DamageTable.combinations(diceCount));
+    }
+
+    /**
+     * Перемешивание Фишера-Йетса. Тот же порядок обращений к rng, что у Collections.shuffle, но алгоритм
+     * зафиксирован здесь: записанные игры не должны зависеть от реализации JDK.
+     */
+    public static <T> void shuffle(List<T> list, RandomGenerator rng) {
+        for (int i = list.size(); i > 1; i--) {
+            Collections.swap(list, i - 1, rng.nextInt(i));
+        }
+    }
+
+    /**
+     * Заполняет out[from..to) результатами d6. Одно 64-битное число дает до 8 кубиков:
+     * каждый байт < 252 превращается в грань, остальные отбрасываются.
+     */
+    public static void fillD6(RandomGenerator rng, int[] out, int from, int to) {
+        int i = from;
+        while (i < to) {
+            long bits = rng.nextLong();
+            for (int lane = 0; lane < 8 && i < to; lane++) {
+                int b = (int) (bits & 0xFF);
+                bits >>>= 8;
+                if (b < BYTE_ACCEPT_LIMIT) {
+                    out[i++] = b % DICE_SIDES + 1;
+                }
+            }
+        }
+    }
+
+    public static void fillD6(RandomGenerator rng, int[] out) {
+        fillD6(rng, out, 0, out.length);
+    }
+}
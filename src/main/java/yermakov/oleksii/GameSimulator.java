@@ -0,0 +1,204 @@
+package yermakov.oleksii;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+import java.util.random.RandomGenerator;
+import java.util.stream.IntStream;
+
+/**
+ * Полный матч без JavaFX: раунды, руки, ставки, урна, бои и подсчет очков за {@code MAX_BATTLES} боев.
+ * Ходы игроков выбирают подключаемые стратегии {@link PlayerPolicy}.
+ * <p>
+ * Матч полностью определяется seed: из него берутся seed каждого боя (колода, существа, броски)
+ * и отдельный поток случайных чисел для решений стратегий.
+ */
+public class GameSimulator {
+
+    /**
+     * Итог одного матча.
+     * @param deckExhausted колода кончилась при доборе - матч прерван, очки на этот момент
+     */
+    public record MatchResult(int player1Score, int player2Score, int battlesPlayed, boolean deckExhausted) {
+
+        /** 1 или 2 - у кого больше очков, 0 - ничья. */
+        public int winner() {
+            if (player1Score > player2Score) return 1;
+            if (player2Score > player1Score) return 2;
+            return 0;
+        }
+    }
+
+    /**
+     * Сводка по серии матчей.
+     */
+    public record Summary(long matches, long player1Wins, long player2Wins, long draws, long deckExhausted,
+                          long player1ScoreTotal, long player2ScoreTotal) {
+
+        public double player1WinRate() {
+            return (double) player1Wins / matches;
+        }
+
+        public double player2WinRate() {
+            return (double) player2Wins / matches;
+        }
+
+        public double player1AverageScore() {
+            return (double) player1ScoreTotal / matches;
+        }
+
+        public double player2AverageScore() {
+            return (double) player2ScoreTotal / matches;
+        }
+
+        Summary plus(Summary other) {
+            return new Summary(matches + other.matches, player1Wins + other.player1Wins,
+                    player2Wins + other.player2Wins, draws + other.draws, deckExhausted + other.deckExhausted,
+                    player1ScoreTotal + other.player1ScoreTotal, player2ScoreTotal + other.player2ScoreTotal);
+        }
+    }
+
+    /**
+     * Наблюдатель за боями матча: вызывается после боя, до выплат (ставки и статы еще на месте).
+     */
+    public interface BattleObserver {
+        void onBattle(MatchState match, Main.CreatureState winner);
+    }
+
+    private static final Summary EMPTY = new Summary(0, 0, 0, 0, 0, 0, 0);
+
+    private final Catalog catalog;
+    private final int workers;
+
+    public GameSimulator(Catalog catalog) {
+        this(catalog, Runtime.getRuntime().availableProcessors());
+    }
+
+    public GameSimulator(Catalog catalog, int workers) {
+        this.catalog = catalog;
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Играет один матч до конца.
+     */
+    public MatchResult playMatch(PlayerPolicy player1, PlayerPolicy player2, long seed) {
+        return playMatch(new MatchState(catalog), player1, player2, seed, null);
+    }
+
+    /**
+     * Играет матч на переданном состоянии (переиспользуется между матчами), сообщая о каждом бое observer.
+     */
+    public MatchResult playMatch(MatchState match, PlayerPolicy player1, PlayerPolicy player2, long seed,
+                                 BattleObserver observer) {
+        RandomGenerator.SplittableGenerator root = DiceUtils.newGenerator(seed);
+        RandomGenerator policyRng = root.split();
+
+        match.player1TotalScore = 0;
+        match.player2TotalScore = 0;
+        match.currentBattle = 1;
+
+        int battles = 0;
+        while (true) {
+            match.startGame(root.nextLong());
+            if (match.isDeckEmpty() || !playRounds(match, player1, player2, policyRng)) {
+                return new MatchResult(match.player1TotalScore, match.player2TotalScore, battles, true);
+            }
+
+            Main.CreatureState winner = match.resolveBattle();
+            if (observer != null) {
+                observer.onBattle(match, winner);
+            }
+            match.settleBattle(winner);
+            battles++;
+
+            if (match.isLastBattle()) {
+                return new MatchResult(match.player1TotalScore, match.player2TotalScore, battles, false);
+            }
+            match.advanceBattle();
+        }
+    }
+
+    /**
+     * Ходы игроков до начала боя (доступно в пакете для доигрывания в {@link MctsPolicy}).
+     * @return false, если кончилась колода
+     */
+    static boolean playRounds(MatchState match, PlayerPolicy player1, PlayerPolicy player2, RandomGenerator rng) {
+        while (true) {
+            PlayerPolicy policy = (match.currentPlayer == Main.Player.PLAYER_1) ? player1 : player2;
+            MatchState.Action action = policy.chooseAction(match, rng);
+
+            // Недопустимый ход считаем концом хода, чтобы плохая стратегия не зациклила матч
+            if (action.type() == MatchState.Action.Type.END_TURN || !match.apply(action)) {
+                boolean battleReady = match.endTurn();
+                if (match.isDeckEmpty()) {
+                    return false;
+                }
+                if (battleReady) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Играет matches матчей параллельно на всех воркерах. Одинаковый seed и число воркеров дают одинаковый результат.
+     */
+    public Summary run(Supplier<PlayerPolicy> player1, Supplier<PlayerPolicy> player2, long matches, long seed) {
+        if (matches < 1) {
+            throw new IllegalArgumentException("matches must be positive: " + matches);
+        }
+        // split() не потокобезопасен, поэтому потоки воркеров готовятся заранее
+        RandomGenerator.SplittableGenerator root = DiceUtils.newGenerator(seed);
+        RandomGenerator[] streams = new RandomGenerator[workers];
+        for (int w = 0; w < workers; w++) {
+            streams[w] = root.split();
+        }
+
+        long perWorker = matches / workers;
+        long remainder = matches % workers;
+
+        return IntStream.range(0, workers)
+                .parallel()
+                .mapToObj(w -> runMatches(player1.get(), player2.get(), streams[w], perWorker + (w < remainder ? 1 : 0)))
+                .reduce(EMPTY, Summary::plus);
+    }
+
+    private Summary runMatches(PlayerPolicy player1, PlayerPolicy player2, RandomGenerator rng, long count) {
+        MatchState match = new MatchState(catalog);
+        long p1Wins = 0, p2Wins = 0, draws = 0, exhausted = 0, p1Total = 0, p2Total = 0;
+        for (long i = 0; i < count; i++) {
+            MatchResult result = playMatch(match, player1, player2, rng.nextLong(), null);
+            switch (result.winner()) {
+                case 1: p1Wins++; break;
+                case 2: p2Wins++; break;
+                default: draws++; break;
+            }
+            if (result.deckExhausted()) exhausted++;
+            p1Total += result.player1Score();
+            p2Total += result.player2Score();
+        }
+        return new Summary(count, p1Wins, p2Wins, draws, exhausted, p1Total, p2Total);
+    }
+
+    /**
+     * Запуск из консоли: {@code GameSimulator [матчей] [стратегия P1] [стратегия P2] [seed]},
+     * стратегии - random, greedy или mcts.
+     */
+    public static void main(String[] args) throws IOException {
+        long matches = (args.length > 0) ? Long.parseLong(args[0]) : 10000;
+        String policy1 = (args.length > 1) ? args[1] : "greedy";
+        String policy2 = (args.length > 2) ? args[2] : "random";
+        long seed = (args.length > 3) ? Long.parseLong(args[3]) : DiceUtils.newSeed();
+
+        GameSimulator simulator = new GameSimulator(Catalog.loadBundled());
+        long start = System.nanoTime();
+        Summary summary = simulator.run(() -> PlayerPolicy.byName(policy1), () -> PlayerPolicy.byName(policy2), matches, seed);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("seed=%d, %s vs %s, матчей: %d (%.0f в секунду)%n",
+                seed, policy1, policy2, summary.matches(), summary.matches() / seconds);
+        System.out.printf("P1: побед %.1f%%, средний счет %.1f%n", summary.player1WinRate() * 100.0, summary.player1AverageScore());
+        System.out.printf("P2: побед %.1f%%, средний счет %.1f%n", summary.player2WinRate() * 100.0, summary.player2AverageScore());
+        System.out.printf("Ничьих: %d, колода кончилась: %d%n", summary.draws(), summary.deckExhausted());
+    }
+}
@@ -0,0 +1,105 @@
+package yermakov.oleksii;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+/**
+ * Жадная стратегия: ставит на фаворита боя, усиливает его и ослабляет соперника, пока хватает очков хода.
+ * <p>
+ * Фаворит определяется гонкой ожидаемого урона по {@link DamageTable}: кому нужно меньше атак, чтобы
+ * добить соперника (при равенстве - у кого больше атака, он бьет первым). Каждый допустимый ход получает
+ * оценку, играется лучший с положительной оценкой, иначе ход заканчивается.
+ */
+public class GreedyPolicy implements PlayerPolicy {
+
+    private final List<MatchState.Action> actions = new ArrayList<>();
+
+    @Override
+    public MatchState.Action chooseAction(MatchState match, RandomGenerator rng) {
+        int favorite = favorite(match);
+        match.legalActions(actions);
+
+        MatchState.Action best = MatchState.Action.endTurn();
+        double bestScore = 0.0;
+        for (int i = 0; i < actions.size(); i++) {
+            MatchState.Action action = actions.get(i);
+            if (action.type() != MatchState.Action.Type.PLAY) {
+                continue;
+            }
+            double score = score(match, action, favorite);
+            // Равные оценки - случайно, чтобы стратегия не была полностью детерминированной
+            if (score > bestScore || (score == bestScore && score > 0.0 && rng.nextBoolean())) {
+                bestScore = score;
+                best = action;
+            }
+        }
+        return best;
+    }
+
+    private static double score(MatchState match, MatchState.Action action, int favorite) {
+        Main.CardData card = match.getCurrentHandCard(action.handIndex());
+        int target = action.target();
+        int sign = (target == favorite) ? 1 : -1;
+
+        if (action.mode() == MatchState.PlayMode.BET) {
+            if (target != favorite) {
+                return -1.0;
+            }
+            BattlePayout.RewardTier tier = BattlePayout.getRewardTier(match.getConfig(),
+                    match.getCreature(favorite), match.getCreature(3 - favorite));
+            return card.getBetAmount() / 100.0 * BattlePayout.getRewardMultiplier(match.getConfig(), tier);
+        }
+
+        double score = sign * (2.0 * card.getStatChange(CompiledEffect.ATTACK)
+                + card.getStatChange(CompiledEffect.HEALTH)
+                + 2.0 * card.getStatChange(CompiledEffect.DEFENSE));
+
+        for (CompiledEffect effect : card.getCompiledEffects()) {
+            if (effect.op == CompiledEffect.Op.DEC_OPPONENT_BETS) {
+                // Срезать ставки соперника выгодно только на того, кто, скорее всего, выиграет
+                int opponentBets = match.bets.othersOn(match.currentPlayer.ordinal(), target - 1);
+                score += sign * Math.min(effect.value, opponentBets) / 100.0;
+            } else if (effect.op == CompiledEffect.Op.BLOCK_BETTING && target == favorite) {
+                score += 1.0;
+            }
+        }
+        return score;
+    }
+
+    /**
+     * @return 1 или 2 - существо, которое по ожидаемому урону добьет соперника быстрее
+     */
+    static int favorite(MatchState match) {
+        Main.CreatureState c1 = match.creature1State;
+        Main.CreatureState c2 = match.creature2State;
+        double attacks1 = attacksToKill(match, c1, c2);
+        double attacks2 = attacksToKill(match, c2, c1);
+        if (attacks1 != attacks2) {
+            return (attacks1 < attacks2) ? 1 : 2;
+        }
+        return (c2.currentAttack > c1.currentAttack) ? 2 : 1;
+    }
+
+    private static double attacksToKill(MatchState match, Main.CreatureState attacker, Main.CreatureState defender) {
+        double damage = expectedDamage(match.getConfig(), match.getCatalog().damageTable, attacker, defender);
+        if (damage <= 0.0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.ceil(Math.max(1, defender.currentHealth) / damage);
+    }
+
+    static double expectedDamage(Main.GameConfig config, DamageTable table,
+                                 Main.CreatureState attacker, Main.CreatureState defender) {
+        // Неизвестный профиль (существо не из каталога) считаем существом без особенностей
+        int profile = Math.max(0, table.profileOf(attacker));
+        int t = DamageTable.tableIndex(profile,
+                BattleEngine.getDiceCount(config, attacker.currentAttack), false,
+                BattleEngine.getDefenseBlock(config, defender.currentDefense));
+        double damage = 0.0;
+        for (int i = table.outcomesStart(t); i < table.outcomesEnd(t); i++) {
+            damage += table.outcomeProbability(i) * DamageTable.damage(table.outcomeCode(i));
+        }
+        return damage;
+    }
+}
@@ -0,0 +1,68 @@
+package yermakov.oleksii;
+
+import java.util.Arrays;
+
+/**
+ * Рука игрока: индексы карт влияния каталога ({@link Main.CardData#index}) в порядке получения.
+ * Карта по индексу - {@link MatchState#card(int)}.
+ */
+public final class Hand {
+
+    private int[] cards = new int[8];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Индекс карты в каталоге для позиции handIndex в руке.
+     */
+    public int get(int handIndex) {
+        if (handIndex < 0 || handIndex >= size) {
+            throw new IndexOutOfBoundsException(handIndex);
+        }
+        return cards[handIndex];
+    }
+
+    public void add(int card) {
+        if (size == cards.length) {
+            cards = Arrays.copyOf(cards, size * 2);
+        }
+        cards[size++] = card;
+    }
+
+    /**
+     * Убирает карту с позиции handIndex, остальные сдвигаются (порядок руки как на экране).
+     * @return индекс убранной карты в каталоге
+     */
+    public int remove(int handIndex) {
+        int card = get(handIndex);
+        System.arraycopy(cards, handIndex + 1, cards, handIndex, size - handIndex - 1);
+        size--;
+        return card;
+    }
+
+    /**
+     * Заменяет карту на позиции handIndex (при переходе на другой каталог).
+     */
+    void set(int handIndex, int card) {
+        cards[handIndex] = card;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void copyFrom(Hand other) {
+        if (cards.length < other.size) {
+            cards = new int[other.cards.length];
+        }
+        System.arraycopy(other.cards, 0, cards, 0, other.size);
+        size = other.size;
+    }
+}
@@ -1,28 +1,246 @@
 package yermakov.oleksii;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.MissingFormatArgumentException;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Строки интерфейса. Для текущего языка держится таблица ключ -> {@link Message}: шаблон разбирается
+ * один раз при загрузке языка, а не при каждом String.format. Смена языка подменяет таблицу целиком
+ * одной записью volatile-поля, так что читатель в любом потоке видит либо старую, либо новую таблицу.
+ * <p>
+ * Ключи, которых нет в выбранном языке, но есть в другом поставляемом, выводятся один раз при загрузке;
+ * неизвестный ключ при обращении - один раз на ключ, без стека.
+ * <p>
+ * Тексты карт переводятся не здесь, а в {@link CardTexts}; от I18n им нужен только номер текущего языка.
+ */
 public class I18n {
 
-    private static Locale currentLocale = Locale.of("ru");
-    private static ResourceBundle messages = ResourceBundle.getBundle("messages", currentLocale);
+    // Языки, для которых есть messages_xx.properties
+    private static final List<String> SHIPPED_LANGUAGES = List.of("ru", "en");
+    // Язык, текст на котором показывается, если перевода нет (в том числе у карт)
+    static final String FALLBACK_LANGUAGE = "en";
+
+    // Плотные номера языков для таблиц текстов карт (CardTexts): номер выдается при первой встрече
+    // и не меняется, у FALLBACK_LANGUAGE он 0
+    private static final List<String> languageNames = new ArrayList<>(List.of(FALLBACK_LANGUAGE));
+    private static final Map<String, Integer> languageSlots = new HashMap<>(Map.of(FALLBACK_LANGUAGE, 0));
+
+    private record Table(Locale locale, int languageSlot, Map<String, Message> messages) {
+    }
+
+    private static volatile Table table = load(Locale.of("ru"));
+    private static final Set<String> reportedMissing = ConcurrentHashMap.newKeySet();
 
     public static void setLocale(String language) {
-        currentLocale = Locale.of(language);    
-        messages = ResourceBundle.getBundle("messages", currentLocale);
+        table = load(Locale.of(language));
     }
 
     public static String getString(String key) {
-        try {
-            return messages.getString(key);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return "!" + key + "!"; // Показать ошибку, если ключ не найден
+        return message(key).pattern();
+    }
+
+    /**
+     * Разобранный шаблон для ключа (для горячих мест, где строка собирается часто).
+     */
+    public static Message message(String key) {
+        Message message = table.messages.get(key);
+        if (message == null) {
+            if (reportedMissing.add(key)) {
+                System.err.println("I18n: нет ключа " + key);
+            }
+            // Показать ошибку, если ключ не найден
+            return Message.parse("!" + key + "!");
         }
+        return message;
+    }
+
+    /**
+     * То же, что String.format(getString(key), args), но по разобранному шаблону.
+     */
+    public static String format(String key, Object... args) {
+        return message(key).format(args);
     }
 
     public static String getLang() {
-        return currentLocale.getLanguage();
+        return table.locale.getLanguage();
+    }
+
+    /**
+     * Языки интерфейса, на которые можно переключиться.
+     */
+    public static List<String> languages() {
+        return SHIPPED_LANGUAGES;
+    }
+
+    /**
+     * Номер текущего языка в таблицах текстов карт.
+     */
+    static int languageSlot() {
+        return table.languageSlot;
+    }
+
+    static synchronized int languageSlot(String language) {
+        Integer slot = languageSlots.get(language);
+        if (slot == null) {
+            slot = languageNames.size();
+            languageNames.add(language);
+            languageSlots.put(language, slot);
+        }
+        return slot;
+    }
+
+    static synchronized String languageName(int slot) {
+        return languageNames.get(slot);
+    }
+
+    private static Table load(Locale locale) {
+        ResourceBundle bundle = ResourceBundle.getBundle("messages", locale);
+        Map<String, Message> messages = new HashMap<>();
+        for (String key : bundle.keySet()) {
+            messages.put(key, Message.parse(bundle.getString(key)));
+        }
+        reportMissingKeys(locale, messages.keySet());
+        return new Table(locale, languageSlot(locale.getLanguage()), Collections.unmodifiableMap(messages));
+    }
+
+    private static void reportMissingKeys(Locale locale, Set<String> present) {
+        Set<String> missing = new TreeSet<>();
+        ResourceBundle.Control exact = ResourceBundle.Control.getNoFallbackControl(ResourceBundle.Control.FORMAT_PROPERTIES);
+        for (String language : SHIPPED_LANGUAGES) {
+            ResourceBundle other = ResourceBundle.getBundle("messages", Locale.of(language), exact);
+            for (String key : other.keySet()) {
+                if (!present.contains(key)) {
+                    missing.add(key);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            System.err.println("I18n: для языка " + locale.getLanguage() + " нет ключей " + missing);
+        }
+    }
+
+    /**
+     * Шаблон строки, разобранный на куски: текст и спецификаторы %s, %d, %f (%% и %n - текст).
+     * %s и %d без флагов собираются напрямую в StringBuilder; прочие спецификаторы (%.1f, %,.0f)
+     * форматируются по одному через String.format. Шаблоны с индексами аргументов (%1$s) и другими
+     * редкими формами целиком уходят в String.format.
+     */
+    public static final class Message {
+        private final String pattern;
+        // Текст (String) или спецификатор (Spec) по порядку; null - шаблон не разобран, см. выше
+        private final Object[] parts;
+        private final int argCount;
+
+        private record Spec(char conversion, String format) {
+            boolean isPlain() {
+                return format.length() == 2 && (conversion == 's' || conversion == 'd');
+            }
+        }
+
+        private Message(String pattern, Object[] parts, int argCount) {
+            this.pattern = pattern;
+            this.parts = parts;
+            this.argCount = argCount;
+        }
+
+        public static Message parse(String pattern) {
+            List<Object> parts = new ArrayList<>();
+            StringBuilder text = new StringBuilder();
+            int args = 0;
+            int i = 0;
+            while (i < pattern.length()) {
+                char c = pattern.charAt(i);
+                if (c != '%') {
+                    text.append(c);
+                    i++;
+                    continue;
+                }
+                int start = i++;
+                while (i < pattern.length() && ",.0123456789".indexOf(pattern.charAt(i)) >= 0) {
+                    i++;
+                }
+                if (i == pattern.length()) {
+                    return new Message(pattern, null, 0);
+                }
+                char conversion = pattern.charAt(i++);
+                String spec = pattern.substring(start, i);
+                if (conversion == '%' && spec.length() == 2) {
+                    text.append('%');
+                } else if (conversion == 'n' && spec.length() == 2) {
+                    text.append(System.lineSeparator());
+                } else if (conversion == 's' || conversion == 'd' || conversion == 'f') {
+                    if (!text.isEmpty()) {
+                        parts.add(text.toString());
+                        text.setLength(0);
+                    }
+                    parts.add(new Spec(conversion, spec));
+                    args++;
+                } else {
+                    return new Message(pattern, null, 0);
+                }
+            }
+            if (!text.isEmpty()) {
+                parts.add(text.toString());
+            }
+            return new Message(pattern, parts.toArray(), args);
+        }
+
+        /**
+         * Исходный шаблон (то, что вернул бы ResourceBundle).
+         */
+        public String pattern() {
+            return pattern;
+        }
+
+        public String format(Object... args) {
+            if (parts == null) {
+                return String.format(pattern, args);
+            }
+            if (argCount == 0) {
+                return (parts.length == 1) ? (String) parts[0] : pattern;
+            }
+            StringBuilder sb = new StringBuilder(pattern.length() + 16);
+            formatTo(sb, args);
+            return sb.toString();
+        }
+
+        public void formatTo(StringBuilder sb, Object... args) {
+            if (parts == null) {
+                sb.append(String.format(pattern, args));
+                return;
+            }
+            int arg = 0;
+            for (Object part : parts) {
+                if (part instanceof String text) {
+                    sb.append(text);
+                    continue;
+                }
+                Spec spec = (Spec) part;
+                if (arg >= args.length) {
+                    throw new MissingFormatArgumentException(spec.format());
+                }
+                Object value = args[arg++];
+                if (!spec.isPlain() || (spec.conversion() == 'd' && !isInteger(value))) {
+                    sb.append(String.format(spec.format(), value));
+                } else if (spec.conversion() == 'd') {
+                    sb.append(((Number) value).longValue());
+                } else {
+                    sb.append(value);
+                }
+            }
+        }
+
+        private static boolean isInteger(Object value) {
+            return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,21 +1,25 @@
 package yermakov.oleksii;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import javafx.animation.PauseTransition;
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.input.ClipboardContent;
+import javafx.scene.input.DataFormat;
 import javafx.scene.input.Dragboard;
 import javafx.scene.input.TransferMode;
 import javafx.scene.layout.*;
@@ -24,47 +28,44 @@ import javafx.scene.text.Text;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.util.Duration;
+import javafx.util.StringConverter;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serializable;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class Main extends Application {
 
-    private static final String CREATURES_FILE = "creatures.json";
-    private static final String INFLUENCE_FILE = "influenceCards.json";
-    private static final String CONFIG_FILE = "config.json";
+    private static final String CREATURES_FILE = Catalog.CREATURES_FILE;
+    private static final String INFLUENCE_FILE = Catalog.INFLUENCE_FILE;
+    private static final String CONFIG_FILE = Catalog.CONFIG_FILE;
+    // Автосохранение матча рядом с данными (см. MatchSnapshot)
+    private static final String AUTOSAVE_FILE = "match.autosave";
+    // Журнал текущей партии (см. ReplayLog); законченные журналы переезжают в REPLAY_DIR
+    private static final String REPLAY_FILE = "match.replay";
+    private static final String REPLAY_DIR = "replays";
+    // Непереводимые шаблоны статов, разобранные один раз
+    private static final I18n.Message STATS = I18n.Message.parse("HP: %d/%d | ATK: %d | DEF: %d | RP: %d");
+    private static final I18n.Message STATS_BONUS = I18n.Message.parse("HP: %d/%d | ATK: %d | DEF: %d | RP: %d (+%d)");
+    private static final I18n.Message BATTLE_ATK = I18n.Message.parse(" ATK: %d (%s)");
+    private static final I18n.Message BATTLE_DEF = I18n.Message.parse(" DEF: %d (%s)");
+    private static final I18n.Message BATTLE_RP = I18n.Message.parse(" RP: %d (%s)");
     private static GameConfig config;
 
-    private final Map<String, CardData> allCards = new HashMap<>();
-    private final List<CardData> creatureTemplates = new ArrayList<>();
-    private final List<CardData> influenceCardTemplates = new ArrayList<>();
-    private final List<CardData> influenceDeck = new ArrayList<>();
+    private Catalog catalog;
 
-    public CreatureState creature1State;
-    public CreatureState creature2State;
     public enum Player { PLAYER_1, PLAYER_2 }
-    public Player currentPlayer;
-    public final List<CardData> player1Hand = new ArrayList<>();
-    public final List<CardData> player2Hand = new ArrayList<>();
-    public int currentTurnPointsUsed = 0;
-    public int p1_BetsOn_C1 = 0;
-    public int p2_BetsOn_C1 = 0;
-    public int p1_BetsOn_C2 = 0;
-    public int p2_BetsOn_C2 = 0;
 
-    public int player1TotalScore = 0;
-    public int player2TotalScore = 0;
-
-    public int currentRound = 1;
-    public int currentBattle = 1;
-
-    private enum RewardTier { YELLOW, GREEN, RED }
+    // Правила и состояние матча живут в MatchState, Main только отображает его
+    private MatchState match;
 
     private HBox handBox;
     private Text turnPointsText;
@@ -78,21 +79,43 @@ public class Main extends Application {
     private HBox attackScale2;
     private HBox betRewardScaleC1Row;
     private HBox betRewardScaleC2Row;
+    private Text winChanceC1Text;
+    private Text winChanceC2Text;
+    private WinProbabilityEstimator winEstimator;
+    private int oddsRequestId = 0;
+    // Точные шансы по хешу пары существ: отмена бафа или повтор позиции не пересчитываются
+    private TranspositionTable oddsCache = new TranspositionTable(1 << 12);
+    private MctsPolicy aiPlayer2;
+    private boolean aiThinking = false;
+    private Text statusText;
     private Text player1ScoreText;
     private Text player2ScoreText;
     private HBox defenseScale1;
     private HBox defenseScale2;
 
-    private ScrollPane battleLogScroll;
-    private VBox battleLogContainer;
-    private CreatureState battleAttacker;
-    private CreatureState battleDefender;
+    private BattleLogView battleLog;
+    // Узлы карт руки: показанные сейчас и отложенные по id карты
+    private final List<HandCardView> handCards = new ArrayList<>();
+    // Индекс - Main.CardData#index
+    private final List<ArrayDeque<HandCardView>> handCardPool = new ArrayList<>();
+    // Бой разыгрывается заранее в фоне, диалог только показывает запись
+    private BattleRecord battleRecord;
+    // От начала боя до следующей раздачи и пока ИИ ищет ход каталог не подменяется, новый ждет в pendingCatalog
+    private boolean inBattle = false;
+    private CatalogWatcher catalogWatcher;
+    private MatchAutosave autosave;
+    private ReplayLog replayLog;
+    private Catalog pendingCatalog;
+    private int replayStep;
+    private PauseTransition replayDelay;
+    private double replaySpeed = 1.0;
     private Alert battleDialog;
     private Text battleC1Stats;
     private Text battleC2Stats;
     private Button battleButton;
     private VBox urnPane;
     private static Path externalDataPath;
+    private Stage primaryStage;
 
 
     public static void main(String[] args) {
@@ -109,17 +132,40 @@ public class Main extends Application {
             loadDataWithJackson();
         } catch (Exception e) {
             e.printStackTrace();
-            showError(I18n.getString("error.critical"), String.format(I18n.getString("error.dataLoad"), e.getMessage()));
+            showError(I18n.getString("error.critical"), I18n.format("error.dataLoad", e.getMessage()));
             return;
         }
+        startCatalogWatcher();
+
+        autosave = new MatchAutosave(externalDataPath.resolve(AUTOSAVE_FILE));
+        boolean resumed = resumeAutosave();
+        replayLog = openReplayLog(resumed);
+        if (!resumed) {
+            startGame();
+            replayLog.commit();
+        }
 
-        startGame();
+        Scene scene = new Scene(buildRoot(), 1300, 850);
+        scene.getStylesheets().add(makeCss());
+        stage.setScene(scene);
+        stage.setTitle(I18n.getString("app.title"));
+        primaryStage = stage;
+
+        stage.setMaximized(true);
+        stage.show();
+        // Автосохранение обычно сделано в конце хода Игрока 1: продолжаем с хода ИИ
+        scheduleAiMove();
+    }
 
+    /**
+     * Строит главный экран по текущему матчу. Все тексты берутся из I18n и карт в момент построения.
+     */
+    private BorderPane buildRoot() {
         BorderPane root = new BorderPane();
         root.setPadding(new Insets(10));
 
-        creature1Pane = createCreaturePane(creature1State);
-        creature2Pane = createCreaturePane(creature2State);
+        creature1Pane = createCreaturePane(match.creature1State);
+        creature2Pane = createCreaturePane(match.creature2State);
 
         creature1BetText = new Text();
         creature1BetText.getStyleClass().add("bet-total-text");
@@ -142,6 +188,8 @@ public class Main extends Application {
 
         centralDropZone1 = createCentralDropZone(creature1Pane, 1);
         centralDropZone2 = createCentralDropZone(creature2Pane, 2);
+        fillDropZone(centralDropZone1, match.creature1Stack);
+        fillDropZone(centralDropZone2, match.creature2Stack);
 
         HBox topArea = new HBox(15);
         topArea.setAlignment(Pos.TOP_CENTER);
@@ -178,7 +226,9 @@ public class Main extends Application {
 
         Button endTurnBtn = new Button(I18n.getString("button.endTurn"));
         endTurnBtn.setMinWidth(180);
-        endTurnBtn.setOnAction(e -> endTurn());
+        endTurnBtn.setOnAction(e -> {
+            if (!isAiTurn()) endTurn();
+        });
 
         player1ScoreText = new Text();
         player1ScoreText.getStyleClass().addAll("score-text", "text-p1");
@@ -186,12 +236,19 @@ public class Main extends Application {
         player2ScoreText.getStyleClass().addAll("score-text", "text-p2");
         updatePlayerTotalScores();
 
+        statusText = new Text();
+        statusText.getStyleClass().add("card-text");
+
         Region spacerLeft = new Region();
         HBox.setHgrow(spacerLeft, Priority.ALWAYS);
 
         urnPane = createUrnDropZone();
 
-        HBox bottomBar = new HBox(10, player1ScoreText, player2ScoreText, spacerLeft, urnPane, endTurnBtn);
+        ChoiceBox<String> languageChoice = new ChoiceBox<>(FXCollections.observableArrayList(I18n.languages()));
+        languageChoice.setValue(I18n.getLang());
+        languageChoice.setOnAction(e -> switchLocale(languageChoice.getValue()));
+
+        HBox bottomBar = new HBox(10, player1ScoreText, player2ScoreText, statusText, spacerLeft, languageChoice, urnPane, endTurnBtn);
         bottomBar.setAlignment(Pos.CENTER_LEFT);
         bottomBar.setPadding(new Insets(10, 0, 0, 0));
 
@@ -201,95 +258,238 @@ public class Main extends Application {
         root.setBottom(mainBottomArea);
 
         updateHandDisplay();
+        return root;
+    }
 
-        Scene scene = new Scene(root, 1300, 850);
-        scene.getStylesheets().add(makeCss());
-        stage.setScene(scene);
-        stage.setTitle(I18n.getString("app.title"));
-
-        stage.setMaximized(true);
-        stage.show();
+    /**
+     * Переключает язык на лету: JSON не перечитывается, тексты карт уже лежат в таблицах по языкам
+     * (см. {@link CardTexts}), так что экран просто строится заново за один проход.
+     */
+    private void switchLocale(String language) {
+        if (language == null || language.equals(I18n.getLang())) return;
+        I18n.setLocale(language);
+        // Узлы карт руки держат тексты старого языка
+        handCards.clear();
+        handCardPool.clear();
+        primaryStage.getScene().setRoot(buildRoot());
+        primaryStage.setTitle(I18n.getString("app.title"));
     }
 
-    private void startGame() {
-        currentPlayer = Player.PLAYER_1;
-        currentTurnPointsUsed = 0;
-        player1Hand.clear();
-        player2Hand.clear();
+    @Override
+    public void stop() {
+        if (catalogWatcher != null) {
+            catalogWatcher.close();
+        }
+        if (replayLog != null) {
+            if (inBattle) {
+                // Автосохранение вернет матч к началу боя: бой попадет в журнал, когда его сыграют после загрузки
+                replayLog.rollback();
+            } else if (!match.isDeckEmpty()) {
+                // Ходы текущего хода: снимок и журнал должны остановиться в одной точке
+                autosave.save(match);
+                replayLog.commit();
+            }
+            replayLog.close();
+        }
+        if (autosave != null) {
+            autosave.close();
+        }
+    }
 
-        Collections.shuffle(creatureTemplates);
+    /**
+     * Продолжает журнал партии, если матч загружен из автосохранения; иначе прежний журнал уходит в архив
+     * и начинается новый. Без журнала игра продолжается.
+     */
+    private ReplayLog openReplayLog(boolean resumed) {
+        Path path = externalDataPath.resolve(REPLAY_FILE);
+        try {
+            if (resumed) {
+                return ReplayLog.append(path, catalog);
+            }
+            if (Files.exists(path)) {
+                Path archive = Files.createDirectories(externalDataPath.resolve(REPLAY_DIR));
+                Files.move(path, archive.resolve("match-" + Files.getLastModifiedTime(path).toMillis() + ".replay"),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            return ReplayLog.create(path, catalog);
+        } catch (IOException e) {
+            System.err.println("Журнал партии не открыт: " + e);
+            return ReplayLog.disabled(path);
+        }
+    }
 
-        if (creatureTemplates.size() < 2) {
-            showError(I18n.getString("error.critical"), I18n.getString("error.noCreatures"));
-            return;
+    /**
+     * Продолжает матч из автосохранения, если оно есть и читается с текущими данными.
+     */
+    private boolean resumeAutosave() {
+        if (Files.notExists(autosave.path())) return false;
+        try {
+            MatchState saved = MatchSnapshot.load(autosave.path(), catalog);
+            if (saved.creature1State == null || saved.creature2State == null || saved.isDeckEmpty()) return false;
+            match = saved;
+            return true;
+        } catch (IOException e) {
+            // Старая версия или испорченный файл: просто новый матч, сохранение перезапишется
+            System.err.println("Автосохранение не загружено: " + e);
+            return false;
         }
-        creature1State = new CreatureState(creatureTemplates.get(0));
-        creature2State = new CreatureState(creatureTemplates.get(1));
+    }
 
-        // Инициализация динамических статов перед игрой (если вдруг старт с 15HP и т.д.)
-        creature1State.recalculateDynamicStats();
-        creature2State.recalculateDynamicStats();
+    private void startCatalogWatcher() {
+        try {
+            catalogWatcher = new CatalogWatcher(externalDataPath, catalog, externalDataPath.resolve(Catalog.SNAPSHOT_FILE),
+                    next -> Platform.runLater(() -> onCatalogReloaded(next)));
+            catalogWatcher.start();
+        } catch (IOException e) {
+            // Без перезагрузки игра работает как раньше
+            e.printStackTrace();
+        }
+    }
 
-        buildPlayableDeck();
+    private void onCatalogReloaded(Catalog next) {
+        if (inBattle || aiThinking) {
+            pendingCatalog = next;
+            return;
+        }
+        adoptCatalog(next);
+        scheduleAiMove();
+    }
 
-        for (int i = 0; i < config.STARTING_HAND_SIZE; i++) {
-            drawCardToHandData(Player.PLAYER_1);
-            drawCardToHandData(Player.PLAYER_2);
+    /**
+     * Переводит открытый матч на новый каталог: карты в руках и колоде - новые шаблоны,
+     * новые существа и колода - со следующей раздачи (см. {@link MatchState#withCatalog}).
+     * Ход ИИ не запускает: после боя матч еще на старой раздаче, вызывающий решает сам.
+     */
+    private void adoptCatalog(Catalog next) {
+        pendingCatalog = null;
+        catalog = next;
+        config = next.config;
+        match = match.withCatalog(next);
+        replayLog.catalogReloaded(next);
+
+        // Шансы и ИИ зависят от конфига и таблиц исходов
+        winEstimator = null;
+        oddsCache = new TranspositionTable(oddsCache.capacity());
+        if (aiPlayer2 != null) {
+            aiPlayer2.close();
+            aiPlayer2 = null;
         }
+        // Узлы карт в пуле построены по старым шаблонам
+        handCards.clear();
+        handCardPool.clear();
+
+        updateHandDisplay();
+        updateTurnPointsText();
+        updateAllScales();
+        statusText.setText(I18n.getString("label.dataReloaded"));
     }
 
-    private void buildPlayableDeck() {
-        influenceDeck.clear();
-        for (CardData template : influenceCardTemplates) {
-            int count = template.getCount();
-            for (int i = 0; i < count; i++) {
-                influenceDeck.add(template);
-            }
+    private void startGame() {
+        if (catalog.creatures.size() < 2) {
+            showError(I18n.getString("error.critical"), I18n.getString("error.noCreatures"));
+            return;
+        }
+        long seed = DiceUtils.newSeed();
+        match.startGame(seed);
+        replayLog.deal(seed);
+        if (match.isDeckEmpty()) {
+            triggerDeckEmptyGameOver();
         }
-        Collections.shuffle(influenceDeck);
     }
 
     private void endTurn() {
-        if (currentPlayer == Player.PLAYER_1) {
-            currentPlayer = Player.PLAYER_2;
-            currentTurnPointsUsed = 0;
-            drawCardsToMax(Player.PLAYER_2);
-        } else {
-            if (currentRound >= config.MAX_ROUNDS_PER_BATTLE) {
-                startBattle();
-                return;
-            } else {
-                currentRound++;
-                currentPlayer = Player.PLAYER_1;
-                currentTurnPointsUsed = 0;
-                drawCardsToMax(Player.PLAYER_1);
-            }
+        boolean battleReady = match.endTurn();
+        replayLog.endTurn();
+        if (match.isDeckEmpty()) {
+            triggerDeckEmptyGameOver();
+            return;
+        }
+        autosave.save(match);
+        replayLog.commit();
+        if (battleReady) {
+            startBattle();
+            return;
         }
         updateTurnPointsText();
         updateHandDisplay();
         updateAllScales();
+        scheduleAiMove();
     }
 
-    private void drawCardsToMax(Player player) {
-        List<CardData> currentHand = (player == Player.PLAYER_1) ? player1Hand : player2Hand;
-        int cardsToDraw = config.MAX_HAND_SIZE - currentHand.size();
+    private boolean isAiTurn() {
+        return config.AI_PLAYER_2 && match.currentPlayer == Player.PLAYER_2;
+    }
+
+    /**
+     * Если ходит ИИ, запускает поиск следующего хода в фоне; результат применяется в FX-потоке.
+     * Каждый ход ищется отдельно, так что ход ИИ виден по картам.
+     */
+    private void scheduleAiMove() {
+        if (!isAiTurn() || aiThinking) return;
+        if (aiPlayer2 == null) {
+            aiPlayer2 = new MctsPolicy(config.AI_THINK_TIME_MS, Runtime.getRuntime().availableProcessors());
+        }
+        aiThinking = true;
+        statusText.setText(I18n.getString("label.aiThinking"));
+        aiPlayer2.searchAsync(match, DiceUtils.newSeed())
+                .whenComplete((result, error) -> Platform.runLater(() -> applyAiMove(result, error)));
+    }
 
-        if (cardsToDraw > 0) {
-            for (int i = 0; i < cardsToDraw; i++) {
-                drawCardToHandData(player);
+    /**
+     * @param error чем кончился поиск, если хода нет (тогда ход ИИ заканчивается)
+     */
+    private void applyAiMove(MctsPolicy.SearchResult result, Throwable error) {
+        aiThinking = false;
+        if (pendingCatalog != null && !inBattle) {
+            // Ход найден для старого каталога (индексы руки другие) - отбрасываем, поиск начнется заново
+            adoptCatalog(pendingCatalog);
+            scheduleAiMove();
+            return;
+        }
+        if (!isAiTurn()) return;
+        if (error != null) {
+            System.err.println("ИИ не нашел ход, ход завершен: " + error);
+            endTurn();
+            return;
+        }
+        statusText.setText(I18n.format("label.aiStats", result.iterationsPerSecond()));
+
+        MatchState.Action action = result.action();
+        if (action.type() == MatchState.Action.Type.PLAY) {
+            CardData card = match.getCurrentHandCard(action.handIndex());
+            if (match.playCard(action.handIndex(), action.mode(), action.target()) == MatchState.PlayResult.OK) {
+                replayLog.play(card, action.mode(), action.target());
+                if (action.target() == 1) {
+                    showPlayedCard(centralDropZone1, creature1Pane, card, action.mode());
+                } else {
+                    showPlayedCard(centralDropZone2, creature2Pane, card, action.mode());
+                }
+                scheduleAiMove();
+                return;
+            }
+        } else if (action.type() == MatchState.Action.Type.DISCARD) {
+            CardData card = match.getCurrentHandCard(action.handIndex());
+            if (match.discard(action.handIndex())) {
+                replayLog.discard(card);
+                updateTurnPointsText();
+                updateHandDisplay();
+                scheduleAiMove();
+                return;
             }
         }
+        // Конец хода (или ход не прошел - чтобы не зациклиться)
+        endTurn();
     }
 
     private void updateTurnPointsText() {
-        String playerLabel = (currentPlayer == Player.PLAYER_1) ? I18n.getString("label.player1") : I18n.getString("label.player2");
-        turnPointsText.setText(String.format(I18n.getString("label.turnInfo"),
-                currentBattle, config.MAX_BATTLES,
-                currentRound, config.MAX_ROUNDS_PER_BATTLE,
-                playerLabel, currentTurnPointsUsed, config.MAX_TURN_POINTS));
+        String playerLabel = (match.currentPlayer == Player.PLAYER_1) ? I18n.getString("label.player1") : I18n.getString("label.player2");
+        turnPointsText.setText(I18n.format("label.turnInfo",
+                match.currentBattle, config.MAX_BATTLES,
+                match.currentRound, config.MAX_ROUNDS_PER_BATTLE,
+                playerLabel, match.currentTurnPointsUsed, config.MAX_TURN_POINTS));
 
         turnPointsText.getStyleClass().removeAll("text-p1", "text-p2");
-        if (currentPlayer == Player.PLAYER_1) {
+        if (match.currentPlayer == Player.PLAYER_1) {
             turnPointsText.getStyleClass().add("text-p1");
         } else {
             turnPointsText.getStyleClass().add("text-p2");
@@ -297,35 +497,19 @@ public class Main extends Application {
     }
 
     public void updateBetDisplays() {
-        int totalOnC1 = p1_BetsOn_C1 + p2_BetsOn_C1;
-        int totalOnC2 = p1_BetsOn_C2 + p2_BetsOn_C2;
-        creature1BetText.setText(String.format(I18n.getString("label.bets"), totalOnC1));
-        creature2BetText.setText(String.format(I18n.getString("label.bets"), totalOnC2));
+        if (creature1BetText == null) return; // UI еще не построен (или работаем без UI)
+        creature1BetText.setText(I18n.format("label.bets", match.bets.total(0)));
+        creature2BetText.setText(I18n.format("label.bets", match.bets.total(1)));
     }
 
     private void updatePlayerTotalScores() {
-        player1ScoreText.setText(String.format(I18n.getString("label.totalScore"), player1TotalScore));
-        player2ScoreText.setText(String.format(I18n.getString("label.totalScore"), player2TotalScore));
+        player1ScoreText.setText(I18n.format("label.totalScore", match.player1TotalScore));
+        player2ScoreText.setText(I18n.format("label.totalScore", match.player2TotalScore));
     }
 
     private void startBattle() {
-        if (creature1State.currentAttack > creature2State.currentAttack) {
-            battleAttacker = creature1State;
-            battleDefender = creature2State;
-        } else if (creature2State.currentAttack > creature1State.currentAttack) {
-            battleAttacker = creature2State;
-            battleDefender = creature1State;
-        } else {
-            int roll = DiceUtils.rollD6(1);
-            if (roll % 2 == 0) {
-                battleAttacker = creature1State;
-                battleDefender = creature2State;
-            } else {
-                battleAttacker = creature2State;
-                battleDefender = creature1State;
-            }
-        }
-
+        inBattle = true;
+        battleRecord = null;
         battleDialog = new Alert(Alert.AlertType.NONE);
         battleDialog.setTitle(I18n.getString("battle.dialogTitle"));
         battleDialog.getDialogPane().getStylesheets().add(makeCss());
@@ -337,278 +521,243 @@ public class Main extends Application {
         BorderPane battlePane = new BorderPane();
         battlePane.setPadding(new Insets(10));
 
-        battleC1Stats = new Text(getCreatureBattleStats(creature1State));
+        battleC1Stats = new Text(getCreatureBattleStats(match.creature1State));
         battleC1Stats.getStyleClass().add("battle-stat-text");
         battlePane.setLeft(battleC1Stats);
         BorderPane.setAlignment(battleC1Stats, Pos.TOP_LEFT);
 
-        battleC2Stats = new Text(getCreatureBattleStats(creature2State));
+        battleC2Stats = new Text(getCreatureBattleStats(match.creature2State));
         battleC2Stats.getStyleClass().add("battle-stat-text");
         battlePane.setRight(battleC2Stats);
         BorderPane.setAlignment(battleC2Stats, Pos.TOP_RIGHT);
 
-        battleLogContainer = new VBox(5);
-        battleLogContainer.setAlignment(Pos.TOP_CENTER);
+        battleLog = new BattleLogView();
+        battleLog.getNode().setPrefHeight(450);
+
+        battleButton = new Button(I18n.getString("button.skipToEnd"));
+        battleButton.setDisable(true);
+        battleButton.setOnAction(e -> skipToEnd());
 
-        battleLogScroll = new ScrollPane(battleLogContainer);
-        battleLogScroll.setPrefHeight(450);
-        battleLogScroll.setFitToWidth(true);
-        battleLogScroll.getStyleClass().add("battle-log-scroll");
+        ChoiceBox<Double> speedChoice = new ChoiceBox<>(FXCollections.observableArrayList(1.0, 2.0, 4.0, 8.0));
+        speedChoice.setConverter(new StringConverter<>() {
+            @Override
+            public String toString(Double speed) {
+                return (speed == null) ? "" : "x" + speed.intValue();
+            }
 
-        battleLogContainer.heightProperty().addListener((observable, oldValue, newValue) -> {
-            battleLogScroll.setVvalue(1.0);
+            @Override
+            public Double fromString(String text) {
+                return Double.parseDouble(text.substring(1));
+            }
         });
+        speedChoice.setValue(replaySpeed);
+        speedChoice.valueProperty().addListener((obs, oldSpeed, newSpeed) -> replaySpeed = newSpeed);
+
+        HBox speedBox = new HBox(10, new Label(I18n.getString("label.replaySpeed")), speedChoice);
+        speedBox.setAlignment(Pos.CENTER);
+        speedBox.setVisible(!config.BATTLE_INSTANT);
+        speedBox.setManaged(!config.BATTLE_INSTANT);
 
-        battleButton = new Button(I18n.getString("button.fight"));
-        battleButton.setOnAction(e -> playBattleStep());
+        HBox controls = new HBox(10, speedBox, battleButton);
+        controls.setAlignment(Pos.CENTER);
 
-        VBox centerContent = new VBox(10, battleLogScroll, battleButton);
+        VBox centerContent = new VBox(10, battleLog.getNode(), controls);
         centerContent.setAlignment(Pos.CENTER);
         battlePane.setCenter(centerContent);
 
-        addBattleLog(I18n.getString("battle.start"));
-
-        addBattleLog(String.format(I18n.getString("battle.initiative.attack"), battleAttacker.getLocalizedName(), battleAttacker.currentAttack));
+        battleLog.add("battle.start");
 
         battleDialog.getDialogPane().setContent(battlePane);
-
-        PauseTransition startDelay = new PauseTransition(Duration.seconds(1.0));
-        startDelay.setOnFinished(e -> playBattleStep());
-        startDelay.play();
-
         battleDialog.show();
-    }
-
-    private void playBattleStep() {
-        // --- STUN CHECK (Пропуск хода) ---
-        if (battleAttacker.isStunned) {
-            addBattleLog(String.format(I18n.getString("battle.stun.skip"), battleAttacker.getLocalizedName()));
-            battleAttacker.isStunned = false; // Оглушение снимается после пропуска
-            swapTurn();
-            return;
-        }
-
-        // --- БРОСОК КУБИКОВ ПО ОДНОМУ ---
-        int diceCount = getDiceCount(battleAttacker.currentAttack);
-        List<Integer> successfulDice = new ArrayList<>();
-        List<Integer> rawRolls = new ArrayList<>();
 
-        for (int i = 0; i < diceCount; i++) {
-            int roll = DiceUtils.rollD6(1);
-            rawRolls.add(roll);
+        // Весь бой разыгрывается сразу в фоне от seed боя; показ - повтор записи
+        CreatureState c1 = new CreatureState(match.creature1State);
+        CreatureState c2 = new CreatureState(match.creature2State);
+        long seed = match.battleSeed;
+        GameConfig battleConfig = config;
+        DamageTable damageTable = catalog.damageTable;
+        CompletableFuture
+                .supplyAsync(() -> BattleRecord.record(battleConfig, damageTable, seed, c1, c2))
+                .whenComplete((record, error) -> Platform.runLater(() -> {
+                    if (error != null) {
+                        battleFailed(error);
+                    } else {
+                        showBattle(record);
+                    }
+                }));
+    }
 
-            // 1. Промах (Орк)
-            if (battleAttacker.missChance != null && battleAttacker.missChance.contains(roll)) {
-                addBattleLog(String.format(I18n.getString("battle.miss"), (i+1), roll));
-                continue;
-            }
+    /**
+     * Бой не разыгрался (например, ни одно существо не может нанести урон): бой отменяется без выплат,
+     * существа раздаются заново.
+     */
+    private void battleFailed(Throwable error) {
+        Throwable cause = (error instanceof CompletionException && error.getCause() != null) ? error.getCause() : error;
+        System.err.println("Бой не разыгран, раздача заново: " + cause);
+        battleDialog.close();
+        showError(I18n.getString("battle.dialogTitle"), I18n.format("error.battleFailed", cause.getMessage()));
+        restartGame();
+    }
 
-            // 2. Оглушающий удар (Дварф)
-            if (battleAttacker.stunChance != null && battleAttacker.stunChance.contains(roll)) {
-                addBattleLog(String.format(I18n.getString("battle.stun.trigger"), (i+1), roll));
-                battleDefender.isStunned = true;
-            }
+    private void showBattle(BattleRecord record) {
+        battleRecord = record;
+        replayStep = 0;
 
-            successfulDice.add(roll);
-        }
+        CreatureState firstAttacker = match.getCreature(record.getFirstAttackerSide() + 1);
+        battleLog.add("battle.initiative.attack", firstAttacker.getLocalizedName(), firstAttacker.currentAttack);
 
-        // --- МАГИЧЕСКИЙ БАРЬЕР (Поглощает один максимальный кубик) ---
-        if (battleDefender.magicBarrier > 0 && !successfulDice.isEmpty()) {
-            // Ищем максимальный кубик, чтобы его заблокировать
-            int maxDie = Collections.max(successfulDice);
-            successfulDice.remove(Integer.valueOf(maxDie));
-            battleDefender.magicBarrier--;
-            addBattleLog(String.format(I18n.getString("battle.barrier.absorb"),
-                    battleDefender.getLocalizedName(), maxDie));
+        if (config.BATTLE_INSTANT) {
+            skipToEnd();
+            return;
         }
+        battleButton.setDisable(false);
+        scheduleReplayStep(1.0);
+    }
 
-        // --- СУММА УРОНА ---
-        int rawDamage = successfulDice.stream().mapToInt(Integer::intValue).sum();
-
-        // --- ЗАЩИТА ---
-        int defenderDefense = battleDefender.currentDefense;
-        int damageReduction = getDefenseBlock(defenderDefense);
-        int finalDamage = Math.max(0, rawDamage - damageReduction);
-
-        battleDefender.currentHealth -= finalDamage;
-        // ВНИМАНИЕ: Здесь НЕ вызываем recalculateDynamicStats(), так как бонусы не должны меняться в бою
-
-        addBattleLog("---");
-        addBattleLog(String.format(I18n.getString("battle.log.attack"),
-                battleAttacker.getLocalizedName(), rawRolls.toString(), rawDamage));
+    private void scheduleReplayStep(double delaySeconds) {
+        replayDelay = new PauseTransition(Duration.seconds(delaySeconds / replaySpeed));
+        replayDelay.setOnFinished(e -> playReplayStep());
+        replayDelay.play();
+    }
 
-        if (damageReduction > 0) {
-            addBattleLog(String.format(I18n.getString("battle.log.defense"),
-                    battleDefender.getLocalizedName(), damageReduction));
+    private void playReplayStep() {
+        showReplayStep(replayStep++);
+        if (replayStep >= battleRecord.getStepCount()) {
+            finishBattle();
+            return;
         }
+        scheduleReplayStep(config.BATTLE_STEP_DELAY);
+    }
 
-        addBattleLog(String.format(I18n.getString("battle.log.result"),
-                finalDamage, battleDefender.getLocalizedName(), Math.max(0, battleDefender.currentHealth)));
+    private void showReplayStep(int step) {
+        battleRecord.replayStep(step, battleLogListener);
+        battleRecord.applyState(step, match.creature1State, match.creature2State);
 
-        // --- ВАМПИРИЗМ ---
-        if (battleAttacker.vampirism > 0 && finalDamage > 0) {
-            battleAttacker.currentHealth += battleAttacker.vampirism;
-            // Тут тоже не пересчитываем статы, даже если HP выросло
-            addBattleLog(String.format(I18n.getString("battle.vampirism"),
-                    battleAttacker.getLocalizedName(), battleAttacker.vampirism));
-        }
-
-        battleC1Stats.setText(getCreatureBattleStats(creature1State));
-        battleC2Stats.setText(getCreatureBattleStats(creature2State));
+        battleC1Stats.setText(getCreatureBattleStats(match.creature1State));
+        battleC2Stats.setText(getCreatureBattleStats(match.creature2State));
+    }
 
-        if (battleDefender.currentHealth <= 0) {
-            battleButton.setText(I18n.getString("button.ok"));
-            battleButton.setOnAction(e -> {
-                battleDialog.close();
-                Platform.runLater(() -> processBattleResults(battleAttacker));
-            });
-            return;
+    /**
+     * Досрочно показывает оставшиеся ходы без пауз (исход тот же - он уже в записи).
+     */
+    private void skipToEnd() {
+        if (battleRecord == null) return;
+        if (replayDelay != null) {
+            replayDelay.stop();
         }
-
-        swapTurn();
+        int lastStep = battleRecord.getStepCount() - 1;
+        while (replayStep < lastStep) {
+            battleRecord.replayStep(replayStep++, battleLogListener);
+        }
+        showReplayStep(replayStep++);
+        finishBattle();
     }
 
-    private void swapTurn() {
-        CreatureState temp = battleAttacker;
-        battleAttacker = battleDefender;
-        battleDefender = temp;
-
-        PauseTransition stepDelay = new PauseTransition(Duration.seconds(config.BATTLE_STEP_DELAY));
-        stepDelay.setOnFinished(e -> playBattleStep());
-        stepDelay.play();
+    private void finishBattle() {
+        CreatureState winner = match.getCreature(battleRecord.getWinnerSide() + 1);
+        battleButton.setDisable(false);
+        battleButton.setText(I18n.getString("button.ok"));
+        battleButton.setOnAction(e -> {
+            battleDialog.close();
+            Platform.runLater(() -> processBattleResults(winner));
+        });
     }
 
-    private void processBattleResults(CreatureState winner) {
-        String winnerName = winner.getLocalizedName();
-        RewardTier winnerTier;
+    /**
+     * Переводит события движка боя в события лога (текст собирается только для видимых строк).
+     */
+    private class BattleLogListener implements BattleEngine.BattleListener {
+        @Override
+        public void onStunSkip(int attacker) {
+            battleLog.add("battle.stun.skip", nameOf(attacker));
+        }
 
-        int p1WinningsFromWinner = 0;
-        int p2WinningsFromWinner = 0;
-        int p1LossesFromLoser = 0;
-        int p2LossesFromLoser = 0;
+        @Override
+        public void onMiss(int dieNumber, int roll) {
+            battleLog.add("battle.miss", dieNumber, roll);
+        }
 
-        if (winner == creature1State) {
-            winnerName = creature1State.getLocalizedName();
-            winnerTier = getRewardTier(creature1State, creature2State);
+        @Override
+        public void onStunTrigger(int dieNumber, int roll) {
+            battleLog.add("battle.stun.trigger", dieNumber, roll);
+        }
 
-            p1WinningsFromWinner = (int)(p1_BetsOn_C1 * getRewardMultiplier(winnerTier));
-            p2WinningsFromWinner = (int)(p2_BetsOn_C1 * getRewardMultiplier(winnerTier));
+        @Override
+        public void onBarrierAbsorb(int defender, int absorbedDie) {
+            battleLog.add("battle.barrier.absorb", nameOf(defender), absorbedDie);
+        }
 
-            p1LossesFromLoser = p1_BetsOn_C2;
-            p2LossesFromLoser = p2_BetsOn_C2;
+        @Override
+        public void onAttack(int attacker, int[] rolls, int diceCount,
+                             int rawDamage, int damageReduction, int finalDamage, int defenderHealth) {
+            int defender = 1 - attacker;
+            // Движок переиспользует массив бросков, поэтому копия
+            BattleLogView.Rolls rollsText = new BattleLogView.Rolls(Arrays.copyOf(rolls, diceCount));
 
-        } else {
-            winnerName = creature2State.getLocalizedName();
-            winnerTier = getRewardTier(creature2State, creature1State);
+            battleLog.add("battle.log.separator");
+            battleLog.add("battle.log.attack", nameOf(attacker), rollsText, rawDamage);
 
-            p1WinningsFromWinner = (int)(p1_BetsOn_C2 * getRewardMultiplier(winnerTier));
-            p2WinningsFromWinner = (int)(p2_BetsOn_C2 * getRewardMultiplier(winnerTier));
+            if (damageReduction > 0) {
+                battleLog.add("battle.log.defense", nameOf(defender), damageReduction);
+            }
 
-            p1LossesFromLoser = p1_BetsOn_C1;
-            p2LossesFromLoser = p2_BetsOn_C1;
+            battleLog.add("battle.log.result", finalDamage, nameOf(defender), defenderHealth);
         }
 
-        int player1NetProfit = p1WinningsFromWinner - p1LossesFromLoser;
-        int player2NetProfit = p2WinningsFromWinner - p2LossesFromLoser;
+        @Override
+        public void onVampirism(int attacker, int amount) {
+            battleLog.add("battle.vampirism", nameOf(attacker), amount);
+        }
 
-        // --- ЛОГИКА ВОРА ---
-        // Если победитель - Вор (thief=true), он крадет 400 у самого прибыльного.
-        if (winner.thief) {
-            if (player1NetProfit > player2NetProfit) {
-                player1NetProfit -= 400;
-                // Показываем сообщение о краже? Можно в диалоге победы.
-            } else if (player2NetProfit > player1NetProfit) {
-                player2NetProfit -= 400;
-            }
-            // Если равны, никто не крадет? По логике "больше", да.
+        private String nameOf(int side) {
+            return match.getCreature(side + 1).getLocalizedName();
         }
+    }
 
-        player1TotalScore += player1NetProfit;
-        player2TotalScore += player2NetProfit;
+    private final BattleLogListener battleLogListener = new BattleLogListener();
 
-        updatePlayerTotalScores();
-        showEndGameDialog(winnerName, player1NetProfit, player2NetProfit, winnerTier, winner.thief);
-    }
+    private void processBattleResults(CreatureState winner) {
+        String winnerName = winner.getLocalizedName();
+        BattlePayout.Result payout = match.settleBattle(winner);
+        replayLog.battle((winner == match.creature1State) ? 1 : 2, payout.player1NetProfit(), payout.player2NetProfit());
 
-    private void addBattleLog(String message) {
-        Text text = new Text(message);
-        text.getStyleClass().add("battle-log-text");
-        battleLogContainer.getChildren().add(text);
+        updatePlayerTotalScores();
+        showEndGameDialog(winnerName, payout.player1NetProfit(), payout.player2NetProfit(), payout.winnerTier(), payout.thiefTriggered());
     }
 
     private String getCreatureBattleStats(CreatureState state) {
         int displayHealth = Math.max(0, state.currentHealth);
 
         String rpString = (state.bonusRatePoints > 0) ?
-                String.format(I18n.getString("battle.statsHeader.bonus"), state.getLocalizedName(), displayHealth, state.currentRatePoints, state.bonusRatePoints) :
-                String.format(I18n.getString("battle.statsHeader"), state.getLocalizedName(), displayHealth);
+                I18n.format("battle.statsHeader.bonus", state.getLocalizedName(), displayHealth, state.currentRatePoints, state.bonusRatePoints) :
+                I18n.format("battle.statsHeader", state.getLocalizedName(), displayHealth);
 
         String specials = "";
         if (state.magicBarrier > 0) specials += " [Barrier: " + state.magicBarrier + "]";
         if (state.isStunned) specials += " [STUN]";
 
-        return rpString +
-                "\n" +
-                String.format(" ATK: %d (%s)", state.currentAttack, I18n.getString("label.diceLabel." + getDiceCount(state.currentAttack))) +
-                "\n" +
-                String.format(" DEF: %d (%s)", state.currentDefense, I18n.getString("label.defenseBlock." + getDefenseBlock(state.currentDefense))) +
-                "\n" +
-                String.format(" RP: %d (%s)", state.getTotalRP(), state.getLocalizedName()) + specials;
-    }
-
-    private RewardTier getRewardTier(CreatureState betOn, CreatureState opponent) {
-        int rpDiff = betOn.getTotalRP() - opponent.getTotalRP();
-        if (rpDiff > 0) {
-            return RewardTier.YELLOW;
-        } else {
-            int diff = Math.abs(rpDiff);
-            if (diff < config.BET_REWARD_GREEN_THRESHOLD) {
-                return RewardTier.YELLOW;
-            }
-            if (diff < config.BET_REWARD_RED_THRESHOLD) {
-                return RewardTier.GREEN;
-            }
-            return RewardTier.RED;
-        }
-    }
-
-    private double getRewardMultiplier(RewardTier tier) {
-        switch (tier) {
-            case GREEN: return config.REWARD_GREEN_MULT;
-            case RED: return config.REWARD_RED_MULT;
-            case YELLOW:
-            default: return config.REWARD_YELLOW_MULT;
-        }
+        StringBuilder sb = new StringBuilder(rpString).append('\n');
+        BATTLE_ATK.formatTo(sb, state.currentAttack, I18n.getString("label.diceLabel." + getDiceCount(state.currentAttack)));
+        sb.append('\n');
+        BATTLE_DEF.formatTo(sb, state.currentDefense, I18n.getString("label.defenseBlock." + getDefenseBlock(state.currentDefense)));
+        sb.append('\n');
+        BATTLE_RP.formatTo(sb, state.getTotalRP(), state.getLocalizedName());
+        return sb.append(specials).toString();
     }
 
     private int getDiceCount(int attack) {
-        if (attack <= config.ATTACK_TIER_1_MAX) {
-            return 1;
-        }
-        if (attack <= config.ATTACK_TIER_2_MAX) {
-            return 2;
-        }
-        return 3;
+        return BattleEngine.getDiceCount(config, attack);
     }
 
     private int getDefenseBlock(int defense) {
-        if (defense <= 0) {
-            return 0;
-        }
-        if (defense <= config.DEFENSE_TIER_1_MAX) {
-            return 1;
-        }
-        if (defense <= config.DEFENSE_TIER_2_MAX) {
-            return 2;
-        }
-        return 3;
+        return BattleEngine.getDefenseBlock(config, defense);
     }
 
-    private void showEndGameDialog(String winnerName, int p1NetProfit, int p2NetProfit, RewardTier tier, boolean thiefTriggered) {
+    private void showEndGameDialog(String winnerName, int p1NetProfit, int p2NetProfit, BattlePayout.RewardTier tier, boolean thiefTriggered) {
         Platform.runLater(() -> {
             Alert alert = new Alert(Alert.AlertType.INFORMATION);
             alert.setTitle(I18n.getString("game.endTitle"));
-            alert.setHeaderText(String.format(I18n.getString("battle.winner"), winnerName));
+            alert.setHeaderText(I18n.format("battle.winner", winnerName));
 
             Label p1Label = new Label(I18n.getString("label.player1") + " " + I18n.getString("game.winnings.simple") + ":");
             Label p1Amount = new Label("" + p1NetProfit);
@@ -630,7 +779,7 @@ public class Main extends Application {
                 String victim = (p1NetProfit < p2NetProfit) ? I18n.getString("label.player2") : I18n.getString("label.player1");
                 // Если прибыли равны, вор не сработал по логике "строго больше", но можно доработать.
                 // Добавим сообщение
-                Label thiefMsg = new Label(String.format(I18n.getString("battle.thief.effect"), victim));
+                Label thiefMsg = new Label(I18n.format("battle.thief.effect", victim));
                 thiefMsg.setStyle("-fx-text-fill: red; -fx-font-weight: bold;");
                 grid.add(thiefMsg, 0, 2, 2, 1);
             }
@@ -640,50 +789,47 @@ public class Main extends Application {
 
             alert.showAndWait();
 
-            if (currentBattle >= config.MAX_BATTLES) {
+            if (match.isLastBattle()) {
                 Alert matchOverAlert = new Alert(Alert.AlertType.INFORMATION);
                 matchOverAlert.setTitle(I18n.getString("game.matchOver.title"));
                 matchOverAlert.setHeaderText(null);
-                matchOverAlert.setContentText(String.format(I18n.getString("game.matchOver.content"),
-                        config.MAX_BATTLES, player1TotalScore, player2TotalScore));
+                matchOverAlert.setContentText(I18n.format("game.matchOver.content",
+                        config.MAX_BATTLES, match.player1TotalScore, match.player2TotalScore));
                 matchOverAlert.getButtonTypes().setAll(new ButtonType(I18n.getString("game.matchOver.newMatch")));
                 matchOverAlert.showAndWait();
-
-                player1TotalScore = 0;
-                player2TotalScore = 0;
-                currentBattle = 1;
-                updatePlayerTotalScores();
-            } else {
-                currentBattle++;
             }
+            match.advanceBattle();
+            updatePlayerTotalScores();
 
             restartGame();
         });
     }
 
     private void restartGame() {
-        currentRound = 1;
-        p1_BetsOn_C1 = 0;
-        p2_BetsOn_C1 = 0;
-        p1_BetsOn_C2 = 0;
-        p2_BetsOn_C2 = 0;
-        updateBetDisplays();
-
+        inBattle = false;
+        if (pendingCatalog != null) {
+            adoptCatalog(pendingCatalog);
+        }
+        // Раунд, ставки и стопки сбрасывает сам MatchState.startGame
         startGame();
+        autosave.save(match);
+        replayLog.commit();
+        updateBetDisplays();
 
-        creature1Pane.setUserData(creature1State);
-        creature2Pane.setUserData(creature2State);
+        creature1Pane.setUserData(match.creature1State);
+        creature2Pane.setUserData(match.creature2State);
 
         clearDropZone(centralDropZone1);
         clearDropZone(centralDropZone2);
         clearDropZone(urnPane);
 
-        refreshCreaturePane(creature1Pane, creature1State);
-        refreshCreaturePane(creature2Pane, creature2State);
+        refreshCreaturePane(creature1Pane, match.creature1State);
+        refreshCreaturePane(creature2Pane, match.creature2State);
 
         updateHandDisplay();
         updateTurnPointsText();
         updateAllScales();
+        scheduleAiMove();
     }
 
     private void clearDropZone(VBox dropZone) {
@@ -692,47 +838,72 @@ public class Main extends Application {
         if (dropZone.getChildren().size() > 1) {
             dropZone.getChildren().remove(1, dropZone.getChildren().size());
         }
-        if (dropZone.getUserData() instanceof List) {
-            ((List<?>) dropZone.getUserData()).clear();
-        }
     }
 
+    /**
+     * Сверяет руку на экране с рукой текущего игрока. Узлы карт не пересоздаются: узлы прошлой руки
+     * уходят в пул по id карты, и каждая карта новой руки берет узел оттуда (новый - только если в пуле пусто).
+     * Список детей handBox меняется, только если поменялся порядок узлов.
+     */
     private void updateHandDisplay() {
-        handBox.getChildren().clear();
-        List<CardData> currentHand = (currentPlayer == Player.PLAYER_1) ? player1Hand : player2Hand;
-
-        for (CardData card : currentHand) {
-            VBox cardNode = createHandCardNode(card);
-            cardNode.getStyleClass().add("hand-card");
-            cardNode.setPrefSize(170, 240);
-            cardNode.setMinSize(170, 240);
-            cardNode.setMaxSize(170, 240);
-            handBox.getChildren().add(cardNode);
+        for (HandCardView view : handCards) {
+            handCardPool(view.data.index).offer(view);
         }
-    }
-
-    private void drawCardToHandData(Player player) {
-        if (influenceDeck.isEmpty()) {
-            triggerDeckEmptyGameOver();
-            return;
+        handCards.clear();
+
+        Hand hand = match.getCurrentHand();
+        for (int i = 0; i < hand.size(); i++) {
+            int card = hand.get(i);
+            HandCardView view = handCardPool(card).poll();
+            if (view == null) {
+                view = new HandCardView(match.card(card));
+            }
+            view.handIndex = i;
+            // Как и раньше, после любого действия карты показываются стороной бафа
+            view.setBet(false);
+            handCards.add(view);
         }
 
-        CardData card = influenceDeck.remove(influenceDeck.size() - 1);
+        ObservableList<javafx.scene.Node> children = handBox.getChildren();
+        boolean unchanged = children.size() == handCards.size();
+        for (int i = 0; unchanged && i < handCards.size(); i++) {
+            unchanged = children.get(i) == handCards.get(i).box;
+        }
+        if (!unchanged) {
+            List<javafx.scene.Node> boxes = new ArrayList<>(handCards.size());
+            for (HandCardView view : handCards) {
+                boxes.add(view.box);
+            }
+            children.setAll(boxes);
+        }
+    }
 
-        if (player == Player.PLAYER_1) {
-            player1Hand.add(card);
-        } else {
-            player2Hand.add(card);
+    /**
+     * Отложенные узлы карты с индексом card.
+     */
+    private ArrayDeque<HandCardView> handCardPool(int card) {
+        while (handCardPool.size() <= card) {
+            handCardPool.add(new ArrayDeque<>());
         }
+        return handCardPool.get(card);
     }
 
     private void triggerDeckEmptyGameOver() {
+        autosave.discard();
+        replayLog.commit();
         showError(I18n.getString("error.deckEmpty.title"), I18n.getString("error.deckEmpty.content"));
         Platform.exit();
     }
 
     private VBox createCreaturePane(CreatureState state) {
-        VBox creatureCardPane = createCardNode(state.baseCard, true, state);
+        VBox creatureCardPane = new VBox(4);
+        creatureCardPane.getStyleClass().add("card");
+        creatureCardPane.setPadding(new Insets(6));
+
+        CreatureView view = new CreatureView(creatureCardPane);
+        creatureCardPane.getProperties().put(CreatureView.class, view);
+        view.update(state);
+
         creatureCardPane.setPrefSize(260, 180);
         creatureCardPane.setMinSize(260, 180);
         creatureCardPane.setMaxSize(260, 180);
@@ -752,7 +923,7 @@ public class Main extends Application {
         urn.getChildren().add(label);
 
         urn.setOnDragOver(ev -> {
-            if (ev.getGestureSource() != urn && ev.getDragboard().hasString()) {
+            if (ev.getGestureSource() != urn && ev.getDragboard().hasContent(CARD_DRAG) && !isAiTurn()) {
                 ev.acceptTransferModes(TransferMode.MOVE);
                 urn.getStyleClass().add("drop-area-hover");
             }
@@ -767,22 +938,18 @@ public class Main extends Application {
         urn.setOnDragDropped(ev -> {
             Dragboard db = ev.getDragboard();
             boolean success = false;
-            if (db.hasString()) {
-                int costToDiscard = 1;
-                if (currentTurnPointsUsed + costToDiscard <= config.MAX_TURN_POINTS) {
-
-                    String content = db.getString();
-                    String cardId = content.split(";")[0];
-
-                    currentTurnPointsUsed += costToDiscard;
+            CardDrag drag = cardDrag(db);
+            if (drag != null) {
+                CardData card = match.card(drag.card());
+                if (match.discard(drag.handIndex())) {
+                    replayLog.discard(card);
                     updateTurnPointsText();
-                    removeCardFromHandById(cardId);
                     updateHandDisplay();
                     success = true;
                 } else {
-                    showInfo(String.format(I18n.getString("error.notEnoughPoints"),
-                            costToDiscard,
-                            (config.MAX_TURN_POINTS - currentTurnPointsUsed)
+                    showInfo(I18n.format("error.notEnoughPoints",
+                            MatchState.DISCARD_COST,
+                            match.getRemainingTurnPoints()
                     ));
                 }
             }
@@ -793,6 +960,25 @@ public class Main extends Application {
         return urn;
     }
 
+    /**
+     * Перетаскиваемая карта из руки: позиция в руке, индекс карты и сторона (баф или ставка).
+     */
+    record CardDrag(int handIndex, int card, MatchState.PlayMode mode) implements Serializable {
+    }
+
+    private static final DataFormat CARD_DRAG = new DataFormat("application/x-deporded-card-drag");
+
+    /**
+     * Карта из перетаскивания или null, если перетаскивают не карту или рука с тех пор поменялась.
+     */
+    private CardDrag cardDrag(Dragboard db) {
+        if (!(db.getContent(CARD_DRAG) instanceof CardDrag drag)) {
+            return null;
+        }
+        Hand hand = match.getCurrentHand();
+        return (drag.handIndex() < hand.size() && hand.get(drag.handIndex()) == drag.card()) ? drag : null;
+    }
+
     private VBox createCentralDropZone(VBox targetPane, int targetBetId) {
         VBox dropArea = new VBox(4);
         dropArea.setPrefSize(220, 180);
@@ -800,10 +986,9 @@ public class Main extends Application {
         dropArea.setMaxSize(220, 180);
         dropArea.setAlignment(Pos.TOP_CENTER);
         dropArea.getStyleClass().add("drop-area");
-        dropArea.setUserData(new ArrayList<CardData>());
 
         dropArea.setOnDragOver(ev -> {
-            if (ev.getGestureSource() != dropArea && ev.getDragboard().hasString()) {
+            if (ev.getGestureSource() != dropArea && ev.getDragboard().hasContent(CARD_DRAG) && !isAiTurn()) {
                 ev.acceptTransferModes(TransferMode.MOVE);
                 dropArea.getStyleClass().add("drop-area-hover");
             }
@@ -818,91 +1003,30 @@ public class Main extends Application {
         dropArea.setOnDragDropped(ev -> {
             Dragboard db = ev.getDragboard();
             boolean success = false;
-            if (db.hasString()) {
-                String content = db.getString();
-                String[] parts = content.split(";");
-                if (parts.length != 2) return;
-
-                String cardId = parts[0];
-                String mode = parts[1];
-
-                CardData cd = allCards.get(cardId);
-                if (cd == null) return;
-
+            CardDrag drag = cardDrag(db);
+            if (drag != null) {
+                CardData cd = match.card(drag.card());
                 int costToPlay = cd.cost;
-
-                if (currentTurnPointsUsed + costToPlay <= config.MAX_TURN_POINTS) {
-
-                    CreatureState currentState = (CreatureState) targetPane.getUserData();
-
-                    if ("bet".equals(mode)) {
-                        if (currentRound <= currentState.bettingBlockedUntilRound) {
-                            showInfo(String.format(I18n.getString("error.bettingBlocked"), currentState.getLocalizedName()));
-                            ev.setDropCompleted(false);
-                            ev.consume();
-                            return;
-                        }
-                    }
-
-                    currentTurnPointsUsed += costToPlay;
-                    updateTurnPointsText();
-                    removeCardFromHandById(cardId);
-
-                    if ("buff".equals(mode)) {
-                        if (cd.effects != null) {
-                            for (Effect effect : cd.effects) {
-                                PatchUtils.applyEffect(this, currentState, effect, targetBetId);
-                            }
-                        }
-                        refreshCreaturePane(targetPane, currentState);
-
-                        VBox small = createCardNode(cd, false, null);
-                        small.setPrefSize(200, 36);
-                        small.setMinSize(200, 36);
-                        small.setMaxSize(200, 36);
-                        dropArea.getChildren().add(small);
-                    }
-                    else if ("bet".equals(mode)) {
-                        int betAmount = cd.getBetAmount();
-                        if (targetBetId == 1) {
-                            if (currentPlayer == Player.PLAYER_1) {
-                                p1_BetsOn_C1 += betAmount;
-                            } else {
-                                p2_BetsOn_C1 += betAmount;
-                            }
-                            int totalBet = p1_BetsOn_C1 + p2_BetsOn_C1;
-                            currentState.bonusRatePoints = totalBet / config.BET_AMOUNT_PER_RP;
-                        } else {
-                            if (currentPlayer == Player.PLAYER_1) {
-                                p1_BetsOn_C2 += betAmount;
-                            } else {
-                                p2_BetsOn_C2 += betAmount;
-                            }
-                            int totalBet = p1_BetsOn_C2 + p2_BetsOn_C2;
-                            currentState.bonusRatePoints = totalBet / config.BET_AMOUNT_PER_RP;
-                        }
-                        updateBetDisplays();
-                        refreshCreaturePane(targetPane, currentState);
-
-                        Text betText = new Text(String.format(I18n.getString("label.betText"), betAmount));
-                        betText.getStyleClass().add(
-                                (currentPlayer == Player.PLAYER_1) ? "bet-text-p1" : "bet-text-p2"
-                        );
-                        dropArea.getChildren().add(betText);
-                    }
-
-                    @SuppressWarnings("unchecked")
-                    List<CardData> list = (List<CardData>) dropArea.getUserData();
-                    list.add(cd);
-
-                    success = true;
-                    updateHandDisplay();
-                    updateAllScales();
-                } else {
-                    showInfo(String.format(I18n.getString("error.notEnoughPoints"),
-                            costToPlay,
-                            (config.MAX_TURN_POINTS - currentTurnPointsUsed)
-                    ));
+                CreatureState currentState = (CreatureState) targetPane.getUserData();
+                MatchState.PlayMode playMode = drag.mode();
+
+                switch (match.playCard(drag.handIndex(), playMode, targetBetId)) {
+                    case OK:
+                        replayLog.play(cd, playMode, targetBetId);
+                        showPlayedCard(dropArea, targetPane, cd, playMode);
+                        success = true;
+                        break;
+                    case BETTING_BLOCKED:
+                        showInfo(I18n.format("error.bettingBlocked", currentState.getLocalizedName()));
+                        break;
+                    case NOT_ENOUGH_POINTS:
+                        showInfo(I18n.format("error.notEnoughPoints",
+                                costToPlay,
+                                match.getRemainingTurnPoints()
+                        ));
+                        break;
+                    default:
+                        break;
                 }
             }
             ev.setDropCompleted(success);
@@ -910,32 +1034,31 @@ public class Main extends Application {
         });
 
         javafx.event.EventHandler<javafx.scene.input.MouseEvent> summaryClickHandler = ev -> {
-            @SuppressWarnings("unchecked")
-            List<CardData> list = (List<CardData>) dropArea.getUserData();
+            List<MatchState.PlayedCard> list = match.getCreatureStack(targetBetId);
             if (list.isEmpty()) {
                 showInfo(I18n.getString("error.noCardsInStack"));
             } else {
                 StringBuilder sb = new StringBuilder(I18n.getString("info.stackContents"));
                 for (int i = 0; i < list.size(); i++) {
-                    CardData cd = list.get(i);
+                    CardData cd = list.get(i).card();
                     sb.append(i + 1).append(". ").append(cd.getLocalizedName())
                             .append(" (").append(I18n.getString("label.cost").replace(":", "")).append(": ").append(cd.cost).append(")");
 
                     List<String> effectStrings = new ArrayList<>();
-                    int hp = cd.getStatChange("/health");
-                    if (hp != 0) effectStrings.add(String.format(I18n.getString("info.effect.hp"), (hp > 0 ? "+" : ""), hp));
-                    int atk = cd.getStatChange("/attack");
-                    if (atk != 0) effectStrings.add(String.format(I18n.getString("info.effect.atk"), (atk > 0 ? "+" : ""), atk));
-                    int def = cd.getStatChange("/defense");
-                    if (def != 0) effectStrings.add(String.format(I18n.getString("info.effect.def"), (def > 0 ? "+" : ""), def));
-                    int rp = cd.getStatChange("/ratePoints");
-                    if (rp != 0) effectStrings.add(String.format(I18n.getString("info.effect.rp"), (rp > 0 ? "+" : ""), rp));
-
-                    int betDec = cd.getStatChange("/opponent_bets");
-                    if (betDec > 0) effectStrings.add(String.format(I18n.getString("info.effect.betDec"), betDec));
+                    int hp = cd.getStatChange(CompiledEffect.HEALTH);
+                    if (hp != 0) effectStrings.add(I18n.format("info.effect.hp", (hp > 0 ? "+" : ""), hp));
+                    int atk = cd.getStatChange(CompiledEffect.ATTACK);
+                    if (atk != 0) effectStrings.add(I18n.format("info.effect.atk", (atk > 0 ? "+" : ""), atk));
+                    int def = cd.getStatChange(CompiledEffect.DEFENSE);
+                    if (def != 0) effectStrings.add(I18n.format("info.effect.def", (def > 0 ? "+" : ""), def));
+                    int rp = cd.getStatChange(CompiledEffect.RATE_POINTS);
+                    if (rp != 0) effectStrings.add(I18n.format("info.effect.rp", (rp > 0 ? "+" : ""), rp));
+
+                    int betDec = cd.getStatChange(CompiledEffect.OPPONENT_BETS);
+                    if (betDec > 0) effectStrings.add(I18n.format("info.effect.betDec", betDec));
 
                     if (cd.getBetAmount() > 0) {
-                        effectStrings.add(String.format(I18n.getString("info.effect.bet"), cd.getBetAmount()));
+                        effectStrings.add(I18n.format("info.effect.bet", cd.getBetAmount()));
                     }
 
                     if (!effectStrings.isEmpty()) {
@@ -953,140 +1076,214 @@ public class Main extends Application {
         return dropArea;
     }
 
-    private void refreshCreaturePane(VBox creaturePane, CreatureState state) {
-        creaturePane.getChildren().clear();
-
-        Text name = new Text(state.getLocalizedName());
-        name.getStyleClass().add("card-title");
-        name.wrappingWidthProperty().bind(creaturePane.widthProperty().subtract(16));
-
-        String stats;
-        if (state.bonusRatePoints > 0) {
-            stats = String.format("HP: %d/%d | ATK: %d | DEF: %d | RP: %d (+%d)",
-                    state.currentHealth, state.baseHealth,
-                    state.currentAttack, state.currentDefense,
-                    state.currentRatePoints, state.bonusRatePoints);
-        } else {
-            stats = String.format("HP: %d/%d | ATK: %d | DEF: %d | RP: %d",
-                    state.currentHealth, state.baseHealth,
-                    state.currentAttack, state.currentDefense,
-                    state.currentRatePoints);
-        }
-
-        Text statsText = new Text(stats);
-        statsText.getStyleClass().add("card-stats");
+    /**
+     * Отображает сыгранную карту: статы существа, карта или ставка в стопке, рука и шкалы.
+     */
+    private void showPlayedCard(VBox dropArea, VBox targetPane, CardData cd, MatchState.PlayMode playMode) {
+        updateTurnPointsText();
+        refreshCreaturePane(targetPane, (CreatureState) targetPane.getUserData());
+        dropArea.getChildren().add(createPlayedCardNode(cd, playMode, match.currentPlayer));
+        // Баф тоже может менять ставки (dec_bet)
+        updateBetDisplays();
 
-        Text desc = new Text(state.getLocalizedText());
-        desc.getStyleClass().add("card-text");
-        desc.wrappingWidthProperty().bind(creaturePane.widthProperty().subtract(16));
+        updateHandDisplay();
+        updateAllScales();
+    }
 
-        creaturePane.getChildren().addAll(name, statsText, desc);
+    private Node createPlayedCardNode(CardData cd, MatchState.PlayMode playMode, Player player) {
+        if (playMode == MatchState.PlayMode.BUFF) {
+            VBox small = createCardNode(cd);
+            small.setPrefSize(200, 36);
+            small.setMinSize(200, 36);
+            small.setMaxSize(200, 36);
+            return small;
+        }
+        Text betText = new Text(I18n.format("label.betText", cd.getBetAmount()));
+        betText.getStyleClass().add((player == Player.PLAYER_1) ? "bet-text-p1" : "bet-text-p2");
+        return betText;
     }
 
-    private VBox createHandCardNode(CardData data) {
-        VBox box = new VBox(5);
-        box.getStyleClass().add("card");
-        box.setPadding(new Insets(10));
+    /**
+     * Показывает стопку из состояния матча в пустой зоне (после перестройки экрана или загрузки).
+     */
+    private void fillDropZone(VBox dropArea, List<MatchState.PlayedCard> stack) {
+        for (MatchState.PlayedCard played : stack) {
+            dropArea.getChildren().add(createPlayedCardNode(played.card(), played.mode(), played.player()));
+        }
+    }
 
-        Text name = new Text(data.getLocalizedName());
-        name.getStyleClass().add("card-title");
-        name.wrappingWidthProperty().bind(box.widthProperty().subtract(16));
+    private void refreshCreaturePane(VBox creaturePane, CreatureState state) {
+        ((CreatureView) creaturePane.getProperties().get(CreatureView.class)).update(state);
+    }
 
-        VBox buffView = new VBox(5);
-        buffView.setPadding(new Insets(2, 0, 0, 0));
+    /**
+     * Тексты панели существа. Узлы создаются один раз, при обновлении меняется только то, что изменилось.
+     */
+    private static final class CreatureView {
+        private final Text name = new Text();
+        private final Text stats = new Text();
+        private final Text desc = new Text();
+        private CardData shownCard;
+        // HP, базовое HP, ATK, DEF, RP, бонус RP - как показаны сейчас
+        private final int[] shownStats = {Integer.MIN_VALUE, 0, 0, 0, 0, 0};
+
+        CreatureView(VBox pane) {
+            name.getStyleClass().add("card-title");
+            name.wrappingWidthProperty().bind(pane.widthProperty().subtract(12));
+            stats.getStyleClass().add("card-stats");
+            desc.getStyleClass().add("card-text");
+            desc.wrappingWidthProperty().bind(pane.widthProperty().subtract(12));
+            pane.getChildren().addAll(name, stats, desc);
+        }
 
-        FlowPane statsBox = new FlowPane(8, 4);
-        statsBox.setAlignment(Pos.CENTER_LEFT);
-        addStatChangeText(statsBox, "HP", data.getStatChange("/health"), "hp");
-        addStatChangeText(statsBox, "ATK", data.getStatChange("/attack"), "atk");
-        addStatChangeText(statsBox, "DEF", data.getStatChange("/defense"), "def");
-        addStatChangeText(statsBox, "RP", data.getStatChange("/ratePoints"), "rp");
-        addStatChangeText(statsBox, "BET-", data.getStatChange("/opponent_bets"), "bet-dec");
+        void update(CreatureState state) {
+            if (state.baseCard != shownCard) {
+                shownCard = state.baseCard;
+                name.setText(state.getLocalizedName());
+                desc.setText(state.getLocalizedText());
+            }
+            if (shownStats[0] == state.currentHealth && shownStats[1] == state.baseHealth
+                    && shownStats[2] == state.currentAttack && shownStats[3] == state.currentDefense
+                    && shownStats[4] == state.currentRatePoints && shownStats[5] == state.bonusRatePoints) {
+                return;
+            }
+            shownStats[0] = state.currentHealth;
+            shownStats[1] = state.baseHealth;
+            shownStats[2] = state.currentAttack;
+            shownStats[3] = state.currentDefense;
+            shownStats[4] = state.currentRatePoints;
+            shownStats[5] = state.bonusRatePoints;
 
-        if (!statsBox.getChildren().isEmpty()) {
-            buffView.getChildren().add(statsBox);
+            if (state.bonusRatePoints > 0) {
+                stats.setText(STATS_BONUS.format(
+                        state.currentHealth, state.baseHealth,
+                        state.currentAttack, state.currentDefense,
+                        state.currentRatePoints, state.bonusRatePoints));
+            } else {
+                stats.setText(STATS.format(
+                        state.currentHealth, state.baseHealth,
+                        state.currentAttack, state.currentDefense,
+                        state.currentRatePoints));
+            }
         }
+    }
 
-        Text desc = new Text(data.getLocalizedText());
-        desc.getStyleClass().add("card-text");
-        desc.wrappingWidthProperty().bind(box.widthProperty().subtract(16));
+    /**
+     * Узел карты в руке. Узлы живут в пуле по id карты (см. {@link #updateHandDisplay()}),
+     * поэтому сторона "баф/ставка" хранится здесь и сбрасывается при повторном использовании.
+     */
+    private final class HandCardView {
+        final CardData data;
+        // Позиция в руке на экране, обновляется в updateHandDisplay
+        int handIndex;
+        final VBox box = new VBox(5);
+        private final VBox buffView = new VBox(5);
+        private final VBox betView = new VBox(4);
+        private boolean bet = false;
+
+        HandCardView(CardData data) {
+            this.data = data;
+            box.getStyleClass().addAll("card", "hand-card");
+            box.setPadding(new Insets(10));
+            box.setPrefSize(170, 240);
+            box.setMinSize(170, 240);
+            box.setMaxSize(170, 240);
+
+            Text name = new Text(data.getLocalizedName());
+            name.getStyleClass().add("card-title");
+            name.wrappingWidthProperty().bind(box.widthProperty().subtract(16));
+
+            buffView.setPadding(new Insets(2, 0, 0, 0));
+
+            FlowPane statsBox = new FlowPane(8, 4);
+            statsBox.setAlignment(Pos.CENTER_LEFT);
+            addStatChangeText(statsBox, "HP", data.getStatChange(CompiledEffect.HEALTH), "hp");
+            addStatChangeText(statsBox, "ATK", data.getStatChange(CompiledEffect.ATTACK), "atk");
+            addStatChangeText(statsBox, "DEF", data.getStatChange(CompiledEffect.DEFENSE), "def");
+            addStatChangeText(statsBox, "RP", data.getStatChange(CompiledEffect.RATE_POINTS), "rp");
+            addStatChangeText(statsBox, "BET-", data.getStatChange(CompiledEffect.OPPONENT_BETS), "bet-dec");
+
+            if (!statsBox.getChildren().isEmpty()) {
+                buffView.getChildren().add(statsBox);
+            }
 
-        Region buffSpacer = new Region();
-        VBox.setVgrow(buffSpacer, Priority.ALWAYS);
+            Text desc = new Text(data.getLocalizedText());
+            desc.getStyleClass().add("card-text");
+            desc.wrappingWidthProperty().bind(box.widthProperty().subtract(16));
 
-        BorderPane buffFooter = new BorderPane();
-        if (data.cost > 0) {
-            Text costText = new Text(String.format(I18n.getString("label.cost"), data.cost));
-            costText.getStyleClass().add("card-cost");
-            buffFooter.setLeft(costText);
-        }
+            Region buffSpacer = new Region();
+            VBox.setVgrow(buffSpacer, Priority.ALWAYS);
 
-        if (data.getBetAmount() > 0) {
-            Text betHint = new Text("$" + data.getBetAmount());
-            betHint.getStyleClass().add("card-bet-hint");
-            buffFooter.setRight(betHint);
-        }
+            BorderPane buffFooter = new BorderPane();
+            if (data.cost > 0) {
+                Text costText = new Text(I18n.format("label.cost", data.cost));
+                costText.getStyleClass().add("card-cost");
+                buffFooter.setLeft(costText);
+            }
 
-        buffView.getChildren().addAll(desc, buffSpacer, buffFooter);
-        VBox.setVgrow(buffView, Priority.ALWAYS);
+            if (data.getBetAmount() > 0) {
+                Text betHint = new Text("$" + data.getBetAmount());
+                betHint.getStyleClass().add("card-bet-hint");
+                buffFooter.setRight(betHint);
+            }
 
-        VBox betView = new VBox(4);
-        betView.setAlignment(Pos.CENTER);
-        betView.setPadding(new Insets(10, 0, 0, 0));
+            buffView.getChildren().addAll(desc, buffSpacer, buffFooter);
+            VBox.setVgrow(buffView, Priority.ALWAYS);
 
-        Region betSpacer = new Region();
-        VBox.setVgrow(betSpacer, Priority.ALWAYS);
+            betView.setAlignment(Pos.CENTER);
+            betView.setPadding(new Insets(10, 0, 0, 0));
 
-        Text betLabel = new Text(I18n.getString("label.bet"));
-        betLabel.getStyleClass().add("card-cost");
-        Text betAmountText = new Text(String.format(I18n.getString("label.betAmount"), data.getBetAmount()));
-        betAmountText.getStyleClass().add("bet-amount-text");
+            Region betSpacer = new Region();
+            VBox.setVgrow(betSpacer, Priority.ALWAYS);
 
-        Region betSpacer2 = new Region();
-        VBox.setVgrow(betSpacer2, Priority.ALWAYS);
+            Text betLabel = new Text(I18n.getString("label.bet"));
+            betLabel.getStyleClass().add("card-cost");
+            Text betAmountText = new Text(I18n.format("label.betAmount", data.getBetAmount()));
+            betAmountText.getStyleClass().add("bet-amount-text");
 
-        betView.getChildren().addAll(betSpacer, betLabel, betAmountText, betSpacer2);
+            Region betSpacer2 = new Region();
+            VBox.setVgrow(betSpacer2, Priority.ALWAYS);
 
-        betView.setVisible(false);
-        betView.setManaged(false);
+            betView.getChildren().addAll(betSpacer, betLabel, betAmountText, betSpacer2);
 
-        StackPane contentStack = new StackPane(buffView, betView);
-        VBox.setVgrow(contentStack, Priority.ALWAYS);
+            StackPane contentStack = new StackPane(buffView, betView);
+            VBox.setVgrow(contentStack, Priority.ALWAYS);
 
-        box.getChildren().addAll(name, contentStack);
+            box.getChildren().addAll(name, contentStack);
+            setBet(false);
 
-        box.getProperties().put("isBet", false);
+            if (data.getBetAmount() > 0) {
+                box.setOnMouseClicked(ev -> setBet(!bet));
+            } else {
+                box.setOnMouseClicked(ev -> {
+                    showInfo(I18n.getString("info.noBet"));
+                });
+            }
 
-        if (data.getBetAmount() > 0) {
-            box.setOnMouseClicked(ev -> {
-                boolean isBet = (boolean) box.getProperties().get("isBet");
-                box.getProperties().put("isBet", !isBet);
-                buffView.setVisible(isBet);
-                buffView.setManaged(isBet);
-                betView.setVisible(!isBet);
-                betView.setManaged(!isBet);
-            });
-        } else {
-            box.setOnMouseClicked(ev -> {
-                showInfo(I18n.getString("info.noBet"));
+            box.setOnDragDetected(ev -> {
+                MatchState.PlayMode mode = bet ? MatchState.PlayMode.BET : MatchState.PlayMode.BUFF;
+
+                Dragboard db = box.startDragAndDrop(TransferMode.MOVE);
+                ClipboardContent content = new ClipboardContent();
+                content.put(CARD_DRAG, new CardDrag(handIndex, data.index, mode));
+                db.setContent(content);
+                ev.consume();
             });
         }
 
-        box.setOnDragDetected(ev -> {
-            boolean isBet = (data.getBetAmount() > 0) ? (boolean) box.getProperties().get("isBet") : false;
-            String mode = isBet ? "bet" : "buff";
-
-            Dragboard db = box.startDragAndDrop(TransferMode.MOVE);
-            ClipboardContent content = new ClipboardContent();
-            content.putString(data.id + ";" + mode);
-            db.setContent(content);
-            ev.consume();
-        });
-
-        return box;
+        void setBet(boolean bet) {
+            this.bet = bet;
+            buffView.setVisible(!bet);
+            buffView.setManaged(!bet);
+            betView.setVisible(bet);
+            betView.setManaged(bet);
+        }
     }
 
-    private VBox createCardNode(CardData data, boolean large, CreatureState state) {
+    /**
+     * Маленькая карта (название) для стопки в зоне существа.
+     */
+    private VBox createCardNode(CardData data) {
         VBox box = new VBox(4);
         box.getStyleClass().add("card");
         box.setPadding(new Insets(6));
@@ -1094,31 +1291,7 @@ public class Main extends Application {
         Text name = new Text(data.getLocalizedName());
         name.getStyleClass().add("card-title");
         name.wrappingWidthProperty().bind(box.widthProperty().subtract(12));
-
-        Text desc = new Text(data.getLocalizedText());
-        desc.getStyleClass().add("card-text");
-        desc.wrappingWidthProperty().bind(box.widthProperty().subtract(12));
-
-        if (large && state != null) {
-            String stats;
-            if (state.bonusRatePoints > 0) {
-                stats = String.format("HP: %d/%d | ATK: %d | DEF: %d | RP: %d (+%d)",
-                        state.currentHealth, state.baseHealth,
-                        state.currentAttack, state.currentDefense,
-                        state.currentRatePoints, state.bonusRatePoints);
-            } else {
-                stats = String.format("HP: %d/%d | ATK: %d | DEF: %d | RP: %d",
-                        state.currentHealth, state.baseHealth,
-                        state.currentAttack, state.currentDefense,
-                        state.currentRatePoints);
-            }
-
-            Text statsText = new Text(stats);
-            statsText.getStyleClass().add("card-stats");
-            box.getChildren().addAll(name, statsText, desc);
-        } else {
-            box.getChildren().addAll(name);
-        }
+        box.getChildren().add(name);
 
         box.setUserData(data);
         return box;
@@ -1200,13 +1373,18 @@ public class Main extends Application {
 
         HBox row = createRewardRow();
 
+        Text winChance = new Text();
+        winChance.getStyleClass().add("bet-scale-title");
+
         if (betRewardScaleC1Row == null) {
             betRewardScaleC1Row = row;
+            winChanceC1Text = winChance;
         } else {
             betRewardScaleC2Row = row;
+            winChanceC2Text = winChance;
         }
 
-        scaleVBox.getChildren().addAll(title, row);
+        scaleVBox.getChildren().addAll(title, row, winChance);
         return scaleVBox;
     }
 
@@ -1226,10 +1404,63 @@ public class Main extends Application {
     }
 
     private void updateBetRewardScales() {
-        if (creature1State == null || creature2State == null) return;
-        int rpDiff = creature1State.getTotalRP() - creature2State.getTotalRP();
+        if (match.creature1State == null || match.creature2State == null) return;
+        int rpDiff = match.creature1State.getTotalRP() - match.creature2State.getTotalRP();
         updateRewardRow(betRewardScaleC1Row, rpDiff > 0, Math.abs(rpDiff));
         updateRewardRow(betRewardScaleC2Row, rpDiff < 0, Math.abs(rpDiff));
+        updateWinChances();
+    }
+
+    /**
+     * Пересчитывает реальные шансы на победу в фоне, чтобы не тормозить FX-поток.
+     * Устаревшие результаты (если статы успели поменяться) отбрасываются.
+     */
+    private void updateWinChances() {
+        if (winChanceC1Text == null || config.ODDS_SIMULATION_BATTLES <= 0) return;
+        if (winEstimator == null) {
+            winEstimator = new WinProbabilityEstimator(config, catalog.damageTable);
+        }
+
+        int requestId = ++oddsRequestId;
+        CreatureState c1 = new CreatureState(match.creature1State);
+        CreatureState c2 = new CreatureState(match.creature2State);
+        long battles = config.ODDS_SIMULATION_BATTLES;
+        long pairHash = Zobrist.creature(1, c1) ^ Zobrist.creature(2, c2);
+        // Фон работает со снимком: каталог может смениться, пока идет расчет
+        GameConfig oddsConfig = config;
+        DamageTable damageTable = catalog.damageTable;
+        TranspositionTable cache = oddsCache;
+        WinProbabilityEstimator estimator = winEstimator;
+
+        long cached = cache.get(pairHash, -1L);
+        if (cached != -1L) {
+            showWinChances(WinProbabilityEstimator.Estimate.exact(Double.longBitsToDouble(cached)));
+            return;
+        }
+
+        CompletableFuture
+                .supplyAsync(() -> {
+                    try {
+                        // Точный расчет быстрее и без шума; Монте-Карло - запасной вариант
+                        double p = new BattleSolver(oddsConfig, damageTable).solve(c1, c2).creature1WinProbability();
+                        cache.put(pairHash, Double.doubleToRawLongBits(p));
+                        return WinProbabilityEstimator.Estimate.exact(p);
+                    } catch (IllegalStateException e) {
+                        return estimator.estimate(c1, c2, battles);
+                    }
+                })
+                .thenAccept(estimate -> Platform.runLater(() -> {
+                    if (requestId != oddsRequestId) return;
+                    showWinChances(estimate);
+                }));
+    }
+
+    private void showWinChances(WinProbabilityEstimator.Estimate estimate) {
+        double margin = estimate.margin() * 100.0;
+        winChanceC1Text.setText(I18n.format("label.winChance",
+                estimate.winProbability() * 100.0, margin));
+        winChanceC2Text.setText(I18n.format("label.winChance",
+                estimate.creature2WinProbability() * 100.0, margin));
     }
 
     private void updateRewardRow(HBox row, boolean isFavorite, int diff) {
@@ -1256,25 +1487,14 @@ public class Main extends Application {
 
     private void updateAllScales() {
         if (attackScale1 != null) {
-            updateAttackScale(attackScale1, creature1State.currentAttack);
-            updateAttackScale(attackScale2, creature2State.currentAttack);
-            updateDefenseScale(defenseScale1, creature1State.currentDefense);
-            updateDefenseScale(defenseScale2, creature2State.currentDefense);
+            updateAttackScale(attackScale1, match.creature1State.currentAttack);
+            updateAttackScale(attackScale2, match.creature2State.currentAttack);
+            updateDefenseScale(defenseScale1, match.creature1State.currentDefense);
+            updateDefenseScale(defenseScale2, match.creature2State.currentDefense);
             updateBetRewardScales();
         }
     }
 
-    private void removeCardFromHandById(String cardId) {
-        List<CardData> currentHand = (currentPlayer == Player.PLAYER_1) ? player1Hand : player2Hand;
-
-        for (int i = 0; i < currentHand.size(); i++) {
-            if (currentHand.get(i).id.equals(cardId)) {
-                currentHand.remove(i);
-                return;
-            }
-        }
-    }
-
     private void showInfo(String text) {
         Alert a = new Alert(Alert.AlertType.INFORMATION);
         a.setHeaderText(null);
@@ -1295,34 +1515,16 @@ public class Main extends Application {
 
     private void loadDataWithJackson() throws IOException, URISyntaxException {
         createDefaultDataFileIfMissing(CONFIG_FILE);
-        Path configPath = externalDataPath.resolve(CONFIG_FILE);
-
-        ObjectMapper mapper = new ObjectMapper()
-                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-
-        config = mapper.readValue(Files.newInputStream(configPath), GameConfig.class);
-
         createDefaultDataFileIfMissing(CREATURES_FILE);
         createDefaultDataFileIfMissing(INFLUENCE_FILE);
 
-        Path creaturesPath = externalDataPath.resolve(CREATURES_FILE);
-        Path influencePath = externalDataPath.resolve(INFLUENCE_FILE);
-
-        List<CardData> creatureList = mapper.readValue(
-                Files.newInputStream(creaturesPath),
-                new TypeReference<>() {}
-        );
-
-        List<CardData> influenceList = mapper.readValue(
-                Files.newInputStream(influencePath),
-                new TypeReference<>() {}
-        );
-
-        creatureTemplates.addAll(creatureList);
-        influenceCardTemplates.addAll(influenceList);
-
-        for (CardData c : creatureList) allCards.put(c.id, c);
-        for (CardData c : influenceList) allCards.put(c.id, c);
+        catalog = Catalog.loadCached(
+                externalDataPath.resolve(CONFIG_FILE),
+                externalDataPath.resolve(CREATURES_FILE),
+                externalDataPath.resolve(INFLUENCE_FILE),
+                externalDataPath.resolve(Catalog.SNAPSHOT_FILE));
+        config = catalog.config;
+        match = new MatchState(catalog);
     }
 
     private void createDefaultDataFileIfMissing(String fileName) throws IOException {
@@ -1527,15 +1729,17 @@ public class Main extends Application {
               -fx-font-size: 13px;
               -fx-line-spacing: 5px;
             }
-            .battle-log-scroll {
+            .battle-log-list {
                 -fx-background-color: transparent;
                 -fx-background-insets: 0;
                 -fx-padding: 0;
             }
-            .battle-log-text {
+            .battle-log-cell, .battle-log-cell:filled:selected, .battle-log-cell:filled:hover {
+                -fx-background-color: transparent;
+                -fx-alignment: center;
                 -fx-font-size: 16px;
                 -fx-font-weight: bold;
-                -fx-fill: #222222;
+                -fx-text-fill: #222222;
             }
             .hand-scroll-pane {
                 -fx-background-color: transparent;
@@ -1563,12 +1767,24 @@ public class Main extends Application {
         public double REWARD_GREEN_MULT = 2.0;
         public double REWARD_RED_MULT = 3.0;
         public int BET_AMOUNT_PER_RP = 300;
+        public int ODDS_SIMULATION_BATTLES = 200000;
+        // Бой сразу показывается итогом, без пошагового повтора
+        public boolean BATTLE_INSTANT = false;
+        // Ходы Игрока 2 делает ИИ (MctsPolicy), на каждый ход думает AI_THINK_TIME_MS
+        public boolean AI_PLAYER_2 = false;
+        public int AI_THINK_TIME_MS = 200;
     }
 
     public static class CardData {
         public String id;
+        // Плотный индекс: позиция в creatures или influenceCards своего каталога (назначает Catalog)
+        @JsonIgnore
+        public int index = -1;
+        // Словари из JSON; после сборки каталога тексты живут в localized, а словари обнуляются
         public Map<String, String> name;
         public Map<String, String> text;
+        @JsonIgnore
+        CardTexts localized;
         public int cost;
         public Integer betAmount;
         public int health;
@@ -1597,25 +1813,135 @@ public class Main extends Application {
             return (count == null || count <= 0) ? 1 : count;
         }
 
-        public int getStatChange(String path) {
-            if (effects == null) {
-                return 0;
+        // --- Разобранные при загрузке эффекты (см. compile()) ---
+        private CompiledEffect[] compiledEffects;
+        // [CompiledEffect.HEALTH..OPPONENT_BETS] -> суммарное изменение стата картой
+        private int[] statChanges;
+        // Пороги dynamicStats по возрастанию и накопленные бонусы:
+        // при k пройденных порогах бонус = dynamicAttack[k] и т.д. (k = 0 - без бонуса)
+        private int[] dynamicThresholds;
+        int[] dynamicAttack;
+        int[] dynamicDefense;
+        int[] dynamicRatePoints;
+
+        /**
+         * Разбирает эффекты и dynamicStats в массивы. Вызывается один раз при загрузке карт,
+         * ошибки в данных сообщаются здесь, а не при розыгрыше.
+         */
+        public void compile() {
+            CompiledEffect[] compiled = CompiledEffect.compileAll(effects, id);
+
+            int[] changes = new int[CompiledEffect.STAT_COUNT];
+            if (effects != null) {
+                for (Effect e : effects) {
+                    if (e.path != null && e.value != null) {
+                        int stat = CompiledEffect.statIndex(e.path);
+                        if (stat != CompiledEffect.NO_STAT) {
+                            changes[stat] += e.value;
+                        }
+                    }
+                }
+            }
+
+            List<DynamicStatConfig> levels = new ArrayList<>();
+            if (dynamicStats != null) {
+                for (DynamicStatConfig cfg : dynamicStats) {
+                    if (cfg != null && cfg.effects != null) {
+                        levels.add(cfg);
+                    }
+                }
             }
-            int total = 0;
-            for (Effect e : effects) {
-                if (path.equals(e.path) && e.value != null) {
-                    total += e.value;
+            levels.sort(Comparator.comparingInt(cfg -> cfg.thresholdHp));
+
+            int n = levels.size();
+            int[] thresholds = new int[n];
+            int[] attack = new int[n + 1];
+            int[] defense = new int[n + 1];
+            int[] ratePoints = new int[n + 1];
+            for (int i = 0; i < n; i++) {
+                DynamicStatConfig cfg = levels.get(i);
+                thresholds[i] = cfg.thresholdHp;
+                attack[i + 1] = attack[i];
+                defense[i + 1] = defense[i];
+                ratePoints[i + 1] = ratePoints[i];
+                for (CompiledEffect e : CompiledEffect.compileAll(cfg.effects, id)) {
+                    if (e.op != CompiledEffect.Op.INC) {
+                        continue;
+                    }
+                    switch (e.stat) {
+                        case CompiledEffect.ATTACK: attack[i + 1] += e.value; break;
+                        case CompiledEffect.DEFENSE: defense[i + 1] += e.value; break;
+                        case CompiledEffect.RATE_POINTS: ratePoints[i + 1] += e.value; break;
+                        default: break;
+                    }
                 }
             }
-            return total;
+
+            this.statChanges = changes;
+            this.dynamicThresholds = thresholds;
+            this.dynamicAttack = attack;
+            this.dynamicDefense = defense;
+            this.dynamicRatePoints = ratePoints;
+            this.compiledEffects = compiled;
+        }
+
+        private void ensureCompiled() {
+            // Карты, созданные в обход loadDataWithJackson (бенчмарки, симуляции), разбираются при первом обращении
+            if (compiledEffects == null) {
+                compile();
+            }
+        }
+
+        @JsonIgnore
+        public CompiledEffect[] getCompiledEffects() {
+            ensureCompiled();
+            return compiledEffects;
+        }
+
+        /**
+         * @param stat индекс стата из {@link CompiledEffect}, например {@link CompiledEffect#HEALTH}
+         */
+        public int getStatChange(int stat) {
+            ensureCompiled();
+            return statChanges[stat];
+        }
+
+        /**
+         * Сколько порогов dynamicStats пройдено при данном HP.
+         */
+        public int getDynamicLevel(int currentHealth) {
+            ensureCompiled();
+            int level = 0;
+            while (level < dynamicThresholds.length && currentHealth >= dynamicThresholds[level]) {
+                level++;
+            }
+            return level;
+        }
+
+        public boolean hasDynamicStats() {
+            ensureCompiled();
+            return dynamicThresholds.length > 0;
         }
 
         public String getLocalizedName() {
-            return name.getOrDefault(I18n.getLang(), name.get("en"));
+            if (localized != null) return localized.name(index);
+            return name.getOrDefault(I18n.getLang(), name.get(I18n.FALLBACK_LANGUAGE));
         }
 
         public String getLocalizedText() {
-            return text.getOrDefault(I18n.getLang(), text.get("en"));
+            if (localized != null) return localized.text(index);
+            return text.getOrDefault(I18n.getLang(), text.get(I18n.FALLBACK_LANGUAGE));
+        }
+
+        /**
+         * Имена по языкам - из словаря или, если карта уже в каталоге, из его таблиц.
+         */
+        Map<String, String> nameMap() {
+            return (localized != null) ? localized.nameMap(index) : name;
+        }
+
+        Map<String, String> textMap() {
+            return (localized != null) ? localized.textMap(index) : text;
         }
 
         public int getBetAmount() {
@@ -1637,8 +1963,6 @@ public class Main extends Application {
 
     public static class CreatureState {
         public CardData baseCard;
-        public String name;
-        public String text;
         public int baseHealth;
         public int currentHealth;
         public int baseAttack;
@@ -1660,15 +1984,13 @@ public class Main extends Application {
         public List<DynamicStatConfig> dynamicStats;
         public boolean isStunned = false;
 
-        // Для отката динамических статов
-        private int dynamicBonusAttack = 0;
-        private int dynamicBonusDefense = 0;
-        private int dynamicBonusRP = 0;
+        // Для отката динамических статов (доступны в пакете для CreaturePool)
+        int dynamicBonusAttack = 0;
+        int dynamicBonusDefense = 0;
+        int dynamicBonusRP = 0;
 
         public CreatureState(CardData baseCard) {
             this.baseCard = baseCard;
-            this.name = baseCard.getLocalizedName();
-            this.text = baseCard.getLocalizedText();
             this.baseHealth = baseCard.health;
             this.currentHealth = baseCard.health;
             this.baseAttack = baseCard.attack;
@@ -1689,8 +2011,36 @@ public class Main extends Application {
             this.dynamicStats = baseCard.dynamicStats;
         }
 
+        /**
+         * Полная копия состояния (например, для симуляции боя без порчи оригинала).
+         */
+        public CreatureState(CreatureState other) {
+            this.baseCard = other.baseCard;
+            this.baseHealth = other.baseHealth;
+            this.currentHealth = other.currentHealth;
+            this.baseAttack = other.baseAttack;
+            this.currentAttack = other.currentAttack;
+            this.baseDefense = other.baseDefense;
+            this.currentDefense = other.currentDefense;
+            this.baseRatePoints = other.baseRatePoints;
+            this.currentRatePoints = other.currentRatePoints;
+            this.bonusRatePoints = other.bonusRatePoints;
+            this.bettingBlockedUntilRound = other.bettingBlockedUntilRound;
+            this.rpLimit = other.rpLimit;
+            this.magicBarrier = other.magicBarrier;
+            this.vampirism = other.vampirism;
+            this.missChance = other.missChance;
+            this.stunChance = other.stunChance;
+            this.thief = other.thief;
+            this.dynamicStats = other.dynamicStats;
+            this.isStunned = other.isStunned;
+            this.dynamicBonusAttack = other.dynamicBonusAttack;
+            this.dynamicBonusDefense = other.dynamicBonusDefense;
+            this.dynamicBonusRP = other.dynamicBonusRP;
+        }
+
         public void recalculateDynamicStats() {
-            if (dynamicStats == null || dynamicStats.isEmpty()) return;
+            if (!baseCard.hasDynamicStats()) return;
 
             // 1. Откат старых бонусов
             this.currentAttack -= dynamicBonusAttack;
@@ -1701,20 +2051,11 @@ public class Main extends Application {
             dynamicBonusDefense = 0;
             dynamicBonusRP = 0;
 
-            // 2. Расчет новых бонусов на основе текущего HP
-            for (DynamicStatConfig cfg : dynamicStats) {
-                if (this.currentHealth >= cfg.thresholdHp && cfg.effects != null) {
-                    for (Effect e : cfg.effects) {
-                        if ("inc".equals(e.op) && e.value != null) {
-                            switch (e.path) {
-                                case "/attack": dynamicBonusAttack += e.value; break;
-                                case "/defense": dynamicBonusDefense += e.value; break;
-                                case "/ratePoints": dynamicBonusRP += e.value; break;
-                            }
-                        }
-                    }
-                }
-            }
+            // 2. Расчет новых бонусов на основе текущего HP (пороги отсортированы и просуммированы при загрузке)
+            int level = baseCard.getDynamicLevel(this.currentHealth);
+            dynamicBonusAttack = baseCard.dynamicAttack[level];
+            dynamicBonusDefense = baseCard.dynamicDefense[level];
+            dynamicBonusRP = baseCard.dynamicRatePoints[level];
 
             // 3. Применение
             this.currentAttack = Math.max(1, this.currentAttack + dynamicBonusAttack);
@@ -1725,11 +2066,12 @@ public class Main extends Application {
             this.currentRatePoints = Math.max(1, newRP);
         }
 
+        // Тексты не копируются в состояние: на текущем языке их отдает карта
         public String getLocalizedName() {
-            return this.name;
+            return baseCard.getLocalizedName();
         }
         public String getLocalizedText() {
-            return this.text;
+            return baseCard.getLocalizedText();
         }
         public int getTotalRP() {
             return currentRatePoints + bonusRatePoints;
@@ -0,0 +1,76 @@
+package yermakov.oleksii;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Автосохранение матча. Снимок ({@link MatchSnapshot#toBytes}) снимается в потоке вызывающего - это
+ * доли миллисекунды и гарантирует согласованное состояние, - а файл пишется в своем потоке-демоне.
+ * Если запись не успевает, промежуточные снимки пропускаются: на диск попадает последний.
+ */
+public final class MatchAutosave implements AutoCloseable {
+
+    private final Path path;
+    private final AtomicReference<byte[]> pending = new AtomicReference<>();
+    private final ExecutorService writer =
+            Executors.newSingleThreadExecutor(Thread.ofPlatform().daemon().name("autosave").factory());
+
+    public MatchAutosave(Path path) {
+        this.path = path;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public void save(MatchState state) {
+        if (pending.getAndSet(MatchSnapshot.toBytes(state)) == null) {
+            writer.execute(this::flush);
+        }
+    }
+
+    /**
+     * Удаляет сохранение (матч закончен, продолжать нечего).
+     */
+    public void discard() {
+        pending.set(null);
+        writer.execute(() -> {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.err.println("Не удалось удалить сохранение матча: " + e);
+            }
+        });
+    }
+
+    private void flush() {
+        byte[] snapshot = pending.getAndSet(null);
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            MatchSnapshot.save(path, snapshot);
+        } catch (IOException e) {
+            // Игра продолжается, просто без свежего сохранения
+            System.err.println("Не удалось сохранить матч: " + e);
+        }
+    }
+
+    /**
+     * Дописывает последний снимок и останавливает поток.
+     */
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
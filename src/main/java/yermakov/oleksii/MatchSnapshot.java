@@ -0,0 +1,251 @@
+package yermakov.oleksii;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Компактный бинарный снимок {@link MatchState}: существа, руки, состав и порядок колоды, ставки,
+ * раунд/бой/очки и стопки у существ. Нужен для автосохранения и для симуляций - снимок в byte[]
+ * можно держать сколько угодно раз и развернуть в новое состояние ({@link #fromBytes}).
+ * <p>
+ * Числа пишутся varint (знаковые - zigzag), seed - 8 байт. Карты влияния записываются номером в таблице id
+ * в начале снимка, существа - по id, так что снимок переживает перестановку карт в JSON; карт, которых
+ * в каталоге больше нет, после загрузки в руках и колоде нет (как в {@link MatchState#withCatalog}).
+ * Статы существ - те же поля, что в {@link CreaturePool}. При добавлении поля в состояние его нужно
+ * дописать в write/read и поднять {@link #VERSION}: снимок другой версии не читается.
+ * <p>
+ * Генератор раздачи не сохраняется: после раздачи правила его не используют, порядок будущих карт
+ * задает seed колоды, а бой - battleSeed. Поэтому загруженный матч продолжается так же, как шел бы без сохранения.
+ */
+public final class MatchSnapshot {
+
+    private static final int MAGIC = 0x44444D53; // "DDMS"
+    private static final int VERSION = 1;
+
+    private MatchSnapshot() {
+    }
+
+    public static byte[] toBytes(MatchState state) {
+        Varints.Output out = new Varints.Output();
+        out.writeInt(MAGIC);
+        out.writeVarint(VERSION);
+
+        List<Main.CardData> table = state.getCatalog().influenceCards;
+        Map<String, Integer> positions = new HashMap<>();
+        out.writeVarint(table.size());
+        for (int i = 0; i < table.size(); i++) {
+            out.writeString(table.get(i).id);
+            positions.put(table.get(i).id, i);
+        }
+
+        out.writeLong(state.gameSeed);
+        out.writeLong(state.battleSeed);
+        out.writeVarint((state.currentPlayer != null) ? state.currentPlayer.ordinal() + 1 : 0);
+        out.writeSigned(state.currentTurnPointsUsed);
+        // Ставки по существам, внутри - по игрокам
+        BetLedger bets = state.bets;
+        for (int c = 0; c < bets.creatures(); c++) {
+            for (int p = 0; p < bets.players(); p++) {
+                out.writeSigned(bets.get(p, c));
+            }
+        }
+        out.writeSigned(state.player1TotalScore);
+        out.writeSigned(state.player2TotalScore);
+        out.writeSigned(state.currentRound);
+        out.writeSigned(state.currentBattle);
+        out.writeVarint(state.isDeckEmpty() ? 1 : 0);
+
+        writeCreature(out, state.creature1State);
+        writeCreature(out, state.creature2State);
+        writeHand(out, state.player1Hand);
+        writeHand(out, state.player2Hand);
+
+        CountedDeck deck = state.influenceDeck;
+        out.writeLong(deck.seed());
+        out.writeVarlong(deck.drawn());
+        for (int i = 0; i < table.size(); i++) {
+            out.writeVarint((i < deck.templateCount()) ? deck.remaining(i) : 0);
+        }
+
+        writeStack(out, state.creature1Stack, positions);
+        writeStack(out, state.creature2Stack, positions);
+        return out.toByteArray();
+    }
+
+    /**
+     * Матч из снимка поверх catalog.
+     * @throws IOException если это не снимок матча, снимок другой версии, обрезан или ссылается на существо,
+     *                     которого нет в каталоге
+     */
+    public static MatchState fromBytes(Catalog catalog, byte[] data) throws IOException {
+        try {
+            return read(catalog, ByteBuffer.wrap(data));
+        } catch (RuntimeException e) {
+            // Обрезанный буфер, номер карты вне таблицы и т.п.
+            throw new IOException("Снимок матча поврежден", e);
+        }
+    }
+
+    /**
+     * Пишет снимок во временный файл и переименовывает его, так что на диске всегда целый снимок.
+     */
+    public static void save(Path path, byte[] snapshot) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(tmp, snapshot);
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public static MatchState load(Path path, Catalog catalog) throws IOException {
+        return fromBytes(catalog, Files.readAllBytes(path));
+    }
+
+    // --- Запись ---
+
+    private static void writeCreature(Varints.Output out, Main.CreatureState state) {
+        if (state == null) {
+            out.writeVarint(0);
+            return;
+        }
+        out.writeVarint(1);
+        out.writeString(state.baseCard.id);
+        CreaturePool pool = new CreaturePool(1);
+        int index = pool.add(state);
+        for (int lane = CreaturePool.TEMPLATE + 1; lane < CreaturePool.LANE_COUNT; lane++) {
+            out.writeSigned(pool.get(index, lane));
+        }
+    }
+
+    private static void writeHand(Varints.Output out, Hand hand) {
+        out.writeVarint(hand.size());
+        for (int i = 0; i < hand.size(); i++) {
+            out.writeVarint(hand.get(i));
+        }
+    }
+
+    private static void writeStack(Varints.Output out, List<MatchState.PlayedCard> stack, Map<String, Integer> positions) {
+        out.writeVarint(stack.size());
+        for (MatchState.PlayedCard played : stack) {
+            // Карта из прежнего каталога (после перезагрузки данных) в таблицу не попала - пишется id
+            Integer position = positions.get(played.card().id);
+            if (position != null) {
+                out.writeVarint(position + 1);
+            } else {
+                out.writeVarint(0);
+                out.writeString(played.card().id);
+            }
+            out.writeVarint(played.mode().ordinal() | (played.player().ordinal() << 1));
+        }
+    }
+
+    // --- Чтение ---
+
+    private static MatchState read(Catalog catalog, ByteBuffer in) throws IOException {
+        if (in.remaining() < 4 || in.getInt() != MAGIC) {
+            throw new IOException("Это не снимок матча");
+        }
+        int version = Varints.readVarint(in);
+        if (version != VERSION) {
+            throw new IOException("Снимок матча версии " + version + ", ожидалась " + VERSION);
+        }
+
+        // Номер в таблице снимка -> индекс карты в catalog (-1, если карты нет)
+        int tableSize = Varints.readVarint(in);
+        int[] remap = new int[tableSize];
+        Main.CardData[] tableCards = new Main.CardData[tableSize];
+        for (int i = 0; i < tableSize; i++) {
+            tableCards[i] = catalog.card(Varints.readString(in));
+            remap[i] = (tableCards[i] != null) ? catalog.influenceIndexOf(tableCards[i]) : -1;
+        }
+
+        MatchState state = new MatchState(catalog);
+        state.gameSeed = in.getLong();
+        state.battleSeed = in.getLong();
+        int player = Varints.readVarint(in);
+        state.currentPlayer = (player > 0) ? Main.Player.values()[player - 1] : null;
+        state.currentTurnPointsUsed = Varints.readSigned(in);
+        BetLedger bets = state.bets;
+        for (int c = 0; c < bets.creatures(); c++) {
+            for (int p = 0; p < bets.players(); p++) {
+                bets.set(p, c, Varints.readSigned(in));
+            }
+        }
+        state.player1TotalScore = Varints.readSigned(in);
+        state.player2TotalScore = Varints.readSigned(in);
+        state.currentRound = Varints.readSigned(in);
+        state.currentBattle = Varints.readSigned(in);
+        boolean deckEmpty = Varints.readVarint(in) != 0;
+
+        state.creature1State = readCreature(in, catalog);
+        state.creature2State = readCreature(in, catalog);
+        readHand(in, state.player1Hand, remap);
+        readHand(in, state.player2Hand, remap);
+
+        long deckSeed = in.getLong();
+        long drawn = Varints.readVarlong(in);
+        int[] counts = new int[catalog.influenceCards.size()];
+        for (int i = 0; i < tableSize; i++) {
+            int count = Varints.readVarint(in);
+            if (remap[i] >= 0) {
+                counts[remap[i]] += count;
+            }
+        }
+        state.influenceDeck.restore(catalog, counts, deckSeed, drawn);
+
+        readStack(in, state.creature1Stack, tableCards, catalog);
+        readStack(in, state.creature2Stack, tableCards, catalog);
+
+        state.restored(deckEmpty);
+        return state;
+    }
+
+    private static Main.CreatureState readCreature(ByteBuffer in, Catalog catalog) throws IOException {
+        if (Varints.readVarint(in) == 0) {
+            return null;
+        }
+        String id = Varints.readString(in);
+        Main.CardData card = catalog.card(id);
+        if (card == null) {
+            throw new IOException("В каталоге нет существа " + id);
+        }
+        CreaturePool pool = new CreaturePool(1);
+        int index = pool.add(card);
+        for (int lane = CreaturePool.TEMPLATE + 1; lane < CreaturePool.LANE_COUNT; lane++) {
+            pool.set(index, lane, Varints.readSigned(in));
+        }
+        return pool.toState(index);
+    }
+
+    private static void readHand(ByteBuffer in, Hand hand, int[] remap) {
+        int size = Varints.readVarint(in);
+        for (int i = 0; i < size; i++) {
+            int card = remap[Varints.readVarint(in)];
+            if (card >= 0) {
+                hand.add(card);
+            }
+        }
+    }
+
+    private static void readStack(ByteBuffer in, List<MatchState.PlayedCard> stack, Main.CardData[] tableCards,
+                                  Catalog catalog) {
+        int size = Varints.readVarint(in);
+        for (int i = 0; i < size; i++) {
+            int position = Varints.readVarint(in);
+            Main.CardData card = (position > 0) ? tableCards[position - 1] : catalog.card(Varints.readString(in));
+            int bits = Varints.readVarint(in);
+            if (card != null) {
+                stack.add(new MatchState.PlayedCard(card, MatchState.PlayMode.values()[bits & 1],
+                        Main.Player.values()[(bits >> 1) & 1]));
+            }
+        }
+    }
+}
@@ -0,0 +1,597 @@
+package yermakov.oleksii;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+/**
+ * Состояние матча без UI: существа, руки, колода, ставки, раунды, очки и стопки карт у существ.
+ * Правила те же, что раньше жили в обработчиках Main (startGame, endTurn, drop-зоны, урна,
+ * processBattleResults); Main теперь только отображает это состояние, а {@link GameSimulator}
+ * прогоняет матчи целиком без JavaFX.
+ * <p>
+ * Состояние ведет 64-битный хеш Зобриста ({@link #hash()}), который методы этого класса обновляют за O(1)
+ * на ход: одна и та же позиция, полученная разным порядком карт, дает один хеш. Если публичные поля
+ * меняются напрямую (например, в бою), хеш нужно пересчитать через {@link #rehash()}.
+ */
+public class MatchState {
+
+    public enum PlayMode { BUFF, BET }
+
+    public enum PlayResult { OK, NOT_ENOUGH_POINTS, BETTING_BLOCKED, NO_BET, NO_CARD }
+
+    /**
+     * Ход игрока: сыграть карту из руки (баф или ставка) на существо 1/2, сбросить карту в урну или закончить ход.
+     */
+    public record Action(Type type, int handIndex, PlayMode mode, int target) {
+
+        public enum Type { PLAY, DISCARD, END_TURN }
+
+        private static final Action END_TURN = new Action(Type.END_TURN, -1, null, 0);
+
+        public static Action play(int handIndex, PlayMode mode, int target) {
+            return new Action(Type.PLAY, handIndex, mode, target);
+        }
+
+        public static Action discard(int handIndex) {
+            return new Action(Type.DISCARD, handIndex, null, 0);
+        }
+
+        public static Action endTurn() {
+            return END_TURN;
+        }
+    }
+
+    /**
+     * Карта в стопке у существа: как и кем сыграна (нужно, чтобы заново показать стопку, например после загрузки).
+     */
+    public record PlayedCard(Main.CardData card, PlayMode mode, Main.Player player) {
+    }
+
+    // Сбросить карту в урну стоит 1 очко хода
+    public static final int DISCARD_COST = 1;
+    // Существ на арене (creature1State и creature2State)
+    public static final int CREATURE_COUNT = 2;
+
+    private final Catalog catalog;
+    private final Main.GameConfig config;
+
+    // Seed текущего боя: от него идут перемешивание колоды, выбор существ и все броски в бою
+    public long gameSeed;
+    private RandomGenerator gameRng;
+    // Seed бросков боя: берется из генератора боя при раздаче, бой с ним всегда разыгрывается одинаково
+    public long battleSeed;
+
+    public Main.CreatureState creature1State;
+    public Main.CreatureState creature2State;
+    public Main.Player currentPlayer;
+    // Руки и колода хранят индексы карт влияния каталога, карта по индексу - card(int)
+    public final Hand player1Hand = new Hand();
+    public final Hand player2Hand = new Hand();
+    // Колода - состав по шаблонам, карты тянутся случайно из оставшихся (см. CountedDeck)
+    public final CountedDeck influenceDeck = new CountedDeck();
+    // Сыгранные на существо карты (стопки в центральных зонах)
+    public final List<PlayedCard> creature1Stack = new ArrayList<>();
+    public final List<PlayedCard> creature2Stack = new ArrayList<>();
+    public int currentTurnPointsUsed = 0;
+    // Ставки игроков на существ (существо - target - 1)
+    public final BetLedger bets = new BetLedger(Main.Player.values().length, CREATURE_COUNT);
+
+    public int player1TotalScore = 0;
+    public int player2TotalScore = 0;
+
+    public int currentRound = 1;
+    public int currentBattle = 1;
+
+    private boolean deckEmpty = false;
+
+    // Хеш позиции: XOR ключей признаков и суммы ключей карт по зонам (см. Zobrist)
+    private long zobrist;
+    private long hand1Keys;
+    private long hand2Keys;
+    private long deckKeys;
+
+    public MatchState(Catalog catalog) {
+        this.catalog = catalog;
+        this.config = catalog.config;
+    }
+
+    /**
+     * Делает это состояние копией other (существа копируются, карты - общие шаблоны).
+     * @param rng генератор для дальнейших бросков и перемешиваний копии: генератор оригинала
+     *            не потокобезопасен, поэтому копия его не берет. Если rng задан, seed боя тоже берется
+     *            из него - копия для поиска не должна знать будущие броски; null - точный снимок с тем же seed
+     */
+    public void copyFrom(MatchState other, RandomGenerator rng) {
+        gameSeed = other.gameSeed;
+        gameRng = rng;
+        battleSeed = (rng != null) ? rng.nextLong() : other.battleSeed;
+        creature1State = (other.creature1State != null) ? new Main.CreatureState(other.creature1State) : null;
+        creature2State = (other.creature2State != null) ? new Main.CreatureState(other.creature2State) : null;
+        currentPlayer = other.currentPlayer;
+        player1Hand.copyFrom(other.player1Hand);
+        player2Hand.copyFrom(other.player2Hand);
+        influenceDeck.copyFrom(other.influenceDeck);
+        copyList(other.creature1Stack, creature1Stack);
+        copyList(other.creature2Stack, creature2Stack);
+        currentTurnPointsUsed = other.currentTurnPointsUsed;
+        bets.copyFrom(other.bets);
+        player1TotalScore = other.player1TotalScore;
+        player2TotalScore = other.player2TotalScore;
+        currentRound = other.currentRound;
+        currentBattle = other.currentBattle;
+        deckEmpty = other.deckEmpty;
+        zobrist = other.zobrist;
+        hand1Keys = other.hand1Keys;
+        hand2Keys = other.hand2Keys;
+        deckKeys = other.deckKeys;
+    }
+
+    /**
+     * Тот же матч поверх другого каталога (например, после горячей перезагрузки данных).
+     * Карты в руках, колоде и стопках заменяются новыми шаблонами с тем же id. Карт, которых в новом
+     * каталоге нет, больше нет и в руках и колоде; в стопках они остаются старыми (сыгранный эффект уже
+     * действует до конца боя). Существа на поле доигрывают бой со своими статами, новые шаблоны
+     * существ и новый состав колоды вступают в силу со следующей раздачи. Этот объект после вызова не нужен.
+     */
+    public MatchState withCatalog(Catalog newCatalog) {
+        MatchState adopted = new MatchState(newCatalog);
+        adopted.copyFrom(this, null);
+        // Генератор и существа переходят к новому матчу (на существ ссылается UI)
+        adopted.gameRng = gameRng;
+        adopted.creature1State = creature1State;
+        adopted.creature2State = creature2State;
+        adopted.influenceDeck.remap(newCatalog);
+        remapHand(player1Hand, adopted.player1Hand, newCatalog);
+        remapHand(player2Hand, adopted.player2Hand, newCatalog);
+        for (List<PlayedCard> stack : List.of(adopted.creature1Stack, adopted.creature2Stack)) {
+            stack.replaceAll(played -> {
+                Main.CardData template = newCatalog.card(played.card().id);
+                return (template != null) ? new PlayedCard(template, played.mode(), played.player()) : played;
+            });
+        }
+        // Из рук и колоды могли пропасть карты, которых больше нет
+        adopted.rehash();
+        return adopted;
+    }
+
+    /**
+     * Доводит состояние, собранное по полям (см. {@link MatchSnapshot}), до рабочего: генератор раздачи
+     * заново от gameSeed (после раздачи он уже не нужен правилам) и хеш с нуля.
+     */
+    void restored(boolean deckEmpty) {
+        this.gameRng = DiceUtils.newGenerator(gameSeed);
+        this.deckEmpty = deckEmpty;
+        rehash();
+    }
+
+    private void remapHand(Hand from, Hand to, Catalog newCatalog) {
+        to.clear();
+        for (int i = 0; i < from.size(); i++) {
+            int card = newCatalog.influenceIndexOf(card(from.get(i)));
+            if (card >= 0) {
+                to.add(card);
+            }
+        }
+    }
+
+    private static void copyList(List<PlayedCard> from, List<PlayedCard> to) {
+        to.clear();
+        to.addAll(from);
+    }
+
+    /**
+     * Заново раздает то, чего viewer не видит: руку соперника и порядок колоды.
+     * Размер руки соперника сохраняется. Нужно поиску, чтобы не подглядывать в чужие карты.
+     */
+    public void shuffleHiddenCards(Main.Player viewer, RandomGenerator rng) {
+        Hand opponentHand = getHand(viewer == Main.Player.PLAYER_1 ? Main.Player.PLAYER_2 : Main.Player.PLAYER_1);
+        int handSize = opponentHand.size();
+        for (int i = 0; i < handSize; i++) {
+            influenceDeck.add(opponentHand.get(i));
+        }
+        opponentHand.clear();
+        influenceDeck.reseed(rng.nextLong());
+        for (int i = 0; i < handSize; i++) {
+            opponentHand.add(influenceDeck.draw());
+        }
+
+        // Состав "рука соперника + колода" не изменился, перераспределились только карты между ними
+        long unseen = deckKeys + handKeys(opponentHand);
+        long newHandKeys = 0L;
+        for (int i = 0; i < handSize; i++) {
+            newHandKeys += Zobrist.card(card(opponentHand.get(i)));
+        }
+        setHandKeys(opponentHand, newHandKeys);
+        deckKeys = unseen - newHandKeys;
+    }
+
+    public Catalog getCatalog() {
+        return catalog;
+    }
+
+    public Main.GameConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Карта влияния по индексу из руки или колоды.
+     */
+    public Main.CardData card(int index) {
+        return catalog.influenceCard(index);
+    }
+
+    public RandomGenerator getRng() {
+        return gameRng;
+    }
+
+    /**
+     * Готовит новый бой: сбрасывает раунд и ставки, выбирает двух существ, собирает и раздает колоду.
+     * Очки игроков и номер боя сохраняются.
+     */
+    public void startGame(long seed) {
+        currentRound = 1;
+        bets.clear();
+        creature1Stack.clear();
+        creature2Stack.clear();
+        deckEmpty = false;
+
+        currentPlayer = Main.Player.PLAYER_1;
+        currentTurnPointsUsed = 0;
+        player1Hand.clear();
+        player2Hand.clear();
+
+        gameSeed = seed;
+        gameRng = DiceUtils.newGenerator(seed);
+
+        // Порядок каталога не трогаем: один seed - одни и те же существа
+        List<Main.CardData> creatures = new ArrayList<>(catalog.creatures);
+        DiceUtils.shuffle(creatures, gameRng);
+
+        if (creatures.size() < 2) {
+            throw new IllegalStateException(I18n.getString("error.noCreatures"));
+        }
+        creature1State = new Main.CreatureState(creatures.get(0));
+        creature2State = new Main.CreatureState(creatures.get(1));
+
+        // Инициализация динамических статов перед игрой (если вдруг старт с 15HP и т.д.)
+        creature1State.recalculateDynamicStats();
+        creature2State.recalculateDynamicStats();
+
+        buildPlayableDeck();
+
+        for (int i = 0; i < config.STARTING_HAND_SIZE; i++) {
+            drawCardToHand(Main.Player.PLAYER_1);
+            drawCardToHand(Main.Player.PLAYER_2);
+        }
+        battleSeed = gameRng.nextLong();
+        rehash();
+    }
+
+    private void buildPlayableDeck() {
+        // Копии не раскладываются: порядок карт задает seed колоды
+        influenceDeck.reset(catalog, gameRng.nextLong());
+    }
+
+    /**
+     * Передает ход. После последнего раунда ничего не меняет и сообщает, что пора в бой.
+     * @return true, если пора начинать бой
+     */
+    public boolean endTurn() {
+        if (currentPlayer == Main.Player.PLAYER_1) {
+            setCurrentPlayer(Main.Player.PLAYER_2);
+            setTurnPointsUsed(0);
+            drawCardsToMax(Main.Player.PLAYER_2);
+        } else {
+            if (currentRound >= config.MAX_ROUNDS_PER_BATTLE) {
+                return true;
+            }
+            zobrist ^= Zobrist.key(Zobrist.ROUND, currentRound);
+            currentRound++;
+            zobrist ^= Zobrist.key(Zobrist.ROUND, currentRound);
+            setCurrentPlayer(Main.Player.PLAYER_1);
+            setTurnPointsUsed(0);
+            drawCardsToMax(Main.Player.PLAYER_1);
+        }
+        return false;
+    }
+
+    private void setCurrentPlayer(Main.Player player) {
+        zobrist ^= Zobrist.key(Zobrist.PLAYER, currentPlayer.ordinal()) ^ Zobrist.key(Zobrist.PLAYER, player.ordinal());
+        currentPlayer = player;
+    }
+
+    private void setTurnPointsUsed(int points) {
+        zobrist ^= Zobrist.key(Zobrist.TURN_POINTS, currentTurnPointsUsed) ^ Zobrist.key(Zobrist.TURN_POINTS, points);
+        currentTurnPointsUsed = points;
+    }
+
+    private void drawCardsToMax(Main.Player player) {
+        int cardsToDraw = config.MAX_HAND_SIZE - getHand(player).size();
+        for (int i = 0; i < cardsToDraw; i++) {
+            drawCardToHand(player);
+        }
+    }
+
+    private void drawCardToHand(Main.Player player) {
+        if (influenceDeck.isEmpty()) {
+            deckEmpty = true;
+            return;
+        }
+        int card = influenceDeck.draw();
+        Hand hand = getHand(player);
+        hand.add(card);
+        long key = Zobrist.card(card(card));
+        deckKeys -= key;
+        setHandKeys(hand, handKeys(hand) + key);
+    }
+
+    /**
+     * Колода кончилась при доборе: матч дальше продолжать нельзя.
+     */
+    public boolean isDeckEmpty() {
+        return deckEmpty;
+    }
+
+    public Hand getHand(Main.Player player) {
+        return (player == Main.Player.PLAYER_1) ? player1Hand : player2Hand;
+    }
+
+    public Hand getCurrentHand() {
+        return getHand(currentPlayer);
+    }
+
+    /**
+     * Карта на позиции handIndex в руке текущего игрока.
+     */
+    public Main.CardData getCurrentHandCard(int handIndex) {
+        return card(getCurrentHand().get(handIndex));
+    }
+
+    /**
+     * @param target 1 - первое существо, 2 - второе
+     */
+    public Main.CreatureState getCreature(int target) {
+        return (target == 1) ? creature1State : creature2State;
+    }
+
+    public List<PlayedCard> getCreatureStack(int target) {
+        return (target == 1) ? creature1Stack : creature2Stack;
+    }
+
+    public int getRemainingTurnPoints() {
+        return config.MAX_TURN_POINTS - currentTurnPointsUsed;
+    }
+
+    /**
+     * Можно ли сейчас сыграть карту. Проверки в том же порядке, что и в UI: сначала очки хода, потом блок ставок.
+     */
+    public PlayResult canPlay(Main.CardData card, PlayMode mode, int target) {
+        if (card == null) {
+            return PlayResult.NO_CARD;
+        }
+        if (currentTurnPointsUsed + card.cost > config.MAX_TURN_POINTS) {
+            return PlayResult.NOT_ENOUGH_POINTS;
+        }
+        if (mode == PlayMode.BET) {
+            if (card.getBetAmount() <= 0) {
+                return PlayResult.NO_BET;
+            }
+            if (currentRound <= getCreature(target).bettingBlockedUntilRound) {
+                return PlayResult.BETTING_BLOCKED;
+            }
+        }
+        return PlayResult.OK;
+    }
+
+    /**
+     * Играет карту из руки текущего игрока на существо target.
+     */
+    public PlayResult playCard(int handIndex, PlayMode mode, int target) {
+        Hand hand = getCurrentHand();
+        if (handIndex < 0 || handIndex >= hand.size()) {
+            return PlayResult.NO_CARD;
+        }
+        Main.CardData card = card(hand.get(handIndex));
+        PlayResult result = canPlay(card, mode, target);
+        if (result != PlayResult.OK) {
+            return result;
+        }
+
+        setTurnPointsUsed(currentTurnPointsUsed + card.cost);
+        removeFromHand(hand, handIndex);
+
+        // Эффекты могут трогать любые статы и ставки, поэтому их ключи снимаются и ставятся целиком
+        zobrist ^= creaturesAndBetsKey();
+        Main.CreatureState creature = getCreature(target);
+        if (mode == PlayMode.BUFF) {
+            PatchUtils.applyCard(this, creature, card, target);
+        } else {
+            placeBet(creature, card.getBetAmount(), target);
+        }
+        zobrist ^= creaturesAndBetsKey();
+        getCreatureStack(target).add(new PlayedCard(card, mode, currentPlayer));
+        return PlayResult.OK;
+    }
+
+    private void placeBet(Main.CreatureState creature, int betAmount, int target) {
+        int totalBet = bets.add(currentPlayer.ordinal(), target - 1, betAmount);
+        creature.bonusRatePoints = totalBet / config.BET_AMOUNT_PER_RP;
+    }
+
+    /**
+     * Сбрасывает карту из руки в урну за {@link #DISCARD_COST} очко хода.
+     * @return false, если не хватает очков
+     */
+    public boolean discard(int handIndex) {
+        Hand hand = getCurrentHand();
+        if (handIndex < 0 || handIndex >= hand.size()
+                || currentTurnPointsUsed + DISCARD_COST > config.MAX_TURN_POINTS) {
+            return false;
+        }
+        setTurnPointsUsed(currentTurnPointsUsed + DISCARD_COST);
+        removeFromHand(hand, handIndex);
+        return true;
+    }
+
+    private void removeFromHand(Hand hand, int handIndex) {
+        int card = hand.remove(handIndex);
+        setHandKeys(hand, handKeys(hand) - Zobrist.card(card(card)));
+    }
+
+    /**
+     * Выполняет ход игрока.
+     * @return true, если ход принят (для END_TURN - всегда)
+     */
+    public boolean apply(Action action) {
+        switch (action.type()) {
+            case PLAY:
+                return playCard(action.handIndex(), action.mode(), action.target()) == PlayResult.OK;
+            case DISCARD:
+                return discard(action.handIndex());
+            case END_TURN:
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Все допустимые сейчас ходы текущего игрока (END_TURN всегда последний).
+     */
+    public void legalActions(List<Action> out) {
+        out.clear();
+        Hand hand = getCurrentHand();
+        for (int i = 0; i < hand.size(); i++) {
+            Main.CardData card = card(hand.get(i));
+            for (int target = 1; target <= 2; target++) {
+                if (canPlay(card, PlayMode.BUFF, target) == PlayResult.OK) {
+                    out.add(Action.play(i, PlayMode.BUFF, target));
+                }
+                if (canPlay(card, PlayMode.BET, target) == PlayResult.OK) {
+                    out.add(Action.play(i, PlayMode.BET, target));
+                }
+            }
+            if (currentTurnPointsUsed + DISCARD_COST <= config.MAX_TURN_POINTS) {
+                out.add(Action.discard(i));
+            }
+        }
+        out.add(Action.endTurn());
+    }
+
+    /**
+     * Движок для боя между текущими существами; броски идут от {@link #battleSeed}, поэтому каждый
+     * новый движок разыгрывает тот же бой.
+     */
+    public BattleEngine newBattleEngine(BattleEngine.BattleListener listener) {
+        return new BattleEngine(config, catalog.damageTable, DiceUtils.newGenerator(battleSeed),
+                creature1State, creature2State, listener);
+    }
+
+    /**
+     * Прогоняет бой целиком без лога.
+     * @return победитель
+     */
+    public Main.CreatureState resolveBattle() {
+        BattleEngine engine = newBattleEngine(null);
+        engine.resolve();
+        return engine.getWinner();
+    }
+
+    /**
+     * Выплаты по ставкам после боя, очки добавляются к итогам игроков.
+     */
+    public BattlePayout.Result settleBattle(Main.CreatureState winner) {
+        Main.CreatureState loser = (winner == creature1State) ? creature2State : creature1State;
+        BattlePayout.Result payout = BattlePayout.settle(config, winner, loser, bets, (winner == creature1State) ? 0 : 1);
+        setScores(player1TotalScore + payout.player1NetProfit(), player2TotalScore + payout.player2NetProfit());
+        return payout;
+    }
+
+    /**
+     * Это последний бой матча (после него итоги подводятся и очки обнуляются).
+     */
+    public boolean isLastBattle() {
+        return currentBattle >= config.MAX_BATTLES;
+    }
+
+    /**
+     * Переходит к следующему бою; после последнего - к новому матчу с нулевыми очками.
+     * Сам бой готовит {@link #startGame(long)}.
+     */
+    public void advanceBattle() {
+        zobrist ^= Zobrist.key(Zobrist.BATTLE, currentBattle);
+        if (isLastBattle()) {
+            setScores(0, 0);
+            currentBattle = 1;
+        } else {
+            currentBattle++;
+        }
+        zobrist ^= Zobrist.key(Zobrist.BATTLE, currentBattle);
+    }
+
+    private void setScores(int player1Score, int player2Score) {
+        zobrist ^= Zobrist.key(Zobrist.SCORE_1, player1TotalScore) ^ Zobrist.key(Zobrist.SCORE_1, player1Score)
+                ^ Zobrist.key(Zobrist.SCORE_2, player2TotalScore) ^ Zobrist.key(Zobrist.SCORE_2, player2Score);
+        player1TotalScore = player1Score;
+        player2TotalScore = player2Score;
+    }
+
+    /**
+     * Хеш всей позиции: существа, ставки, раунд, бой, очки, очки хода, чей ход, руки и состав колоды
+     * (порядок карт в руках и колоде не учитывается).
+     */
+    public long hash() {
+        return zobrist
+                ^ Zobrist.zone(Zobrist.HAND_1, hand1Keys)
+                ^ Zobrist.zone(Zobrist.HAND_2, hand2Keys)
+                ^ Zobrist.zone(Zobrist.DECK, deckKeys);
+    }
+
+    /**
+     * Хеш того, что знает viewer: своя рука, размер руки соперника и общий состав невидимых карт
+     * (рука соперника вместе с колодой). Позиции, которые игрок не различает, получают один хеш.
+     */
+    public long hashFor(Main.Player viewer) {
+        boolean player1 = viewer == Main.Player.PLAYER_1;
+        Hand opponentHand = player1 ? player2Hand : player1Hand;
+        return zobrist
+                ^ Zobrist.zone(player1 ? Zobrist.HAND_1 : Zobrist.HAND_2, player1 ? hand1Keys : hand2Keys)
+                ^ Zobrist.zone(Zobrist.UNSEEN, deckKeys + (player1 ? hand2Keys : hand1Keys))
+                ^ Zobrist.key(Zobrist.OPPONENT_HAND_SIZE, opponentHand.size());
+    }
+
+    /**
+     * Пересчитывает хеш с нуля. Нужен после прямых изменений публичных полей.
+     */
+    public void rehash() {
+        zobrist = Zobrist.key(Zobrist.PLAYER, (currentPlayer != null) ? currentPlayer.ordinal() : -1)
+                ^ Zobrist.key(Zobrist.ROUND, currentRound)
+                ^ Zobrist.key(Zobrist.TURN_POINTS, currentTurnPointsUsed)
+                ^ Zobrist.key(Zobrist.BATTLE, currentBattle)
+                ^ Zobrist.key(Zobrist.SCORE_1, player1TotalScore)
+                ^ Zobrist.key(Zobrist.SCORE_2, player2TotalScore)
+                ^ creaturesAndBetsKey();
+        hand1Keys = 0L;
+        for (int i = 0; i < player1Hand.size(); i++) hand1Keys += Zobrist.card(card(player1Hand.get(i)));
+        hand2Keys = 0L;
+        for (int i = 0; i < player2Hand.size(); i++) hand2Keys += Zobrist.card(card(player2Hand.get(i)));
+        deckKeys = influenceDeck.zobristKeys();
+    }
+
+    private long creaturesAndBetsKey() {
+        return Zobrist.creature(1, creature1State) ^ Zobrist.creature(2, creature2State)
+                ^ bets.zobristKey();
+    }
+
+    private long handKeys(Hand hand) {
+        return (hand == player1Hand) ? hand1Keys : hand2Keys;
+    }
+
+    private void setHandKeys(Hand hand, long keys) {
+        if (hand == player1Hand) {
+            hand1Keys = keys;
+        } else {
+            hand2Keys = keys;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package yermakov.oleksii;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.random.RandomGenerator;
+
+/**
+ * ИИ на поиске по дереву Монте-Карло (UCT) с ограничением по времени.
+ * <p>
+ * Дерево строится по ходам текущего игрока до конца его хода: свою руку он знает, поэтому ходы в узлах
+ * от случая не зависят. Каждая итерация берет копию позиции, заново раздает то, чего игрок не видит
+ * (рука соперника и порядок колоды), спускается по дереву, доигрывает раунды быстрыми стратегиями
+ * и разыгрывает бой. Награда - итог боя для ищущего игрока в [0, 1].
+ * <p>
+ * Параллелизм по корню: каждый воркер фонового пула растит свое дерево со своим генератором,
+ * в конце посещения ходов корня складываются и выбирается самый посещаемый ход. С одним воркером
+ * пула нет: {@link #search} идет в вызывающем потоке, {@link #searchAsync} - в отдельном потоке на поиск,
+ * так что такой экземпляр можно не закрывать.
+ * <p>
+ * Статистика узлов для выбора хода (UCT) хранится еще и в общей для воркеров {@link TranspositionTable} по
+ * {@link MatchState#hashFor} ищущего игрока: одна позиция, полученная разным порядком карт, и одинаковые
+ * позиции в деревьях разных воркеров копят одну статистику. Таблица своя у каждого поиска: статистика
+ * прошлых ходов и раздач считалась от других корней и только сбивала бы UCT.
+ */
+public class MctsPolicy implements PlayerPolicy, AutoCloseable {
+
+    public static final long DEFAULT_THINK_TIME_MS = 200;
+
+    private static final double EXPLORATION = Math.sqrt(2.0);
+    private static final double DRAW = 0.5;
+    private static final int TABLE_ENTRIES = 1 << 16;
+
+    /**
+     * Итог поиска.
+     * @param iterations     сколько раз спускались по деревьям (сумма по воркерам)
+     * @param expectedReward средняя награда выбранного хода в [0, 1]
+     */
+    public record SearchResult(MatchState.Action action, long iterations, long elapsedNanos, double expectedReward) {
+
+        public double iterationsPerSecond() {
+            return (elapsedNanos > 0) ? iterations * 1e9 / elapsedNanos : 0.0;
+        }
+    }
+
+    private static final class Node {
+        final Node parent;
+        final MatchState.Action action;
+        final long hash;
+        final List<Node> children = new ArrayList<>();
+        final List<MatchState.Action> untried = new ArrayList<>();
+        long visits;
+        double reward;
+
+        Node(Node parent, MatchState.Action action, long hash) {
+            this.parent = parent;
+            this.action = action;
+            this.hash = hash;
+        }
+
+        boolean isTerminal() {
+            return action != null && action.type() == MatchState.Action.Type.END_TURN;
+        }
+
+        /**
+         * Статистика из таблицы, а если записи нет (вытеснена) - своя.
+         */
+        long stats(TranspositionTable table) {
+            return table.get(hash, TranspositionTable.packStats((int) visits, (float) reward));
+        }
+
+        Node select(TranspositionTable table) {
+            double logVisits = Math.log(Math.max(1, TranspositionTable.visits(stats(table))));
+            Node best = null;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < children.size(); i++) {
+                Node child = children.get(i);
+                long stats = child.stats(table);
+                int childVisits = Math.max(1, TranspositionTable.visits(stats));
+                double value = TranspositionTable.rewardSum(stats) / childVisits
+                        + EXPLORATION * Math.sqrt(logVisits / childVisits);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+    }
+
+    private record Tree(Node root, long iterations) {
+    }
+
+    private final long thinkTimeMillis;
+    private final int workers;
+    private final long maxIterations;
+    private final Supplier<PlayerPolicy> rolloutPolicy;
+    private final ExecutorService pool; // null - один воркер
+
+    public MctsPolicy() {
+        this(DEFAULT_THINK_TIME_MS, Runtime.getRuntime().availableProcessors());
+    }
+
+    public MctsPolicy(long thinkTimeMillis, int workers) {
+        this(thinkTimeMillis, workers, 0, RandomPolicy::new);
+    }
+
+    /**
+     * @param maxIterations предел итераций на воркер (0 - только время); с пределом поиск короче и
+     *                      при том же seed меньше зависит от скорости машины
+     * @param rolloutPolicy стратегия обоих игроков при доигрывании раундов после дерева
+     */
+    public MctsPolicy(long thinkTimeMillis, int workers, long maxIterations, Supplier<PlayerPolicy> rolloutPolicy) {
+        this.thinkTimeMillis = Math.max(1, thinkTimeMillis);
+        this.workers = Math.max(1, workers);
+        this.maxIterations = Math.max(0, maxIterations);
+        this.rolloutPolicy = rolloutPolicy;
+        // Потоки-демоны: недодуманный ход не держит приложение при выходе
+        this.pool = (this.workers > 1)
+                ? Executors.newFixedThreadPool(this.workers, Thread.ofPlatform().daemon().name("mcts-", 0).factory())
+                : null;
+    }
+
+    @Override
+    public MatchState.Action chooseAction(MatchState match, RandomGenerator rng) {
+        return search(match, rng.nextLong()).action();
+    }
+
+    /**
+     * Блокирующий поиск (для симуляций). Из FX-потока вызывать {@link #searchAsync}.
+     */
+    public SearchResult search(MatchState match, long seed) {
+        return start(match, seed, (pool != null) ? pool : Runnable::run).join();
+    }
+
+    /**
+     * Запускает поиск в фоновом пуле. Позиция копируется сразу в вызывающем потоке,
+     * так что после вызова ее можно менять.
+     */
+    public CompletableFuture<SearchResult> searchAsync(MatchState match, long seed) {
+        return start(match, seed, (pool != null) ? pool : task -> Thread.ofPlatform().daemon().name("mcts").start(task));
+    }
+
+    private CompletableFuture<SearchResult> start(MatchState match, long seed, Executor executor) {
+        long start = System.nanoTime();
+        MatchState root = new MatchState(match.getCatalog());
+        root.copyFrom(match, null);
+
+        List<MatchState.Action> actions = new ArrayList<>();
+        root.legalActions(actions);
+        if (actions.size() == 1) {
+            // Кроме конца хода делать нечего
+            return CompletableFuture.completedFuture(new SearchResult(actions.get(0), 0, System.nanoTime() - start, DRAW));
+        }
+
+        long deadline = start + thinkTimeMillis * 1_000_000L;
+        // split() не потокобезопасен, поэтому потоки воркеров готовятся заранее
+        RandomGenerator.SplittableGenerator rootRng = DiceUtils.newGenerator(seed);
+        TranspositionTable table = new TranspositionTable(TABLE_ENTRIES);
+        List<CompletableFuture<Tree>> trees = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            RandomGenerator rng = rootRng.split();
+            trees.add(CompletableFuture.supplyAsync(() -> grow(root, rng, deadline, table), executor));
+        }
+        return CompletableFuture.allOf(trees.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> merge(trees, start));
+    }
+
+    private Tree grow(MatchState root, RandomGenerator rng, long deadline, TranspositionTable table) {
+        Main.Player me = root.currentPlayer;
+        MatchState scratch = new MatchState(root.getCatalog());
+        PlayerPolicy player1 = rolloutPolicy.get();
+        PlayerPolicy player2 = rolloutPolicy.get();
+
+        Node rootNode = new Node(null, null, root.hashFor(me));
+        root.legalActions(rootNode.untried);
+
+        long iterations = 0;
+        do {
+            scratch.copyFrom(root, rng);
+            scratch.shuffleHiddenCards(me, rng);
+
+            // 1. Спуск по полностью раскрытым узлам
+            Node node = rootNode;
+            while (node.untried.isEmpty() && !node.children.isEmpty()) {
+                node = node.select(table);
+                scratch.apply(node.action);
+            }
+
+            // 2. Раскрытие одного нового хода
+            if (!node.isTerminal() && !node.untried.isEmpty()) {
+                int last = node.untried.size() - 1;
+                int pick = rng.nextInt(node.untried.size());
+                MatchState.Action action = node.untried.get(pick);
+                node.untried.set(pick, node.untried.get(last));
+                node.untried.remove(last);
+
+                scratch.apply(action);
+                long hash = scratch.hashFor(me);
+                if (action.type() == MatchState.Action.Type.END_TURN) {
+                    hash ^= Zobrist.END_TURN;
+                }
+                Node child = new Node(node, action, hash);
+                if (!child.isTerminal()) {
+                    scratch.legalActions(child.untried);
+                }
+                node.children.add(child);
+                node = child;
+            }
+
+            // 3. Доигрывание и бой
+            double reward = playout(scratch, me, node.isTerminal(), player1, player2, rng);
+
+            // 4. Обратное распространение
+            for (Node n = node; n != null; n = n.parent) {
+                // Гонка двух воркеров за одну запись может потерять одно обновление - для статистики не страшно
+                long stats = n.stats(table);
+                table.put(n.hash, TranspositionTable.packStats(TranspositionTable.visits(stats) + 1,
+                        TranspositionTable.rewardSum(stats) + (float) reward));
+                n.visits++;
+                n.reward += reward;
+            }
+            iterations++;
+        } while (System.nanoTime() < deadline && (maxIterations == 0 || iterations < maxIterations));
+
+        return new Tree(rootNode, iterations);
+    }
+
+    /**
+     * Доигрывает раунды до боя и разыгрывает бой.
+     * @param turnEnded дерево уже выбрало конец хода
+     */
+    private static double playout(MatchState match, Main.Player me, boolean turnEnded,
+                                  PlayerPolicy player1, PlayerPolicy player2, RandomGenerator rng) {
+        boolean battleReady = false;
+        if (turnEnded) {
+            battleReady = match.endTurn();
+            if (match.isDeckEmpty()) {
+                return DRAW;
+            }
+        }
+        if (!battleReady && !GameSimulator.playRounds(match, player1, player2, rng)) {
+            return DRAW;
+        }
+
+        BattlePayout.Result payout = match.settleBattle(match.resolveBattle());
+        if (match.isLastBattle()) {
+            // В последнем бою важен только исход матча
+            int lead = match.player1TotalScore - match.player2TotalScore;
+            if (me == Main.Player.PLAYER_2) lead = -lead;
+            return (lead > 0) ? 1.0 : (lead < 0) ? 0.0 : DRAW;
+        }
+        int profit = payout.player1NetProfit() - payout.player2NetProfit();
+        if (me == Main.Player.PLAYER_2) profit = -profit;
+        return DRAW + DRAW * Math.tanh((double) profit / match.getConfig().BET_AMOUNT_PER_RP);
+    }
+
+    private static SearchResult merge(List<CompletableFuture<Tree>> trees, long start) {
+        Map<MatchState.Action, double[]> stats = new HashMap<>();
+        long iterations = 0;
+        for (CompletableFuture<Tree> future : trees) {
+            Tree tree = future.join();
+            iterations += tree.iterations();
+            for (Node child : tree.root().children) {
+                double[] s = stats.computeIfAbsent(child.action, a -> new double[2]);
+                s[0] += child.visits;
+                s[1] += child.reward;
+            }
+        }
+
+        MatchState.Action best = MatchState.Action.endTurn();
+        double bestVisits = -1.0;
+        double bestReward = DRAW;
+        for (Map.Entry<MatchState.Action, double[]> e : stats.entrySet()) {
+            double[] s = e.getValue();
+            if (s[0] > bestVisits) {
+                bestVisits = s[0];
+                best = e.getKey();
+                bestReward = s[1] / s[0];
+            }
+        }
+        return new SearchResult(best, iterations, System.nanoTime() - start, bestReward);
+    }
+
+    /**
+     * Останавливает фоновый пул. Незаконченный поиск прерывается.
+     */
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+}
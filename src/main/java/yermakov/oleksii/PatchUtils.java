@@ -2,46 +2,49 @@ package yermakov.oleksii;
 
 public class PatchUtils {
 
-    public static void applyEffect(Main mainApp, Main.CreatureState creature, Main.Effect effect, int targetBetId) {
-
-        if (effect.op == null || effect.path == null || effect.value == null) {
-            return;
+    /**
+     * Применяет все эффекты карты (разобранные при загрузке) к существу.
+     */
+    public static void applyCard(MatchState match, Main.CreatureState creature, Main.CardData card, int targetBetId) {
+        for (CompiledEffect effect : card.getCompiledEffects()) {
+            applyEffect(match, creature, effect, targetBetId);
         }
+    }
 
+    public static void applyEffect(MatchState match, Main.CreatureState creature, CompiledEffect effect, int targetBetId) {
         switch (effect.op) {
-            case "inc":
-                applyInc(creature, effect.path, effect.value);
+            case INC:
+                applyInc(creature, effect.stat, effect.value);
                 // After applying stats, recalculate dynamic effects (e.g. Fat Imp)
                 creature.recalculateDynamicStats();
                 break;
 
-            case "dec_bet":
-                applyDecBet(mainApp, effect.path, effect.value, targetBetId);
+            case DEC_OPPONENT_BETS:
+                applyDecBet(match, effect.value, targetBetId);
                 break;
 
-            case "apply_status":
-                applyStatus(mainApp, creature, effect.path, effect.value);
+            case BLOCK_BETTING:
+                applyBlockBetting(match, creature);
                 break;
 
+            case NOOP:
             default:
-                if (!effect.op.isEmpty()) {
-                    System.err.println(String.format(I18n.getString("error.unsupportedOp"), effect.op));
-                }
+                break;
         }
     }
 
-    private static void applyInc(Main.CreatureState creature, String path, int value) {
-        switch (path) {
-            case "/health":
+    private static void applyInc(Main.CreatureState creature, int stat, int value) {
+        switch (stat) {
+            case CompiledEffect.HEALTH:
                 creature.currentHealth += value;
                 break;
-            case "/attack":
+            case CompiledEffect.ATTACK:
                 creature.currentAttack = Math.max(1, creature.currentAttack + value);
                 break;
-            case "/defense":
+            case CompiledEffect.DEFENSE:
                 creature.currentDefense = Math.max(0, creature.currentDefense + value);
                 break;
-            case "/ratePoints":
+            case CompiledEffect.RATE_POINTS:
                 int newValue = creature.currentRatePoints + value;
                 // Check Peasant Limit
                 if (creature.rpLimit > 0) {
@@ -50,44 +53,16 @@ public class PatchUtils {
                 creature.currentRatePoints = Math.max(1, newValue);
                 break;
             default:
-                if (!path.isEmpty()) {
-                    System.err.println(String.format(I18n.getString("error.unknownPath"), path));
-                }
+                break;
         }
     }
 
-    private static void applyDecBet(Main mainApp, String path, int value, int targetBetId) {
-        if (!"/opponent_bets".equals(path)) {
-            System.err.println(String.format(I18n.getString("error.unknownPath"), path));
-            return;
-        }
-
-        int amountToRemove = value;
-        Main.Player currentPlayer = mainApp.currentPlayer;
-
-        if (targetBetId == 1) {
-            if (currentPlayer == Main.Player.PLAYER_1) {
-                mainApp.p2_BetsOn_C1 = Math.max(0, mainApp.p2_BetsOn_C1 - amountToRemove);
-            } else {
-                mainApp.p1_BetsOn_C1 = Math.max(0, mainApp.p1_BetsOn_C1 - amountToRemove);
-            }
-        } else {
-            if (currentPlayer == Main.Player.PLAYER_1) {
-                mainApp.p2_BetsOn_C2 = Math.max(0, mainApp.p2_BetsOn_C2 - amountToRemove);
-            } else {
-                mainApp.p1_BetsOn_C2 = Math.max(0, mainApp.p1_BetsOn_C2 - amountToRemove);
-            }
-        }
-
-        mainApp.updateBetDisplays();
+    private static void applyDecBet(MatchState match, int value, int targetBetId) {
+        match.bets.reduceOthers(match.currentPlayer.ordinal(), targetBetId - 1, value);
     }
 
-    private static void applyStatus(Main mainApp, Main.CreatureState creature, String path, int value) {
-        if ("/block_betting".equals(path)) {
-            int roundOffset = (mainApp.currentPlayer == Main.Player.PLAYER_1) ? 0 : 1;
-            creature.bettingBlockedUntilRound = mainApp.currentRound + roundOffset;
-        } else {
-            System.err.println(String.format(I18n.getString("error.unknownPath"), path));
-        }
+    private static void applyBlockBetting(MatchState match, Main.CreatureState creature) {
+        int roundOffset = (match.currentPlayer == Main.Player.PLAYER_1) ? 0 : 1;
+        creature.bettingBlockedUntilRound = match.currentRound + roundOffset;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,31 @@
+package yermakov.oleksii;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Стратегия игрока для {@link GameSimulator}: по состоянию матча выбирает следующий ход
+ * текущего игрока ({@link MatchState#currentPlayer}).
+ * <p>
+ * Реализации могут держать внутренние буферы, поэтому один экземпляр используется только одним потоком.
+ */
+public interface PlayerPolicy {
+
+    /**
+     * @param rng генератор для случайных решений стратегии (не влияет на броски и колоду)
+     * @return ход; недопустимый ход симулятор считает окончанием хода
+     */
+    MatchState.Action chooseAction(MatchState match, RandomGenerator rng);
+
+    /**
+     * Стратегия по имени: "random", "greedy" или "mcts" (однопоточный поиск в вызывающем потоке, без пула:
+     * в симуляторе матчи и так идут параллельно, закрывать стратегию не нужно).
+     */
+    static PlayerPolicy byName(String name) {
+        switch (name) {
+            case "random": return new RandomPolicy();
+            case "greedy": return new GreedyPolicy();
+            case "mcts": return new MctsPolicy(MctsPolicy.DEFAULT_THINK_TIME_MS, 1);
+            default: throw new IllegalArgumentException("Неизвестная стратегия: " + name);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package yermakov.oleksii;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+/**
+ * Случайный равновероятный выбор среди допустимых ходов (включая конец хода). Базовая линия для сравнения стратегий.
+ */
+public class RandomPolicy implements PlayerPolicy {
+
+    private final List<MatchState.Action> actions = new ArrayList<>();
+
+    @Override
+    public MatchState.Action chooseAction(MatchState match, RandomGenerator rng) {
+        match.legalActions(actions);
+        return actions.get(rng.nextInt(actions.size()));
+    }
+}
@@ -0,0 +1,391 @@
+package yermakov.oleksii;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Журнал партии для воспроизведения ({@link ReplayPlayer}): каталог, seed каждой раздачи и ходы игроков.
+ * Правила детерминированы от seed, поэтому этого достаточно, чтобы повторить матч целиком.
+ * <p>
+ * Каталог ({@link CatalogSnapshot#toBytes}, сжатый) пишется в начале журнала и при каждой смене данных:
+ * при перезагрузке JSON посреди матча и при продолжении матча из автосохранения с другими данными.
+ * Плеер переходит на него так же, как игра, поэтому журнал воспроизводится без исходных JSON-файлов.
+ * <p>
+ * Файл только дописывается. Заголовок - MAGIC и {@link #VERSION}, дальше события: тег varint и поля
+ * (числа varint, знаковые - zigzag, seed - 8 байт). Карта записывается id при первом появлении и номером
+ * в словаре файла потом, так что ход - 2-3 байта. Итог боя тоже пишется - плеер сверяет с ним свой.
+ * <p>
+ * События копятся в памяти и уходят в файл в {@link #commit()} одной записью - в тех же точках, что и
+ * автосохранение, поэтому журнал и {@link MatchSnapshot} описывают один и тот же момент партии.
+ * Оборванный хвост (сбой на середине записи) отбрасывается при чтении и при {@link #append}.
+ * Ошибка записи не останавливает игру: журнал выключается с сообщением в stderr.
+ */
+public final class ReplayLog implements AutoCloseable {
+
+    private static final int MAGIC = 0x4444524C; // "DDRL"
+    private static final int VERSION = 2;
+
+    static final int DEAL = 0;
+    static final int PLAY = 1;
+    static final int DISCARD = 2;
+    static final int END_TURN = 3;
+    static final int BATTLE = 4;
+    static final int CATALOG = 5;
+
+    // Как матч перешел на новый каталог: перезагрузка данных (MatchState.withCatalog)
+    // или загрузка автосохранения (MatchSnapshot поверх нового каталога)
+    static final int CATALOG_RELOADED = 0;
+    static final int CATALOG_RESUMED = 1;
+
+    private final Path path;
+    private FileChannel channel; // null - журнал выключен
+    private final Varints.Output pending = new Varints.Output();
+    // id карты -> номер в словаре файла; uncommitted - добавленные после последнего commit
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final List<String> uncommitted = new ArrayList<>();
+    // Снимок последнего записанного каталога (и последнего записанного в файл)
+    private byte[] catalog;
+    private byte[] committedCatalog;
+
+    private ReplayLog(Path path, FileChannel channel) {
+        this.path = path;
+        this.channel = channel;
+    }
+
+    /**
+     * Новый журнал на каталоге catalog (прежний файл перезаписывается).
+     */
+    public static ReplayLog create(Path path, Catalog catalog) throws IOException {
+        ReplayLog log = new ReplayLog(path, FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+        log.pending.writeInt(MAGIC);
+        log.pending.writeVarint(VERSION);
+        log.catalog(catalog, CATALOG_RELOADED);
+        log.commit();
+        return log;
+    }
+
+    /**
+     * Продолжает существующий журнал (после загрузки автосохранения поверх catalog): оборванный хвост
+     * обрезается, словарь карт восстанавливается, другой каталог записывается. Нет файла или это не журнал
+     * этой версии - начинается новый.
+     */
+    public static ReplayLog append(Path path, Catalog catalog) throws IOException {
+        if (Files.notExists(path)) {
+            return create(path, catalog);
+        }
+        Reader reader;
+        try {
+            reader = new Reader(Files.readAllBytes(path));
+        } catch (IOException e) {
+            System.err.println("Журнал партии не продолжен, начат новый: " + e.getMessage());
+            return create(path, catalog);
+        }
+        while (reader.next()) {
+            // Только дочитываем до конца, чтобы узнать словарь, каталог и целую длину
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        channel.truncate(reader.validLength());
+        channel.position(reader.validLength());
+        ReplayLog log = new ReplayLog(path, channel);
+        for (String id : reader.ids) {
+            log.dictionary.put(id, log.dictionary.size());
+        }
+        log.catalog = reader.catalogData;
+        log.committedCatalog = reader.catalogData;
+        log.catalog(catalog, CATALOG_RESUMED);
+        log.commit();
+        return log;
+    }
+
+    /**
+     * Журнал, который ничего не пишет (если файл не открылся).
+     */
+    public static ReplayLog disabled(Path path) {
+        return new ReplayLog(path, null);
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * Матч перешел на каталог catalog (см. {@link #CATALOG_RELOADED}); тот же каталог не пишется повторно.
+     */
+    public void catalogReloaded(Catalog catalog) {
+        catalog(catalog, CATALOG_RELOADED);
+    }
+
+    private void catalog(Catalog catalog, int how) {
+        byte[] data = CatalogSnapshot.toBytes(catalog);
+        if (Arrays.equals(data, this.catalog)) {
+            return;
+        }
+        this.catalog = data;
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] packed = new byte[data.length + 64];
+        int packedLength = 0;
+        while (!deflater.finished()) {
+            if (packedLength == packed.length) {
+                packed = Arrays.copyOf(packed, packed.length * 2);
+            }
+            packedLength += deflater.deflate(packed, packedLength, packed.length - packedLength);
+        }
+        deflater.end();
+
+        pending.writeVarint(CATALOG);
+        pending.writeVarint(how);
+        pending.writeVarint(data.length);
+        pending.writeBytes(packed, packedLength);
+    }
+
+    public void deal(long seed) {
+        pending.writeVarint(DEAL);
+        pending.writeLong(seed);
+    }
+
+    public void play(Main.CardData card, MatchState.PlayMode mode, int target) {
+        pending.writeVarint(PLAY);
+        writeCard(card);
+        pending.writeVarint(mode.ordinal() | ((target - 1) << 1));
+    }
+
+    public void discard(Main.CardData card) {
+        pending.writeVarint(DISCARD);
+        writeCard(card);
+    }
+
+    public void endTurn() {
+        pending.writeVarint(END_TURN);
+    }
+
+    /**
+     * @param winner 1 или 2 - какое существо победило
+     */
+    public void battle(int winner, int player1NetProfit, int player2NetProfit) {
+        pending.writeVarint(BATTLE);
+        pending.writeVarint(winner);
+        pending.writeSigned(player1NetProfit);
+        pending.writeSigned(player2NetProfit);
+    }
+
+    private void writeCard(Main.CardData card) {
+        Integer number = dictionary.get(card.id);
+        if (number != null) {
+            pending.writeVarint(number + 1);
+            return;
+        }
+        pending.writeVarint(0);
+        pending.writeString(card.id);
+        dictionary.put(card.id, dictionary.size());
+        uncommitted.add(card.id);
+    }
+
+    /**
+     * Дописывает накопленные события в файл.
+     */
+    public void commit() {
+        if (channel == null) {
+            rollback();
+            return;
+        }
+        try {
+            ByteBuffer buffer = pending.buffer();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            pending.truncate(0);
+            uncommitted.clear();
+            committedCatalog = catalog;
+        } catch (IOException e) {
+            System.err.println("Журнал партии не записан, запись остановлена: " + e);
+            closeChannel();
+            rollback();
+        }
+    }
+
+    /**
+     * Забывает события после последнего {@link #commit()} (например, бой, прерванный закрытием окна:
+     * автосохранение вернет матч к моменту до боя).
+     */
+    public void rollback() {
+        pending.truncate(0);
+        for (String id : uncommitted) {
+            dictionary.remove(id);
+        }
+        uncommitted.clear();
+        catalog = committedCatalog;
+    }
+
+    /**
+     * Закрывает файл; события без {@link #commit()} не пишутся.
+     */
+    @Override
+    public void close() {
+        rollback();
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Журнал партии не закрыт: " + e);
+        }
+        channel = null;
+    }
+
+    /**
+     * Последовательное чтение журнала. Поля текущего события действуют до следующего {@link #next()};
+     * card - номер в {@link #ids}, catalogData - снимок последнего каталога ({@link CatalogSnapshot#fromBytes}).
+     */
+    static final class Reader {
+        private final ByteBuffer in;
+        final List<String> ids = new ArrayList<>();
+        private int validLength;
+        private boolean truncated;
+
+        int type;
+        long seed;
+        int card;
+        MatchState.PlayMode mode;
+        int target;
+        int winner;
+        int player1NetProfit;
+        int player2NetProfit;
+        int catalogChange;
+        byte[] catalogData;
+
+        /**
+         * @throws IOException если это не журнал партии или журнал другой версии
+         */
+        Reader(byte[] data) throws IOException {
+            in = ByteBuffer.wrap(data);
+            try {
+                if (in.getInt() != MAGIC) {
+                    throw new IOException("Это не журнал партии");
+                }
+                int version = Varints.readVarint(in);
+                if (version != VERSION) {
+                    throw new IOException("Журнал партии версии " + version + ", ожидалась " + VERSION);
+                }
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Это не журнал партии");
+            }
+            validLength = in.position();
+        }
+
+        /**
+         * @return false в конце журнала или на оборванном/испорченном событии (см. {@link #truncated()})
+         */
+        boolean next() {
+            if (truncated || !in.hasRemaining()) {
+                return false;
+            }
+            String newId = null;
+            try {
+                type = Varints.readVarint(in);
+                switch (type) {
+                    case DEAL:
+                        seed = in.getLong();
+                        break;
+                    case PLAY:
+                    case DISCARD:
+                        int number = Varints.readVarint(in);
+                        if (number == 0) {
+                            newId = Varints.readString(in);
+                            card = ids.size();
+                        } else if (number <= ids.size()) {
+                            card = number - 1;
+                        } else {
+                            truncated = true;
+                            return false;
+                        }
+                        if (type == PLAY) {
+                            int bits = Varints.readVarint(in);
+                            mode = MatchState.PlayMode.values()[bits & 1];
+                            target = (bits >> 1) + 1;
+                        }
+                        break;
+                    case END_TURN:
+                        break;
+                    case BATTLE:
+                        winner = Varints.readVarint(in);
+                        player1NetProfit = Varints.readSigned(in);
+                        player2NetProfit = Varints.readSigned(in);
+                        break;
+                    case CATALOG:
+                        catalogChange = Varints.readVarint(in);
+                        catalogData = inflate(Varints.readVarint(in), Varints.readBytes(in));
+                        break;
+                    default:
+                        truncated = true;
+                        return false;
+                }
+            } catch (RuntimeException | DataFormatException e) {
+                // Обрыв посреди события или мусор вместо varint
+                truncated = true;
+                return false;
+            }
+            if (newId != null) {
+                ids.add(newId);
+            }
+            validLength = in.position();
+            return true;
+        }
+
+        private static byte[] inflate(int length, byte[] packed) throws DataFormatException {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(packed);
+                byte[] data = new byte[length];
+                int filled = 0;
+                while (filled < length && !inflater.finished()) {
+                    int n = inflater.inflate(data, filled, length - filled);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new DataFormatException("Сжатый каталог обрезан");
+                    }
+                    filled += n;
+                }
+                if (filled != length) {
+                    throw new DataFormatException("Сжатый каталог короче заявленного");
+                }
+                return data;
+            } finally {
+                inflater.end();
+            }
+        }
+
+        /**
+         * Журнал кончился не на границе события (хвост отброшен).
+         */
+        boolean truncated() {
+            return truncated;
+        }
+
+        /**
+         * Длина целой части журнала в байтах.
+         */
+        int validLength() {
+            return validLength;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package yermakov.oleksii;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Воспроизводит журналы {@link ReplayLog} без JavaFX и без пауз: данные - по записанным каталогам,
+ * раздачи - по записанным seed, ходы - по записанным картам, бои - движком. Итог каждого боя сверяется
+ * с записанным, так что плеер заодно проверяет, что правила по-прежнему детерминированы.
+ */
+public final class ReplayPlayer {
+
+    /**
+     * Итог воспроизведения одного журнала.
+     * @param mismatches    бои с другим победителем или выплатами и ходы, которые не удалось повторить
+     * @param firstMismatch описание первого расхождения или null
+     * @param truncated     журнал оборван, воспроизведена целая часть
+     */
+    public record Result(long deals, long actions, long battles, long mismatches, String firstMismatch,
+                         boolean truncated) {
+
+        Result plus(Result other) {
+            return new Result(deals + other.deals, actions + other.actions, battles + other.battles,
+                    mismatches + other.mismatches, (firstMismatch != null) ? firstMismatch : other.firstMismatch,
+                    truncated || other.truncated);
+        }
+    }
+
+    private static final Result EMPTY = new Result(0, 0, 0, 0, null, false);
+
+    private ReplayPlayer() {
+    }
+
+    public static Result play(Path path) throws IOException {
+        return play(Files.readAllBytes(path));
+    }
+
+    /**
+     * @throws IOException если это не журнал партии, журнал другой версии или записанный каталог не читается
+     */
+    public static Result play(byte[] data) throws IOException {
+        ReplayLog.Reader reader = new ReplayLog.Reader(data);
+        Catalog catalog = null;
+        MatchState match = null;
+        // Номер карты в словаре журнала -> индекс в catalog (-1 - карты нет)
+        int[] cards = new int[16];
+        int resolved = 0;
+        long deals = 0, actions = 0, battles = 0, mismatches = 0;
+        String firstMismatch = null;
+
+        while (reader.next()) {
+            String mismatch = null;
+            if (reader.type == ReplayLog.CATALOG) {
+                catalog = CatalogSnapshot.fromBytes(reader.catalogData);
+                if (match == null || match.creature1State == null) {
+                    match = new MatchState(catalog);
+                } else if (reader.catalogChange == ReplayLog.CATALOG_RESUMED) {
+                    match = MatchSnapshot.fromBytes(catalog, MatchSnapshot.toBytes(match));
+                } else {
+                    match = match.withCatalog(catalog);
+                }
+                // Индексы карт в новом каталоге другие
+                resolved = 0;
+            } else if (match == null) {
+                mismatch = "нет каталога в начале журнала";
+            } else if (reader.type == ReplayLog.DEAL) {
+                match.startGame(reader.seed);
+                deals++;
+            } else if (deals == 0) {
+                mismatch = "ход до первой раздачи";
+            } else if (reader.type == ReplayLog.PLAY || reader.type == ReplayLog.DISCARD) {
+                for (; resolved < reader.ids.size(); resolved++) {
+                    if (resolved == cards.length) {
+                        cards = Arrays.copyOf(cards, cards.length * 2);
+                    }
+                    Main.CardData card = catalog.card(reader.ids.get(resolved));
+                    cards[resolved] = (card != null) ? catalog.influenceIndexOf(card) : -1;
+                }
+                int handIndex = indexInHand(match.getCurrentHand(), cards[reader.card]);
+                boolean applied;
+                if (handIndex < 0) {
+                    applied = false;
+                } else if (reader.type == ReplayLog.PLAY) {
+                    applied = match.playCard(handIndex, reader.mode, reader.target) == MatchState.PlayResult.OK;
+                } else {
+                    applied = match.discard(handIndex);
+                }
+                actions++;
+                if (!applied) {
+                    mismatch = "бой " + match.currentBattle + ", раунд " + match.currentRound + ": ход картой "
+                            + reader.ids.get(reader.card) + " не повторяется";
+                }
+            } else if (reader.type == ReplayLog.END_TURN) {
+                match.endTurn();
+                actions++;
+            } else {
+                Main.CreatureState winner = match.resolveBattle();
+                int winnerSide = (winner == match.creature1State) ? 1 : 2;
+                BattlePayout.Result payout = match.settleBattle(winner);
+                battles++;
+                if (winnerSide != reader.winner || payout.player1NetProfit() != reader.player1NetProfit
+                        || payout.player2NetProfit() != reader.player2NetProfit) {
+                    mismatches++;
+                    if (firstMismatch == null) {
+                        firstMismatch = "бой " + match.currentBattle + ": записано " + reader.winner + " ("
+                                + reader.player1NetProfit + "/" + reader.player2NetProfit + "), получилось "
+                                + winnerSide + " (" + payout.player1NetProfit() + "/" + payout.player2NetProfit() + ")";
+                    }
+                }
+                match.advanceBattle();
+            }
+            if (mismatch != null) {
+                // Состояние разошлось с записью, дальше сравнивать не с чем
+                return new Result(deals, actions, battles, mismatches + 1,
+                        (firstMismatch != null) ? firstMismatch : mismatch, reader.truncated());
+            }
+        }
+        return new Result(deals, actions, battles, mismatches, firstMismatch, reader.truncated());
+    }
+
+    private static int indexInHand(Hand hand, int card) {
+        if (card < 0) {
+            return -1;
+        }
+        for (int i = 0; i < hand.size(); i++) {
+            if (hand.get(i) == card) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Запуск из консоли: {@code ReplayPlayer файл-или-папка...}; из папок берутся все *.replay.
+     */
+    public static void main(String[] args) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            if (Files.isDirectory(Path.of(arg))) {
+                try (Stream<Path> list = Files.list(Path.of(arg))) {
+                    list.filter(p -> p.getFileName().toString().endsWith(".replay")).sorted().forEach(files::add);
+                }
+            } else {
+                files.add(Path.of(arg));
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("Использование: ReplayPlayer файл-или-папка...");
+            return;
+        }
+
+        Result total = EMPTY;
+        long start = System.nanoTime();
+        for (Path file : files) {
+            Result result;
+            try {
+                result = play(file);
+            } catch (IOException e) {
+                System.out.println(file + ": " + e.getMessage());
+                continue;
+            }
+            total = total.plus(result);
+            if (result.mismatches() > 0 || result.truncated()) {
+                System.out.println(file + ": расхождений " + result.mismatches()
+                        + (result.truncated() ? ", журнал оборван" : "")
+                        + (result.firstMismatch() != null ? ", первое - " + result.firstMismatch() : ""));
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("Журналов: %d, раздач: %d, ходов: %d, боев: %d (%.0f ходов в секунду)%n",
+                files.size(), total.deals(), total.actions(), total.battles(), total.actions() / seconds);
+        System.out.printf("Расхождений: %d%n", total.mismatches());
+    }
+}
@@ -0,0 +1,72 @@
+package yermakov.oleksii;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Таблица транспозиций фиксированного размера без блокировок: хеш позиции -> 64 бита данных.
+ * Одну таблицу могут делить потоки поиска и расчета шансов.
+ * <p>
+ * Запись - пара (хеш XOR данные, данные) в соседних ячейках. Если два потока пишут одну запись
+ * одновременно и пара получилась из разных записей, проверка XOR при чтении не сойдется и запись
+ * считается отсутствующей. Коллизии индексов решаются заменой: таблица "с потерями", как и положено кэшу.
+ */
+public final class TranspositionTable {
+
+    private final AtomicLongArray slots;
+    private final int mask;
+
+    /**
+     * @param minEntries размер округляется вверх до степени двойки
+     */
+    public TranspositionTable(int minEntries) {
+        int entries = Integer.highestOneBit(Math.max(2, minEntries) - 1) << 1;
+        this.slots = new AtomicLongArray(entries * 2);
+        this.mask = entries - 1;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return данные для хеша или missing, если записи нет
+     */
+    public long get(long hash, long missing) {
+        int i = index(hash);
+        long data = slots.getOpaque(i + 1);
+        long check = slots.getOpaque(i);
+        return ((check ^ data) == hash) ? data : missing;
+    }
+
+    public void put(long hash, long data) {
+        int i = index(hash);
+        slots.setOpaque(i + 1, data);
+        slots.setOpaque(i, hash ^ data);
+    }
+
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.setOpaque(i, 0L);
+        }
+    }
+
+    private int index(long hash) {
+        // Младшие биты хеша Зобриста равномерны; запись занимает две ячейки
+        return ((int) hash & mask) << 1;
+    }
+
+    /**
+     * Статистика узла поиска в одном long: посещения (старшие 32 бита) и сумма наград (float, младшие).
+     */
+    public static long packStats(int visits, float rewardSum) {
+        return ((long) visits << 32) | (Float.floatToRawIntBits(rewardSum) & 0xFFFFFFFFL);
+    }
+
+    public static int visits(long stats) {
+        return (int) (stats >>> 32);
+    }
+
+    public static float rewardSum(long stats) {
+        return Float.intBitsToFloat((int) stats);
+    }
+}
@@ -0,0 +1,129 @@
+package yermakov.oleksii;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Запись и чтение компактных бинарных форматов ({@link MatchSnapshot}, {@link ReplayLog}): varint по 7 бит
+ * (младшие группы первыми), знаковые числа - zigzag, строки - длина varint и UTF-8, int/long - big-endian.
+ */
+final class Varints {
+
+    private Varints() {
+    }
+
+    static int readVarint(ByteBuffer in) {
+        return (int) readVarlong(in);
+    }
+
+    static long readVarlong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Слишком длинный varint");
+    }
+
+    static int readSigned(ByteBuffer in) {
+        int zigzag = readVarint(in);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    /**
+     * Массив байт с длиной varint (пара к {@link Output#writeBytes}).
+     */
+    static byte[] readBytes(ByteBuffer in) {
+        byte[] bytes = new byte[readVarint(in)];
+        in.get(bytes);
+        return bytes;
+    }
+
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[readVarint(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Растущий буфер: запись целиком собирается в памяти, в файл уходит одним вызовом.
+     */
+    static final class Output {
+        private byte[] buf = new byte[256];
+        private int size;
+
+        void writeInt(int value) {
+            ensure(4);
+            buf[size++] = (byte) (value >>> 24);
+            buf[size++] = (byte) (value >>> 16);
+            buf[size++] = (byte) (value >>> 8);
+            buf[size++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void writeVarint(int value) {
+            writeVarlong(value & 0xFFFFFFFFL);
+        }
+
+        void writeVarlong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        void writeSigned(int value) {
+            writeVarint((value << 1) ^ (value >> 31));
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeBytes(bytes, bytes.length);
+        }
+
+        /**
+         * Первые length байт bytes с длиной varint.
+         */
+        void writeBytes(byte[] bytes, int length) {
+            writeVarint(length);
+            ensure(length);
+            System.arraycopy(bytes, 0, buf, size, length);
+            size += length;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Откатывает запись до длины size (например, неподтвержденные события).
+         */
+        void truncate(int size) {
+            this.size = size;
+        }
+
+        ByteBuffer buffer() {
+            return ByteBuffer.wrap(buf, 0, size);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package yermakov.oleksii;
+
+import java.util.random.RandomGenerator;
+import java.util.stream.IntStream;
+
+/**
+ * Оценка шанса победы методом Монте-Карло: прогоняет N боев через {@link BattleEngine}
+ * параллельно на всех ядрах. Каждый воркер бросает кубики из своего потока случайных чисел,
+ * отщепленного от общего генератора, поэтому при одинаковом seed результат повторяется.
+ */
+public class WinProbabilityEstimator {
+
+    // z для 95% доверительного интервала
+    private static final double Z_95 = 1.959963984540054;
+
+    /**
+     * Результат оценки. Вероятности указаны для первого существа.
+     */
+    public record Estimate(long battles, long creature1Wins, double winProbability,
+                           double lowerBound, double upperBound) {
+
+        /** Точное значение (например, из {@link BattleSolver}) без погрешности. */
+        public static Estimate exact(double winProbability) {
+            return new Estimate(0, 0, winProbability, winProbability, winProbability);
+        }
+
+        public double creature2WinProbability() {
+            return 1.0 - winProbability;
+        }
+
+        /** Половина ширины доверительного интервала. */
+        public double margin() {
+            return (upperBound - lowerBound) / 2.0;
+        }
+    }
+
+    private final Main.GameConfig config;
+    private final DamageTable damageTable;
+    private final int workers;
+
+    public WinProbabilityEstimator(Main.GameConfig config) {
+        this(config, null);
+    }
+
+    public WinProbabilityEstimator(Main.GameConfig config, DamageTable damageTable) {
+        this(config, damageTable, Runtime.getRuntime().availableProcessors());
+    }
+
+    public WinProbabilityEstimator(Main.GameConfig config, DamageTable damageTable, int workers) {
+        this.config = config;
+        this.damageTable = damageTable;
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Прогоняет battles боев между копиями переданных существ. Сами состояния не меняются.
+     */
+    public Estimate estimate(Main.CreatureState creature1, Main.CreatureState creature2, long battles) {
+        return estimate(creature1, creature2, battles, DiceUtils.newSeed());
+    }
+
+    /**
+     * Воспроизводимая оценка: одинаковый seed и число воркеров дают одинаковый результат.
+     */
+    public Estimate estimate(Main.CreatureState creature1, Main.CreatureState creature2, long battles, long seed) {
+        if (battles < 1) {
+            throw new IllegalArgumentException("battles must be positive: " + battles);
+        }
+        // Снимки на случай, если исходные состояния меняются в другом потоке
+        Main.CreatureState c1 = new Main.CreatureState(creature1);
+        Main.CreatureState c2 = new Main.CreatureState(creature2);
+        DamageTable table = (damageTable != null && damageTable.profileOf(c1) >= 0 && damageTable.profileOf(c2) >= 0)
+                ? damageTable : DamageTable.forCreatures(c1, c2);
+
+        // split() не потокобезопасен, поэтому потоки воркеров готовятся заранее
+        RandomGenerator.SplittableGenerator root = DiceUtils.newGenerator(seed);
+        RandomGenerator[] streams = new RandomGenerator[workers];
+        for (int w = 0; w < workers; w++) {
+            streams[w] = root.split();
+        }
+
+        long perWorker = battles / workers;
+        long remainder = battles % workers;
+
+        long wins = IntStream.range(0, workers)
+                .parallel()
+                .mapToLong(w -> runBattles(table, streams[w], c1, c2, perWorker + (w < remainder ? 1 : 0)))
+                .sum();
+
+        return toEstimate(battles, wins);
+    }
+
+    private long runBattles(DamageTable table, RandomGenerator rng, Main.CreatureState c1, Main.CreatureState c2, long count) {
+        // Один движок на воркер: reset() не трогает исходные состояния и не выделяет память
+        BattleEngine engine = new BattleEngine(config, table, rng, null);
+        long wins = 0;
+        for (long i = 0; i < count; i++) {
+            engine.reset(c1, c2);
+            if (engine.resolve() == BattleEngine.CREATURE_1) {
+                wins++;
+            }
+        }
+        return wins;
+    }
+
+    /**
+     * Интервал Уилсона: в отличие от нормального приближения не выходит за [0, 1]
+     * и ведет себя разумно при шансах около 0% и 100%.
+     */
+    static Estimate toEstimate(long battles, long wins) {
+        double p = (double) wins / battles;
+        double z2 = Z_95 * Z_95;
+        double denominator = 1.0 + z2 / battles;
+        double center = (p + z2 / (2.0 * battles)) / denominator;
+        double halfWidth = Z_95 * Math.sqrt(p * (1.0 - p) / battles + z2 / (4.0 * battles * battles)) / denominator;
+        return new Estimate(battles, wins, p,
+                Math.max(0.0, center - halfWidth), Math.min(1.0, center + halfWidth));
+    }
+}
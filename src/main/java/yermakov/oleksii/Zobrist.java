@@ -0,0 +1,91 @@
+package yermakov.oleksii;
+
+/**
+ * Ключи Зобриста для хеша позиции {@link MatchState}.
+ * <p>
+ * Значения признаков (статы, ставки, раунд) не ограничены сверху, поэтому вместо таблицы случайных чисел
+ * ключ (признак, значение) вычисляется перемешиванием splitmix64 - те же случайные ключи, только без таблицы.
+ * Руки и колода - мультимножества карт: ключи карт в зоне складываются, а не XOR-ятся, чтобы две одинаковые
+ * карты не гасили друг друга. Добавить или убрать карту - одно сложение или вычитание.
+ */
+final class Zobrist {
+
+    // Признаки позиции
+    static final int PLAYER = 1;
+    static final int ROUND = 2;
+    static final int TURN_POINTS = 3;
+    static final int BATTLE = 4;
+    static final int SCORE_1 = 5;
+    static final int SCORE_2 = 6;
+    static final int OPPONENT_HAND_SIZE = 7;
+    // Ставки: один признак, ячейка матрицы BetLedger - в старших битах значения
+    static final int BETS = 8;
+    // Статы существ: CREATURE + (сторона - 1) * CREATURE_FIELDS + поле
+    static final int CREATURE = 16;
+    private static final int CREATURE_FIELDS = 9;
+
+    // Соли зон: суммы ключей карт перемешиваются каждая со своей солью
+    static final long HAND_1 = 0x243F6A8885A308D3L;
+    static final long HAND_2 = 0x13198A2E03707344L;
+    static final long DECK = 0xA4093822299F31D0L;
+    // Все, чего игрок не видит: рука соперника вместе с колодой
+    static final long UNSEEN = 0x082EFA98EC4E6C89L;
+    // Отличает узел "ход закончен" от позиции, из которой его закончили
+    static final long END_TURN = 0x452821E638D01377L;
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final long VALUE_GAMMA = 0xBF58476D1CE4E5B9L;
+
+    private Zobrist() {
+    }
+
+    /**
+     * Финализатор splitmix64.
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    static long key(int feature, long value) {
+        return mix(mix(SEED * feature) + value * VALUE_GAMMA);
+    }
+
+    /**
+     * Ключ карты для суммы зоны. Зависит только от id, поэтому одинаков во всех каталогах и процессах.
+     */
+    static long card(Main.CardData card) {
+        return mix(SEED ^ card.id.hashCode());
+    }
+
+    /**
+     * Вклад суммы ключей зоны в хеш.
+     */
+    static long zone(long salt, long cardKeys) {
+        return mix(cardKeys + salt);
+    }
+
+    static long bet(int cell, int amount) {
+        return key(BETS, ((long) cell << 32) | (amount & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Ключ всех изменяемых статов существа на стороне side (1 или 2).
+     */
+    static long creature(int side, Main.CreatureState c) {
+        if (c == null) {
+            return 0L;
+        }
+        int base = CREATURE + (side - 1) * CREATURE_FIELDS;
+        return key(base, c.baseCard.id.hashCode())
+                ^ key(base + 1, c.currentHealth)
+                ^ key(base + 2, c.currentAttack)
+                ^ key(base + 3, c.currentDefense)
+                ^ key(base + 4, c.currentRatePoints)
+                ^ key(base + 5, c.bonusRatePoints)
+                ^ key(base + 6, c.bettingBlockedUntilRound)
+                ^ key(base + 7, c.magicBarrier)
+                ^ key(base + 8, c.isStunned ? 1 : 0);
+    }
+}
@@ -0,0 +1,207 @@
+package yermakov.oleksii;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link BattleEngine} против правил прежнего Main.playBattleStep(): те же кубики, что бросил движок
+ * (их отдает слушатель), прогоняются через перенесенный сюда старый код, состояние сверяется после каждого хода.
+ * Сломанный движок может зациклить бой, поэтому тест прерывается по времени.
+ */
+@Timeout(value = 60, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+class BattleEngineTest {
+
+    private static Catalog catalog;
+
+    @BeforeAll
+    static void loadCatalog() throws IOException {
+        catalog = Catalog.loadBundled();
+    }
+
+    /**
+     * Кубики последнего хода движка.
+     */
+    private static final class RollCapture implements BattleEngine.BattleListener {
+        int[] rolls;
+        boolean stunSkip;
+
+        @Override
+        public void onStunSkip(int attacker) {
+            stunSkip = true;
+        }
+
+        @Override
+        public void onAttack(int attacker, int[] rolls, int diceCount,
+                             int rawDamage, int damageReduction, int finalDamage, int defenderHealth) {
+            this.rolls = Arrays.copyOf(rolls, diceCount);
+        }
+    }
+
+    @Test
+    void engineFollowsBaselineRules() {
+        Main.GameConfig config = catalog.config;
+        RandomGenerator stats = DiceUtils.newGenerator(1);
+        List<Main.CardData> creatures = catalog.creatures;
+        int battles = 0;
+        for (int i = 0; i < creatures.size(); i++) {
+            for (int j = 0; j < creatures.size(); j++) {
+                for (int variant = 0; variant < 20; variant++) {
+                    Main.CreatureState c1 = buffed(creatures.get(i), stats, variant);
+                    Main.CreatureState c2 = buffed(creatures.get(j), stats, variant);
+                    assertSameBattle(config, c1, c2, i * 1000L + j * 20 + variant);
+                    battles++;
+                }
+            }
+        }
+        assertEquals(creatures.size() * creatures.size() * 20, battles);
+    }
+
+    /**
+     * Шаблон существа; кроме варианта 0 - со случайными статами, чтобы пройти все ступени кубиков и защиты.
+     */
+    private static Main.CreatureState buffed(Main.CardData card, RandomGenerator rng, int variant) {
+        Main.CreatureState c = new Main.CreatureState(card);
+        if (variant > 0) {
+            c.currentAttack = rng.nextInt(0, 16);
+            c.currentDefense = rng.nextInt(0, 12);
+            c.currentHealth = rng.nextInt(1, 30);
+            c.magicBarrier = rng.nextInt(0, 3);
+            c.isStunned = rng.nextInt(8) == 0;
+        }
+        return c;
+    }
+
+    private static void assertSameBattle(Main.GameConfig config, Main.CreatureState c1, Main.CreatureState c2, long seed) {
+        RollCapture capture = new RollCapture();
+        BattleEngine engine = new BattleEngine(config, catalog.damageTable, DiceUtils.newGenerator(seed), c1, c2, capture);
+        Main.CreatureState[] ref = {new Main.CreatureState(c1), new Main.CreatureState(c2)};
+        int attacker = engine.getAttackerSide();
+        if (c1.currentAttack != c2.currentAttack) {
+            assertEquals((c1.currentAttack > c2.currentAttack) ? BattleEngine.CREATURE_1 : BattleEngine.CREATURE_2,
+                    attacker, "инициатива");
+        }
+
+        boolean finished = false;
+        for (int step = 0; step < 10_000 && !finished; step++) {
+            capture.rolls = null;
+            capture.stunSkip = false;
+            finished = engine.step();
+            assertEquals(ref[attacker].isStunned, capture.stunSkip, "пропуск хода, seed " + seed);
+            boolean defenderDown = baselineStep(config, ref[attacker], ref[1 - attacker], capture.rolls);
+            for (int side = 0; side < 2; side++) {
+                String where = "seed " + seed + ", ход " + step + ", сторона " + side;
+                assertEquals(ref[side].currentHealth, engine.getHealth(side), where);
+                assertEquals(ref[side].magicBarrier, engine.getBarrier(side), where);
+                assertEquals(ref[side].isStunned, engine.isStunned(side), where);
+            }
+            assertEquals(defenderDown, finished, "seed " + seed + ", ход " + step);
+            if (finished) {
+                assertEquals(attacker, engine.getWinnerSide());
+            }
+            attacker = 1 - attacker;
+        }
+        assertTrue(finished, "бой не кончился, seed " + seed);
+    }
+
+    /**
+     * Старый Main.playBattleStep() без UI; кубики берутся из rolls (null - ход пропущен из-за оглушения).
+     * @return true, если защитник повержен
+     */
+    private static boolean baselineStep(Main.GameConfig config, Main.CreatureState battleAttacker,
+                                        Main.CreatureState battleDefender, int[] rolls) {
+        if (battleAttacker.isStunned) {
+            assertEquals(null, rolls, "оглушенный не бросает кубики");
+            battleAttacker.isStunned = false;
+            return false;
+        }
+
+        assertNotNull(rolls, "неоглушенный бросает кубики");
+        int diceCount = BattleEngine.getDiceCount(config, battleAttacker.currentAttack);
+        assertEquals(diceCount, rolls.length, "число кубиков");
+        List<Integer> successfulDice = new ArrayList<>();
+        for (int i = 0; i < diceCount; i++) {
+            int roll = rolls[i];
+            if (battleAttacker.missChance != null && battleAttacker.missChance.contains(roll)) {
+                continue;
+            }
+            if (battleAttacker.stunChance != null && battleAttacker.stunChance.contains(roll)) {
+                battleDefender.isStunned = true;
+            }
+            successfulDice.add(roll);
+        }
+
+        if (battleDefender.magicBarrier > 0 && !successfulDice.isEmpty()) {
+            int maxDie = Collections.max(successfulDice);
+            successfulDice.remove(Integer.valueOf(maxDie));
+            battleDefender.magicBarrier--;
+        }
+
+        int rawDamage = successfulDice.stream().mapToInt(Integer::intValue).sum();
+        int damageReduction = BattleEngine.getDefenseBlock(config, battleDefender.currentDefense);
+        int finalDamage = Math.max(0, rawDamage - damageReduction);
+        battleDefender.currentHealth -= finalDamage;
+
+        if (battleAttacker.vampirism > 0 && finalDamage > 0) {
+            battleAttacker.currentHealth += battleAttacker.vampirism;
+        }
+        return battleDefender.currentHealth <= 0;
+    }
+
+    @Test
+    void reusedEngineRecordAndPoolAgreeWithFreshEngine() {
+        Main.GameConfig config = catalog.config;
+        // Один и тот же поток бросков: переиспользуемый движок, движок на пуле и новый движок на каждый бой
+        BattleEngine reused = new BattleEngine(config, catalog.damageTable, DiceUtils.newGenerator(99), null);
+        BattleEngine pooled = new BattleEngine(config, catalog.damageTable, DiceUtils.newGenerator(99), null);
+        RandomGenerator freshRng = DiceUtils.newGenerator(99);
+        CreaturePool pool = new CreaturePool();
+        for (Main.CardData a : catalog.creatures) {
+            for (Main.CardData b : catalog.creatures) {
+                Main.CreatureState c1 = new Main.CreatureState(a);
+                Main.CreatureState c2 = new Main.CreatureState(b);
+                String pair = a.id + " vs " + b.id;
+                int winner = new BattleEngine(config, catalog.damageTable, freshRng, c1, c2, null).resolve();
+
+                reused.reset(c1, c2);
+                assertEquals(winner, reused.resolve(), pair);
+                pool.clear();
+                pooled.reset(pool, pool.add(c1), pool.add(c2));
+                assertEquals(winner, pooled.resolve(), pair);
+
+                for (long seed = 0; seed < 5; seed++) {
+                    BattleEngine fresh = new BattleEngine(config, catalog.damageTable, DiceUtils.newGenerator(seed),
+                            c1, c2, null);
+                    int seededWinner = fresh.resolve();
+                    BattleRecord record = BattleRecord.record(config, catalog.damageTable, seed, c1, c2);
+                    assertEquals(seededWinner, record.getWinnerSide(), pair + ", seed " + seed);
+                    assertEquals(fresh.getStepCount(), record.getStepCount(), pair + ", seed " + seed);
+                    BattleEngine ownTables = new BattleEngine(config, null, DiceUtils.newGenerator(seed), c1, c2, null);
+                    assertEquals(seededWinner, ownTables.resolve(), "таблицы под бой дают тот же исход");
+                }
+            }
+        }
+    }
+
+    @Test
+    void recordStopsBattleThatCannotEnd() {
+        Main.CreatureState c1 = new Main.CreatureState(catalog.creatures.get(0));
+        Main.CreatureState c2 = new Main.CreatureState(catalog.creatures.get(1));
+        c1.missChance = List.of(1, 2, 3, 4, 5, 6);
+        c2.missChance = c1.missChance;
+        assertThrows(IllegalStateException.class,
+                () -> BattleRecord.record(catalog.config, DamageTable.forCreatures(c1, c2), 1, c1, c2));
+    }
+}
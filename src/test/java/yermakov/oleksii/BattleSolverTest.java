@@ -0,0 +1,89 @@
+package yermakov.oleksii;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.random.RandomGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Точные шансы {@link BattleSolver} против Монте-Карло {@link WinProbabilityEstimator} на тех же существах.
+ */
+class BattleSolverTest {
+
+    private static final long BATTLES = 200_000;
+    // Допуск - 2.5 полуширины 95% интервала (около 5 сигм): на сотне пар случайный промах не ждем
+    private static final double TOLERANCE = 2.5;
+
+    private static Catalog catalog;
+
+    @BeforeAll
+    static void loadCatalog() throws IOException {
+        catalog = Catalog.loadBundled();
+    }
+
+    @Test
+    void solverAgreesWithMonteCarloOnBundledPairs() {
+        BattleSolver solver = new BattleSolver(catalog.config, catalog.damageTable);
+        WinProbabilityEstimator estimator = new WinProbabilityEstimator(catalog.config, catalog.damageTable);
+        long seed = 0;
+        for (Main.CardData a : catalog.creatures) {
+            for (Main.CardData b : catalog.creatures) {
+                Main.CreatureState c1 = new Main.CreatureState(a);
+                Main.CreatureState c2 = new Main.CreatureState(b);
+                if (c1.vampirism > 0 && c2.vampirism > 0) {
+                    // Слои зацикливаются - решатель должен отказаться, а не уйти в бесконечный расчет
+                    assertThrows(IllegalStateException.class, () -> solver.solve(c1, c2));
+                    continue;
+                }
+                assertAgrees(solver, estimator, c1, c2, seed++);
+            }
+        }
+    }
+
+    @Test
+    void solverAgreesWithMonteCarloOnBuffedCreatures() {
+        BattleSolver solver = new BattleSolver(catalog.config);
+        WinProbabilityEstimator estimator = new WinProbabilityEstimator(catalog.config);
+        RandomGenerator rng = DiceUtils.newGenerator(7);
+        int solved = 0;
+        for (int variant = 0; variant < 60; variant++) {
+            Main.CreatureState c1 = buffed(rng);
+            Main.CreatureState c2 = buffed(rng);
+            try {
+                solver.solve(c1, c2);
+            } catch (IllegalStateException e) {
+                // Вампиризм у обоих: решатель честно отказывается, это не ошибка
+                continue;
+            }
+            assertAgrees(solver, estimator, c1, c2, 1000 + variant);
+            solved++;
+        }
+        assertTrue(solved > 30, "решено вариантов: " + solved);
+    }
+
+    private static Main.CreatureState buffed(RandomGenerator rng) {
+        Main.CreatureState c = new Main.CreatureState(catalog.creatures.get(rng.nextInt(catalog.creatures.size())));
+        c.currentAttack = rng.nextInt(0, 16);
+        c.currentDefense = rng.nextInt(0, 12);
+        c.currentHealth = rng.nextInt(1, 40);
+        c.magicBarrier = rng.nextInt(0, 3);
+        c.isStunned = rng.nextInt(6) == 0;
+        return c;
+    }
+
+    private static void assertAgrees(BattleSolver solver, WinProbabilityEstimator estimator,
+                                     Main.CreatureState c1, Main.CreatureState c2, long seed) {
+        String pair = c1.baseCard.id + " vs " + c2.baseCard.id + ", seed " + seed;
+        BattleSolver.Result exact = solver.solve(c1, c2);
+        assertEquals(1.0, exact.creature1WinProbability() + exact.creature2WinProbability(), 1e-9, pair);
+
+        WinProbabilityEstimator.Estimate estimate = estimator.estimate(c1, c2, BATTLES, seed);
+        double allowed = Math.max(TOLERANCE * estimate.margin(), 1e-3);
+        assertEquals(estimate.winProbability(), exact.creature1WinProbability(), allowed, pair);
+    }
+}
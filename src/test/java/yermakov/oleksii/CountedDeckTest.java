@@ -0,0 +1,103 @@
+package yermakov.oleksii;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CountedDeckTest {
+
+    private static Catalog catalog;
+
+    @BeforeAll
+    static void loadCatalog() throws IOException {
+        catalog = Catalog.loadBundled();
+    }
+
+    private static List<Integer> drawAll(CountedDeck deck) {
+        List<Integer> order = new ArrayList<>();
+        while (!deck.isEmpty()) {
+            order.add(deck.draw());
+        }
+        return order;
+    }
+
+    @Test
+    void drawsEveryCopyExactlyOnce() {
+        CountedDeck deck = new CountedDeck();
+        deck.reset(catalog, 1);
+        int[] drawn = new int[deck.templateCount()];
+        int total = deck.size();
+        for (int card : drawAll(deck)) {
+            drawn[card]++;
+        }
+        int sum = 0;
+        for (int i = 0; i < drawn.length; i++) {
+            assertEquals(catalog.influenceCards.get(i).getCount(), drawn[i], catalog.influenceCards.get(i).id);
+            sum += drawn[i];
+        }
+        assertEquals(total, sum);
+        assertThrows(IllegalStateException.class, deck::draw);
+    }
+
+    @Test
+    void orderDependsOnlyOnSeed() {
+        CountedDeck deck = new CountedDeck();
+        deck.reset(catalog, 42);
+        CountedDeck copy = new CountedDeck();
+        copy.copyFrom(deck);
+        deck.draw();
+        deck.draw();
+        CountedDeck midCopy = new CountedDeck();
+        midCopy.copyFrom(deck);
+
+        List<Integer> rest = drawAll(deck);
+        assertEquals(rest, drawAll(midCopy), "копия посреди колоды тянет те же карты");
+
+        CountedDeck again = new CountedDeck();
+        again.reset(catalog, 42);
+        assertEquals(drawAll(again), drawAll(copy), "тот же seed - тот же порядок");
+
+        CountedDeck reseeded = new CountedDeck();
+        reseeded.reset(catalog, 42);
+        reseeded.reseed(43);
+        again.reset(catalog, 42);
+        assertNotEquals(drawAll(again), drawAll(reseeded), "новый seed - новый порядок");
+    }
+
+    @Test
+    void returnedCardsKeepCountsConsistent() {
+        CountedDeck deck = new CountedDeck();
+        deck.reset(catalog, 9);
+        int[] expected = new int[deck.templateCount()];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = deck.remaining(i);
+        }
+        Random random = new Random(5);
+        List<Integer> out = new ArrayList<>();
+        for (int k = 0; k < 100_000; k++) {
+            if (!deck.isEmpty() && (out.isEmpty() || random.nextBoolean())) {
+                int card = deck.draw();
+                expected[card]--;
+                out.add(card);
+            } else {
+                int card = out.remove(out.size() - 1);
+                deck.add(card);
+                expected[card]++;
+            }
+        }
+        int size = 0;
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], deck.remaining(i));
+            size += expected[i];
+        }
+        assertEquals(size, deck.size());
+    }
+}
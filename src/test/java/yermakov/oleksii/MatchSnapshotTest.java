@@ -0,0 +1,118 @@
+package yermakov.oleksii;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Снимок матча: загруженный матч совпадает с исходным и дальше играется точно так же.
+ */
+class MatchSnapshotTest {
+
+    private static Catalog catalog;
+
+    @BeforeAll
+    static void loadCatalog() throws IOException {
+        catalog = Catalog.loadBundled();
+    }
+
+    /**
+     * Играет steps случайных ходов от seed (с боями и новыми раздачами).
+     * @return след партии: хеш после каждого хода и итоги боев
+     */
+    private static String play(MatchState match, long seed, int steps) {
+        RandomGenerator rng = DiceUtils.newGenerator(seed);
+        List<MatchState.Action> actions = new ArrayList<>();
+        StringBuilder trace = new StringBuilder();
+        for (int step = 0; step < steps && !match.isDeckEmpty(); step++) {
+            match.legalActions(actions);
+            MatchState.Action action = actions.get(rng.nextInt(actions.size()));
+            boolean battleReady = false;
+            if (action.type() == MatchState.Action.Type.END_TURN) {
+                battleReady = match.endTurn();
+            } else {
+                match.apply(action);
+            }
+            trace.append(Long.toHexString(match.hash())).append(',');
+            if (battleReady) {
+                Main.CreatureState winner = match.resolveBattle();
+                match.settleBattle(winner);
+                trace.append((winner == match.creature1State) ? "W1 " : "W2 ")
+                        .append(match.player1TotalScore).append('/').append(match.player2TotalScore).append(',');
+                if (match.isLastBattle()) break;
+                match.advanceBattle();
+                match.startGame(seed + step);
+            }
+        }
+        return trace.toString();
+    }
+
+    @Test
+    void restoredMatchPlaysOnIdentically() throws IOException {
+        RandomGenerator rng = DiceUtils.newGenerator(5);
+        for (int game = 0; game < 500; game++) {
+            MatchState match = new MatchState(catalog);
+            match.startGame(game);
+            play(match, game * 31L, rng.nextInt(40));
+
+            byte[] snapshot = MatchSnapshot.toBytes(match);
+            MatchState restored = MatchSnapshot.fromBytes(catalog, snapshot);
+            assertEquals(match.hash(), restored.hash(), "партия " + game);
+            assertArrayEquals(snapshot, MatchSnapshot.toBytes(restored), "партия " + game);
+            assertEquals(match.creature1Stack, restored.creature1Stack);
+            assertEquals(match.creature2Stack, restored.creature2Stack);
+            assertEquals(play(match, game * 7L, 200), play(restored, game * 7L, 200), "партия " + game);
+        }
+    }
+
+    @Test
+    void truncatedSnapshotIsRejected() {
+        MatchState match = new MatchState(catalog);
+        match.startGame(1);
+        play(match, 3, 15);
+        byte[] snapshot = MatchSnapshot.toBytes(match);
+        for (int length = 0; length < snapshot.length; length++) {
+            byte[] cut = Arrays.copyOf(snapshot, length);
+            assertThrows(IOException.class, () -> MatchSnapshot.fromBytes(catalog, cut), "длина " + length);
+        }
+    }
+
+    @Test
+    void savedFileLoadsBack(@TempDir Path dir) throws IOException {
+        MatchState match = new MatchState(catalog);
+        match.startGame(2);
+        play(match, 4, 25);
+        Path path = dir.resolve("match.autosave");
+        MatchSnapshot.save(path, MatchSnapshot.toBytes(match));
+        assertEquals(match.hash(), MatchSnapshot.load(path, catalog).hash());
+    }
+
+    @Test
+    void cardsAreMatchedByIdInReorderedCatalog() throws IOException {
+        MatchState match = new MatchState(catalog);
+        match.startGame(3);
+        play(match, 5, 10);
+        List<Main.CardData> reversed = new ArrayList<>(catalog.influenceCards);
+        Collections.reverse(reversed);
+        Catalog reordered = Catalog.loadBundled().withInfluenceCards(reversed);
+
+        MatchState restored = MatchSnapshot.fromBytes(reordered, MatchSnapshot.toBytes(match));
+        assertEquals(match.player1Hand.size(), restored.player1Hand.size());
+        for (int i = 0; i < match.player1Hand.size(); i++) {
+            assertEquals(match.card(match.player1Hand.get(i)).id, restored.card(restored.player1Hand.get(i)).id);
+        }
+        assertEquals(match.influenceDeck.size(), restored.influenceDeck.size());
+    }
+}
@@ -0,0 +1,123 @@
+package yermakov.oleksii;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Хеш позиции ({@link Zobrist}): инкрементальный после каждого хода совпадает с посчитанным с нуля,
+ * одна позиция, полученная разным порядком карт, дает один хеш.
+ */
+class MatchStateTest {
+
+    private static Catalog catalog;
+
+    @BeforeAll
+    static void loadCatalog() throws IOException {
+        catalog = Catalog.loadBundled();
+    }
+
+    @Test
+    void incrementalHashMatchesRehash() {
+        MatchState match = new MatchState(catalog);
+        MatchState copy = new MatchState(catalog);
+        RandomGenerator rng = DiceUtils.newGenerator(3);
+        List<MatchState.Action> actions = new ArrayList<>();
+        int checks = 0;
+        for (int game = 0; game < 500; game++) {
+            match.startGame(game);
+            for (int step = 0; step < 60 && !match.isDeckEmpty(); step++) {
+                match.legalActions(actions);
+                MatchState.Action action = actions.get(rng.nextInt(actions.size()));
+                boolean battleReady = false;
+                if (action.type() == MatchState.Action.Type.END_TURN) {
+                    battleReady = match.endTurn();
+                } else {
+                    assertTrue(match.apply(action), "допустимый ход не применился: " + action);
+                }
+
+                copy.copyFrom(match, null);
+                copy.rehash();
+                assertEquals(copy.hash(), match.hash(), "партия " + game + ", ход " + step);
+
+                // Скрытые карты не входят в хеш для игрока: пересдача их не меняет
+                long seen = match.hashFor(Main.Player.PLAYER_1);
+                copy.shuffleHiddenCards(Main.Player.PLAYER_1, rng);
+                assertEquals(seen, copy.hashFor(Main.Player.PLAYER_1), "партия " + game + ", ход " + step);
+                checks++;
+
+                if (battleReady) {
+                    match.settleBattle(match.resolveBattle());
+                    break;
+                }
+            }
+        }
+        assertTrue(checks > 5000, "проверок: " + checks);
+    }
+
+    @Test
+    void sameCardsInDifferentOrderGiveSamePosition() {
+        MatchState match = new MatchState(catalog);
+        List<MatchState.Action> actions = new ArrayList<>();
+        int transpositions = 0;
+        for (int game = 0; game < 500; game++) {
+            match.startGame(game);
+            match.legalActions(actions);
+            MatchState.Action first = null;
+            MatchState.Action second = null;
+            for (MatchState.Action action : actions) {
+                if (action.type() != MatchState.Action.Type.PLAY) continue;
+                if (first == null) {
+                    first = action;
+                } else if (action.handIndex() != first.handIndex() && action.mode() == first.mode()) {
+                    second = action;
+                    break;
+                }
+            }
+            if (second == null) continue;
+
+            MatchState x = new MatchState(catalog);
+            MatchState y = new MatchState(catalog);
+            x.copyFrom(match, null);
+            y.copyFrom(match, null);
+            boolean xPlayed = x.apply(first) && x.apply(afterRemoval(second, first));
+            boolean yPlayed = y.apply(second) && y.apply(afterRemoval(first, second));
+            if (!xPlayed || !yPlayed) continue;
+            // Не все карты перестановочны (баф может зависеть от текущих статов): хеши равны ровно тогда,
+            // когда равны позиции. Порядок карт в стопках в позицию не входит.
+            boolean samePosition = Arrays.equals(sortedSnapshot(x), sortedSnapshot(y));
+            assertEquals(samePosition, x.hash() == y.hash(), "партия " + game);
+            if (samePosition) {
+                transpositions++;
+            }
+        }
+        assertTrue(transpositions > 50, "перестановок: " + transpositions);
+    }
+
+    private static byte[] sortedSnapshot(MatchState match) {
+        Comparator<MatchState.PlayedCard> order = Comparator
+                .comparing((MatchState.PlayedCard played) -> played.card().id)
+                .thenComparing(MatchState.PlayedCard::mode)
+                .thenComparing(MatchState.PlayedCard::player);
+        match.creature1Stack.sort(order);
+        match.creature2Stack.sort(order);
+        return MatchSnapshot.toBytes(match);
+    }
+
+    /**
+     * Тот же ход после того, как из руки ушла карта хода played.
+     */
+    private static MatchState.Action afterRemoval(MatchState.Action action, MatchState.Action played) {
+        int handIndex = action.handIndex() - ((action.handIndex() > played.handIndex()) ? 1 : 0);
+        return MatchState.Action.play(handIndex, action.mode(), action.target());
+    }
+}
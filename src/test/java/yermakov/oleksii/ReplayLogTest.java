@@ -0,0 +1,146 @@
+package yermakov.oleksii;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Записанный журнал воспроизводится {@link ReplayPlayer} без расхождений, в том числе с перезагрузкой
+ * данных посреди матча и с продолжением из автосохранения на других данных.
+ */
+class ReplayLogTest {
+
+    private enum Switch { NONE, RELOAD, RESUME }
+
+    private static Catalog catalog;
+    // Другие данные: другие множители и без первых двух карт влияния
+    private static Catalog changed;
+
+    @BeforeAll
+    static void loadCatalogs() throws IOException {
+        catalog = Catalog.loadBundled();
+        Catalog other = Catalog.loadBundled();
+        other.config.REWARD_RED_MULT = 5.0;
+        other.config.REWARD_GREEN_MULT = 2.5;
+        changed = other.withInfluenceCards(new ArrayList<>(other.influenceCards.subList(2, other.influenceCards.size())));
+    }
+
+    /**
+     * Играет матч жадный против случайного и пишет его в журнал так же, как Main; после пятого хода
+     * переходит на changed способом how.
+     * @return число сыгранных боев
+     */
+    private static int record(Path path, long seed, Switch how) throws IOException {
+        RandomGenerator rng = DiceUtils.newGenerator(seed);
+        PlayerPolicy player1 = new GreedyPolicy();
+        PlayerPolicy player2 = new RandomPolicy();
+        MatchState match = new MatchState(catalog);
+        ReplayLog log = ReplayLog.create(path, catalog);
+        int turns = 0;
+        int battles = 0;
+        match:
+        while (true) {
+            long dealSeed = rng.nextLong();
+            match.startGame(dealSeed);
+            log.deal(dealSeed);
+            if (match.isDeckEmpty()) break;
+            while (true) {
+                PlayerPolicy policy = (match.currentPlayer == Main.Player.PLAYER_1) ? player1 : player2;
+                MatchState.Action action = policy.chooseAction(match, rng);
+                if (action.type() == MatchState.Action.Type.PLAY) {
+                    Main.CardData card = match.getCurrentHandCard(action.handIndex());
+                    if (match.playCard(action.handIndex(), action.mode(), action.target()) == MatchState.PlayResult.OK) {
+                        log.play(card, action.mode(), action.target());
+                        continue;
+                    }
+                } else if (action.type() == MatchState.Action.Type.DISCARD) {
+                    Main.CardData card = match.getCurrentHandCard(action.handIndex());
+                    if (match.discard(action.handIndex())) {
+                        log.discard(card);
+                        continue;
+                    }
+                }
+                boolean battleReady = match.endTurn();
+                log.endTurn();
+                if (match.isDeckEmpty()) break match;
+                log.commit();
+                if (++turns == 5 && how == Switch.RELOAD) {
+                    match = match.withCatalog(changed);
+                    log.catalogReloaded(changed);
+                } else if (turns == 5 && how == Switch.RESUME) {
+                    log.close();
+                    match = MatchSnapshot.fromBytes(changed, MatchSnapshot.toBytes(match));
+                    log = ReplayLog.append(path, changed);
+                }
+                if (battleReady) break;
+            }
+            Main.CreatureState winner = match.resolveBattle();
+            BattlePayout.Result payout = match.settleBattle(winner);
+            log.battle((winner == match.creature1State) ? 1 : 2, payout.player1NetProfit(), payout.player2NetProfit());
+            battles++;
+            if (match.isLastBattle()) break;
+            match.advanceBattle();
+        }
+        log.commit();
+        log.close();
+        return battles;
+    }
+
+    @Test
+    void recordedMatchesReplayWithoutMismatches(@TempDir Path dir) throws IOException {
+        for (int m = 0; m < 90; m++) {
+            Switch how = Switch.values()[m % 3];
+            Path path = dir.resolve("m" + m + ".replay");
+            int battles = record(path, m, how);
+
+            ReplayPlayer.Result result = ReplayPlayer.play(path);
+            String where = "матч " + m + " (" + how + ")";
+            assertEquals(0, result.mismatches(), where + ": " + result.firstMismatch());
+            assertFalse(result.truncated(), where);
+            assertEquals(battles, result.battles(), where);
+        }
+    }
+
+    @Test
+    void tornTailIsDroppedOnReadAndAppend(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("m.replay");
+        record(path, 1, Switch.RELOAD);
+        byte[] data = Files.readAllBytes(path);
+
+        // Любой обрезанный журнал читается до последнего целого события без ложных расхождений
+        for (int length = 5; length < data.length; length += 7) {
+            ReplayPlayer.Result prefix;
+            try {
+                prefix = ReplayPlayer.play(Arrays.copyOf(data, length));
+            } catch (IOException e) {
+                continue; // заголовок оборван
+            }
+            assertEquals(0, prefix.mismatches(), "длина " + length + ": " + prefix.firstMismatch());
+        }
+
+        Path torn = dir.resolve("torn.replay");
+        Files.write(torn, Arrays.copyOf(data, data.length - 1));
+        ReplayLog log = ReplayLog.append(torn, catalog);
+        log.endTurn();
+        log.commit();
+        log.close();
+        ReplayLog.Reader reader = new ReplayLog.Reader(Files.readAllBytes(torn));
+        int events = 0;
+        while (reader.next()) {
+            events++;
+        }
+        assertFalse(reader.truncated(), "append оставил оборванный хвост");
+        assertTrue(events > 0);
+    }
+}
@@ -0,0 +1,85 @@
+package yermakov.oleksii;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class VarintsTest {
+
+    private static final int[] EDGES = {0, 1, -1, 63, 64, -64, -65, 127, 128, 16_383, 16_384,
+            Integer.MAX_VALUE, Integer.MIN_VALUE};
+
+    @Test
+    void valuesRoundTrip() {
+        RandomGenerator rng = DiceUtils.newGenerator(11);
+        Varints.Output out = new Varints.Output();
+        int[] values = new int[EDGES.length + 1000];
+        System.arraycopy(EDGES, 0, values, 0, EDGES.length);
+        for (int i = EDGES.length; i < values.length; i++) {
+            values[i] = rng.nextInt() >> rng.nextInt(32);
+        }
+        long[] longs = {0L, 1L, Long.MAX_VALUE, Long.MIN_VALUE, rng.nextLong()};
+        for (int value : values) {
+            out.writeVarint(value);
+            out.writeSigned(value);
+            out.writeInt(value);
+        }
+        for (long value : longs) {
+            out.writeVarlong(value);
+            out.writeLong(value);
+        }
+        out.writeString("Вампир n7");
+        out.writeBytes(new byte[]{1, 2, 3, 4}, 3);
+
+        ByteBuffer in = out.buffer();
+        for (int value : values) {
+            assertEquals(value, Varints.readVarint(in));
+            assertEquals(value, Varints.readSigned(in));
+            assertEquals(value, in.getInt());
+        }
+        for (long value : longs) {
+            assertEquals(value, Varints.readVarlong(in));
+            assertEquals(value, in.getLong());
+        }
+        assertEquals("Вампир n7", Varints.readString(in));
+        assertArrayEquals(new byte[]{1, 2, 3}, Varints.readBytes(in));
+        assertFalse(in.hasRemaining());
+    }
+
+    @Test
+    void smallValuesTakeOneByte() {
+        Varints.Output out = new Varints.Output();
+        out.writeVarint(127);
+        assertEquals(1, out.size());
+        out.writeSigned(-64);
+        assertEquals(2, out.size());
+        out.writeVarint(128);
+        assertEquals(4, out.size());
+    }
+
+    @Test
+    void truncateDropsUncommittedBytes() {
+        Varints.Output out = new Varints.Output();
+        out.writeVarint(300);
+        int mark = out.size();
+        out.writeString("не подтверждено");
+        out.truncate(mark);
+        assertArrayEquals(new byte[]{(byte) 0xAC, 0x02}, out.toByteArray());
+    }
+
+    @Test
+    void brokenInputThrows() {
+        assertThrows(BufferUnderflowException.class, () -> Varints.readVarint(ByteBuffer.wrap(new byte[]{(byte) 0x80})));
+        byte[] endless = new byte[11];
+        Arrays.fill(endless, (byte) 0xFF);
+        assertThrows(IllegalArgumentException.class, () -> Varints.readVarlong(ByteBuffer.wrap(endless)));
+    }
+}